@@ -0,0 +1,90 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.spring.concourse.googlechatnotify.system.Variables;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+/**
+ * Benchmark comparing placeholder resolution using compiled and cached templates with
+ * {@link StandardEnvironment#resolvePlaceholders(String)}. Run with
+ * {@code ./mvnw -P benchmark test-compile exec:exec}.
+ *
+ * @author Scott Frederick
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaceholderResolutionBenchmark {
+
+	private static final List<String> MESSAGE_STRINGS = List.of("Build ${BUILD_PIPELINE_NAME}/${BUILD_JOB_NAME}",
+			"Build #${BUILD_NAME} failed", "${BUILD_TEAM_NAME}", "View build",
+			"${ATC_EXTERNAL_URL}/teams/${BUILD_TEAM_NAME}/pipelines/${BUILD_PIPELINE_NAME}/jobs/${BUILD_JOB_NAME}/builds/${BUILD_NAME}",
+			"https://example.com/images/failed.png", "Triggered by ${BUILD_CREATED_BY:unknown}", "OPEN_LINK",
+			"The build did not complete", "decoratedText");
+
+	private StandardEnvironment environment;
+
+	private Variables variables;
+
+	private TemplateCache templates;
+
+	@Setup
+	public void setup() {
+		this.environment = new StandardEnvironment();
+		this.environment.getPropertySources()
+			.addFirst(new MapPropertySource("build", Map.of("BUILD_PIPELINE_NAME", "main", "BUILD_JOB_NAME", "test",
+					"BUILD_NAME", "42", "BUILD_TEAM_NAME", "spring", "ATC_EXTERNAL_URL", "https://ci.example.com")));
+		this.variables = Variables.of(this.environment);
+		this.templates = new TemplateCache();
+	}
+
+	@Benchmark
+	public void environment(Blackhole blackhole) {
+		for (String text : MESSAGE_STRINGS) {
+			blackhole.consume(this.environment.resolvePlaceholders(text));
+		}
+	}
+
+	@Benchmark
+	public void compiledTemplates(Blackhole blackhole) {
+		for (String text : MESSAGE_STRINGS) {
+			blackhole.consume(this.templates.resolve(text, this.variables));
+		}
+	}
+
+}
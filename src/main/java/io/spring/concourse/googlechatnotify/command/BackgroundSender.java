@@ -0,0 +1,119 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+import io.spring.concourse.googlechatnotify.Application;
+import io.spring.concourse.googlechatnotify.webhook.WebhookSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Starts a detached {@link DrainCommand} process to deliver queued messages so that the
+ * current command can complete without waiting for the webhook. A native image starts its
+ * own executable, and an application running on a JVM starts the {@code java} launcher of
+ * the same Java home with the same jar or class path. The output of the process is
+ * appended to a log file in the state directory. No process is started while another is
+ * delivering the messages of the same state directory.
+ *
+ * @author Scott Frederick
+ */
+@Component
+public class BackgroundSender {
+
+	private static final Logger logger = LoggerFactory.getLogger(BackgroundSender.class);
+
+	private static final String LOG_FILE = "drain.log";
+
+	private static final String NATIVE_IMAGE_PROPERTY = "org.graalvm.nativeimage.imagecode";
+
+	private final Properties systemProperties;
+
+	private final Supplier<Optional<String>> executable;
+
+	public BackgroundSender() {
+		this(System.getProperties(), () -> ProcessHandle.current().info().command());
+	}
+
+	BackgroundSender(Properties systemProperties, Supplier<Optional<String>> executable) {
+		this.systemProperties = systemProperties;
+		this.executable = executable;
+	}
+
+	/**
+	 * Start a background process to deliver the messages queued in the state directory of
+	 * the given settings, unless one is already running.
+	 * @param settings the webhook settings
+	 */
+	public void start(WebhookSettings settings) {
+		try {
+			Path stateDirectory = settings.stateDirectory();
+			if (DrainCommand.isRunning(stateDirectory)) {
+				logger.debug("Queued messages will be delivered by the running background sender");
+				return;
+			}
+			List<String> command = getCommand(settings);
+			logger.debug("Starting background sender {}", command);
+			Files.createDirectories(stateDirectory);
+			new ProcessBuilder(command).redirectOutput(Redirect.DISCARD)
+				.redirectError(Redirect.appendTo(stateDirectory.resolve(LOG_FILE).toFile()))
+				.start();
+		}
+		catch (IOException ex) {
+			// Queued messages are delivered by the next send that uses the same state
+			// directory
+			logger.warn("Unable to start background sender", ex);
+		}
+	}
+
+	List<String> getCommand(WebhookSettings settings) {
+		List<String> command = new ArrayList<>(getLauncher());
+		command.addAll(DrainCommand.getArguments(settings));
+		return command;
+	}
+
+	private List<String> getLauncher() {
+		if (this.systemProperties.getProperty(NATIVE_IMAGE_PROPERTY) != null) {
+			return List.of(this.executable.get()
+				.orElseThrow(() -> new IllegalStateException("Unable to determine native image executable")));
+		}
+		String javaHome = this.systemProperties.getProperty("java.home");
+		String classPath = this.systemProperties.getProperty("java.class.path");
+		Assert.state(StringUtils.hasText(javaHome), "Unable to determine Java home");
+		Assert.state(StringUtils.hasText(classPath), "Unable to determine application class path");
+		String java = Path.of(javaHome, "bin", "java").toString();
+		if (!classPath.contains(File.pathSeparator) && classPath.endsWith(".jar")) {
+			return List.of(java, "-jar", classPath);
+		}
+		return List.of(java, "-cp", classPath, Application.class.getName());
+	}
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import io.spring.concourse.googlechatnotify.system.ConsoleLogger;
+
+/**
+ * Cache of parsed {@code card_file} content shared between invocations. Entries are keyed
+ * by a hash of the file content and stored in the binary Smile format, which is quicker
+ * to read than JSON text. Reading an entry marks it as recently used, and the least
+ * recently used entries are removed once the cache grows beyond its maximum size.
+ * <p>
+ * Only the parsed cards are stored. Placeholders in their text are compiled when the
+ * message is written and the compiled templates are cached in memory, since they are
+ * specific to the webhook and have no stable binary form.
+ *
+ * @author Scott Frederick
+ */
+class CardTemplateCache {
+
+	private static final ConsoleLogger console = new ConsoleLogger();
+
+	private static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+
+	private static final String SUFFIX = ".sml";
+
+	private static final TypeReference<List<Map<Object, Object>>> CARDS = new TypeReference<>() {
+	};
+
+	private static final ObjectMapper smileMapper = new SmileMapper();
+
+	private final Path directory;
+
+	private final long maxSize;
+
+	CardTemplateCache(Path directory) {
+		this(directory, DEFAULT_MAX_SIZE);
+	}
+
+	CardTemplateCache(Path directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Return the cards for the given JSON content, parsing and caching them if they are
+	 * not already cached.
+	 * @param content the JSON content
+	 * @param objectMapper the object mapper used to parse the content
+	 * @return the cards
+	 * @throws IOException if the content cannot be parsed
+	 */
+	List<Map<Object, Object>> get(byte[] content, ObjectMapper objectMapper) throws IOException {
+		Path file = this.directory.resolve(hash(content) + SUFFIX);
+		List<Map<Object, Object>> cards = read(file);
+		if (cards != null) {
+			return cards;
+		}
+		cards = objectMapper.readValue(content, CARDS);
+		write(file, cards);
+		return cards;
+	}
+
+	private List<Map<Object, Object>> read(Path file) {
+		if (!Files.exists(file)) {
+			return null;
+		}
+		try {
+			List<Map<Object, Object>> cards = smileMapper.readValue(file.toFile(), CARDS);
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			return cards;
+		}
+		catch (IOException ex) {
+			console.log("Ignoring unreadable card cache entry '" + file + "': " + ex.getMessage());
+			return null;
+		}
+	}
+
+	private void write(Path file, List<Map<Object, Object>> cards) {
+		try {
+			Files.createDirectories(this.directory);
+			Path temp = Files.createTempFile(this.directory, "entry-", ".tmp");
+			try {
+				smileMapper.writeValue(temp.toFile(), cards);
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			finally {
+				Files.deleteIfExists(temp);
+			}
+			evict();
+		}
+		catch (IOException ex) {
+			// The cache is only an optimization so the parsed cards are still used
+			console.log("Unable to write card cache entry '" + file + "': " + ex.getMessage());
+		}
+	}
+
+	private void evict() throws IOException {
+		List<Entry> entries = new ArrayList<>();
+		try (Stream<Path> files = Files.list(this.directory)) {
+			for (Path file : files.filter((file) -> file.getFileName().toString().endsWith(SUFFIX)).toList()) {
+				try {
+					entries.add(new Entry(file, Files.size(file), Files.getLastModifiedTime(file)));
+				}
+				catch (IOException ex) {
+					// Removed by another process
+				}
+			}
+		}
+		long size = entries.stream().mapToLong(Entry::size).sum();
+		entries.sort(Comparator.comparing(Entry::lastUsed));
+		for (int i = 0; i < entries.size() && size > this.maxSize; i++) {
+			Entry entry = entries.get(i);
+			Files.deleteIfExists(entry.file());
+			size -= entry.size();
+		}
+	}
+
+	private static String hash(byte[] content) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * A cache entry.
+	 *
+	 * @param file the entry file
+	 * @param size the size of the file
+	 * @param lastUsed the time the entry was last used
+	 */
+	private record Entry(Path file, long size, FileTime lastUsed) {
+
+	}
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.spring.concourse.googlechatnotify.command.payload.Metadata;
+import io.spring.concourse.googlechatnotify.command.payload.OutResponse;
+import io.spring.concourse.googlechatnotify.command.payload.Version;
+import io.spring.concourse.googlechatnotify.system.ConsoleLogger;
+import io.spring.concourse.googlechatnotify.system.ExclusiveFileLock;
+
+/**
+ * Append-only ledger of delivered messages, used to return the original response when a
+ * step is run again rather than sending the same message twice. Each line records an
+ * idempotency key, the time at which the entry expires and the response as JSON. The
+ * ledger is rewritten without its expired entries once it grows beyond its compaction
+ * size.
+ * <p>
+ * Reads and writes take an exclusive lock so that the ledger can be shared by threads and
+ * processes using the same directory.
+ *
+ * @author Scott Frederick
+ */
+class DeliveryLedger {
+
+	private static final ConsoleLogger console = new ConsoleLogger();
+
+	private static final long DEFAULT_COMPACTION_SIZE = 256 * 1024;
+
+	private static final String LEDGER = "ledger.log";
+
+	private static final String LOCK = "ledger.lock";
+
+	private final Path directory;
+
+	private final ObjectMapper objectMapper;
+
+	private final long compactionSize;
+
+	DeliveryLedger(Path directory, ObjectMapper objectMapper) {
+		this(directory, objectMapper, DEFAULT_COMPACTION_SIZE);
+	}
+
+	DeliveryLedger(Path directory, ObjectMapper objectMapper, long compactionSize) {
+		this.directory = directory;
+		this.objectMapper = objectMapper;
+		this.compactionSize = compactionSize;
+	}
+
+	/**
+	 * Return the response recorded for the given key.
+	 * @param key the idempotency key
+	 * @return the recorded response or {@code null} if there is no unexpired entry
+	 */
+	OutResponse find(String key) {
+		Path file = this.directory.resolve(LEDGER);
+		if (!Files.exists(file)) {
+			return null;
+		}
+		try {
+			return ExclusiveFileLock.call(this.directory.resolve(LOCK), () -> find(file, key));
+		}
+		catch (IOException ex) {
+			// The message is sent again rather than failing
+			console.log("Unable to read delivery ledger '" + file + "': " + ex.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Record the response for the given key.
+	 * @param key the idempotency key
+	 * @param response the response
+	 * @param timeToLive how long the entry is kept
+	 */
+	void record(String key, OutResponse response, Duration timeToLive) {
+		Path file = this.directory.resolve(LEDGER);
+		try {
+			ExclusiveFileLock.run(this.directory.resolve(LOCK), () -> record(file, key, response, timeToLive));
+		}
+		catch (IOException ex) {
+			console.log("Unable to write delivery ledger '" + file + "': " + ex.getMessage());
+		}
+	}
+
+	private OutResponse find(Path file, String key) throws IOException {
+		long now = System.currentTimeMillis();
+		Entry found = null;
+		for (Entry entry : readEntries(file)) {
+			if (entry.key().equals(key) && !entry.isExpired(now)) {
+				found = entry;
+			}
+		}
+		return (found != null) ? readResponse(found.response()) : null;
+	}
+
+	private void record(Path file, String key, OutResponse response, Duration timeToLive) throws IOException {
+		long expires = System.currentTimeMillis() + timeToLive.toMillis();
+		Entry entry = new Entry(key, expires, this.objectMapper.writeValueAsString(response));
+		// A line left partially written by a process that stopped is ended first
+		String line = (isPartiallyWritten(file)) ? "\n" + entry.toLine() : entry.toLine();
+		Files.writeString(file, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		if (Files.size(file) > this.compactionSize) {
+			compact(file);
+		}
+	}
+
+	private boolean isPartiallyWritten(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return false;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() == 0) {
+				return false;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(1);
+			channel.read(buffer, channel.size() - 1);
+			return buffer.get(0) != '\n';
+		}
+	}
+
+	private void compact(Path file) throws IOException {
+		long now = System.currentTimeMillis();
+		StringBuilder remaining = new StringBuilder();
+		for (Entry entry : readEntries(file)) {
+			if (!entry.isExpired(now)) {
+				remaining.append(entry.toLine());
+			}
+		}
+		Path temp = this.directory.resolve(LEDGER + ".tmp");
+		Files.writeString(temp, remaining, StandardCharsets.UTF_8);
+		Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private List<Entry> readEntries(Path file) throws IOException {
+		List<Entry> entries = new ArrayList<>();
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			while (line != null) {
+				Entry entry = Entry.fromLine(line);
+				if (entry != null) {
+					entries.add(entry);
+				}
+				line = reader.readLine();
+			}
+		}
+		return entries;
+	}
+
+	private OutResponse readResponse(String json) throws IOException {
+		JsonNode node = this.objectMapper.readTree(json);
+		Version version = new Version(node.at("/version/build_number").asText());
+		List<Metadata> metadata = new ArrayList<>();
+		for (JsonNode item : node.path("metadata")) {
+			metadata.add(new Metadata(item.path("name").asText(),
+					this.objectMapper.treeToValue(item.path("value"), Object.class)));
+		}
+		return new OutResponse(version, metadata);
+	}
+
+	/**
+	 * An entry in the ledger.
+	 *
+	 * @param key the idempotency key
+	 * @param expires the time the entry expires in milliseconds since the epoch
+	 * @param response the response JSON
+	 */
+	private record Entry(String key, long expires, String response) {
+
+		boolean isExpired(long now) {
+			return now > this.expires;
+		}
+
+		String toLine() {
+			return this.key + " " + this.expires + " " + this.response + "\n";
+		}
+
+		static Entry fromLine(String line) {
+			String[] parts = line.split(" ", 3);
+			if (parts.length != 3) {
+				// Partially written by a process that stopped
+				return null;
+			}
+			try {
+				return new Entry(parts[0], Long.parseLong(parts[1]), parts[2]);
+			}
+			catch (NumberFormatException ex) {
+				return null;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import io.spring.concourse.googlechatnotify.system.ExclusiveFileLock;
+import io.spring.concourse.googlechatnotify.webhook.OutgoingWebhook;
+import io.spring.concourse.googlechatnotify.webhook.RateLimit;
+import io.spring.concourse.googlechatnotify.webhook.RetryPolicy;
+import io.spring.concourse.googlechatnotify.webhook.WebhookSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * Command to deliver the messages queued in the outbox of a state directory. Started in
+ * the background by the {@link BackgroundSender} when messages are sent asynchronously,
+ * and retries delivery according to the retry policy until the outbox is empty.
+ * <p>
+ * Only one command delivers the messages of a state directory at a time. A command that
+ * starts while another is running exits immediately, leaving the running command to
+ * deliver any messages that were queued.
+ *
+ * @author Scott Frederick
+ */
+@Component
+public class DrainCommand implements Command {
+
+	private static final Logger logger = LoggerFactory.getLogger(DrainCommand.class);
+
+	private static final String LOCK = "drain.lock";
+
+	private final OutgoingWebhook webHook;
+
+	public DrainCommand(OutgoingWebhook webHook) {
+		this.webHook = webHook;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) throws Exception {
+		logger.debug("Running 'drain' command");
+		WebhookSettings settings = getSettings(args);
+		Path lockFile = getLockFile(settings.stateDirectory());
+		do {
+			try (ExclusiveFileLock lock = ExclusiveFileLock.tryAcquire(lockFile)) {
+				if (lock == null) {
+					logger.debug("Queued messages are being delivered by another process");
+					return;
+				}
+				if (!drain(settings)) {
+					logger.info("Undelivered messages remain in the outbox in {}", settings.stateDirectory());
+					return;
+				}
+			}
+			// Messages queued just before the lock was released did not start another
+			// process so are delivered by this one
+		}
+		while (this.webHook.hasQueuedMessages(settings));
+		logger.debug("Delivered all queued messages");
+	}
+
+	private boolean drain(WebhookSettings settings) throws InterruptedException {
+		RetryPolicy retryPolicy = settings.retryPolicy();
+		long startTime = System.nanoTime();
+		for (int attempt = 1; !this.webHook.drain(settings); attempt++) {
+			Duration backoff = retryPolicy.getBackoff(attempt, null);
+			Duration elapsed = Duration.ofNanos(System.nanoTime() - startTime);
+			if (!retryPolicy.shouldRetry(attempt, elapsed, backoff)) {
+				return false;
+			}
+			Thread.sleep(backoff.toMillis());
+		}
+		return true;
+	}
+
+	/**
+	 * Return if a command is delivering the messages queued in the given state directory.
+	 * @param stateDirectory the state directory
+	 * @return {@code true} if a command is running
+	 * @throws IOException if the lock cannot be checked
+	 */
+	static boolean isRunning(Path stateDirectory) throws IOException {
+		try (ExclusiveFileLock lock = ExclusiveFileLock.tryAcquire(getLockFile(stateDirectory))) {
+			return lock == null;
+		}
+	}
+
+	private static Path getLockFile(Path stateDirectory) {
+		return stateDirectory.resolve(LOCK);
+	}
+
+	private WebhookSettings getSettings(ApplicationArguments args) {
+		String stateDirectory = getOption(args, "state-dir", Function.identity());
+		Assert.state(stateDirectory != null, "No state directory specified");
+		RetryPolicy retryPolicy = RetryPolicy.of(getOption(args, "max-attempts", Integer::valueOf),
+				getOption(args, "retry-budget", DrainCommand::parseDuration));
+		RateLimit rateLimit = RateLimit.of(getOption(args, "rate-limit", Double::valueOf),
+				getOption(args, "rate-limit-burst", Integer::valueOf));
+		return new WebhookSettings(getOption(args, "connect-timeout", DrainCommand::parseDuration),
+				getOption(args, "read-timeout", DrainCommand::parseDuration), retryPolicy, rateLimit,
+				Path.of(stateDirectory));
+	}
+
+	private <T> T getOption(ApplicationArguments args, String name, Function<String, T> converter) {
+		List<String> values = args.getOptionValues(name);
+		return (values != null && !values.isEmpty()) ? converter.apply(values.get(0)) : null;
+	}
+
+	private static Duration parseDuration(String value) {
+		return DurationStyle.detectAndParse(value, ChronoUnit.MILLIS);
+	}
+
+	/**
+	 * Return the arguments used to run the command with the given settings.
+	 * @param settings the webhook settings
+	 * @return the command arguments
+	 */
+	static List<String> getArguments(WebhookSettings settings) {
+		List<String> arguments = new ArrayList<>();
+		arguments.add("drain");
+		arguments.add("--state-dir=" + settings.stateDirectory());
+		arguments.add("--connect-timeout=" + settings.connectTimeout().toMillis());
+		arguments.add("--read-timeout=" + settings.readTimeout().toMillis());
+		arguments.add("--max-attempts=" + settings.retryPolicy().maxAttempts());
+		arguments.add("--retry-budget=" + settings.retryPolicy().budget().toMillis());
+		if (settings.rateLimit() != null) {
+			arguments.add("--rate-limit=" + settings.rateLimit().permitsPerSecond());
+			arguments.add("--rate-limit-burst=" + settings.rateLimit().burst());
+		}
+		return arguments;
+	}
+
+}
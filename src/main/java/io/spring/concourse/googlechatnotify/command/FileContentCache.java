@@ -0,0 +1,197 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache of content read from {@code card_file} and {@code text_file} files for use by a
+ * long-running process. Once {@link #watch() watching} is enabled, content is kept in
+ * memory and the directories holding the files are registered with a
+ * {@link WatchService}. Files that change are evicted by a background thread, so cached
+ * content can be returned without checking the file system. Until then every request
+ * reads the file.
+ *
+ * @author Scott Frederick
+ */
+@Component
+public class FileContentCache implements DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(FileContentCache.class);
+
+	private final Map<Key, Object> entries = new ConcurrentHashMap<>();
+
+	private final Map<Path, WatchKey> directories = new ConcurrentHashMap<>();
+
+	private final AtomicLong invalidations = new AtomicLong();
+
+	private volatile WatchService watchService;
+
+	/**
+	 * Start watching files so that their content can be cached.
+	 * @throws IOException if the watch service cannot be created
+	 */
+	public synchronized void watch() throws IOException {
+		if (this.watchService != null) {
+			return;
+		}
+		WatchService watchService = FileSystems.getDefault().newWatchService();
+		this.watchService = watchService;
+		Thread thread = new Thread(() -> processEvents(watchService), "file-content-cache");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Return the content of the given file, loading it if it is not cached.
+	 * @param <T> the content type
+	 * @param file the file
+	 * @param type the type of content
+	 * @param loader the loader used to read the content
+	 * @return the content
+	 * @throws IOException if the content cannot be read
+	 */
+	public <T> T get(Path file, Class<T> type, Loader<T> loader) throws IOException {
+		WatchService watchService = this.watchService;
+		if (watchService == null) {
+			return loader.load(file);
+		}
+		Key key = new Key(file.toAbsolutePath().normalize(), type);
+		Object content = this.entries.get(key);
+		if (content != null) {
+			return type.cast(content);
+		}
+		// Register before reading so that a change made while the file is read is not
+		// missed, and only cache content if nothing was evicted in the meantime
+		long invalidations = this.invalidations.get();
+		boolean watched = register(watchService, key.file().getParent());
+		T loaded = loader.load(file);
+		if (watched && loaded != null && this.invalidations.get() == invalidations) {
+			this.entries.put(key, loaded);
+		}
+		return loaded;
+	}
+
+	private boolean register(WatchService watchService, Path directory) {
+		if (directory == null) {
+			return false;
+		}
+		if (this.directories.containsKey(directory)) {
+			return true;
+		}
+		try {
+			WatchKey watchKey = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+			this.directories.put(directory, watchKey);
+			return true;
+		}
+		catch (IOException | ClosedWatchServiceException ex) {
+			logger.debug("Unable to watch directory {}", directory, ex);
+			return false;
+		}
+	}
+
+	private void processEvents(WatchService watchService) {
+		try {
+			while (true) {
+				WatchKey watchKey = watchService.take();
+				Path directory = (Path) watchKey.watchable();
+				for (WatchEvent<?> event : watchKey.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						evict((file) -> directory.equals(file.getParent()));
+					}
+					else {
+						Path file = directory.resolve((Path) event.context());
+						evict(file::equals);
+					}
+				}
+				if (!watchKey.reset()) {
+					this.directories.remove(directory);
+					evict((file) -> directory.equals(file.getParent()));
+				}
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		catch (ClosedWatchServiceException ex) {
+			// Stopped
+		}
+	}
+
+	private void evict(Predicate<Path> files) {
+		this.invalidations.incrementAndGet();
+		this.entries.keySet().removeIf((key) -> files.test(key.file()));
+	}
+
+	@Override
+	public synchronized void destroy() throws IOException {
+		WatchService watchService = this.watchService;
+		if (watchService != null) {
+			this.watchService = null;
+			watchService.close();
+			this.directories.clear();
+			this.entries.clear();
+		}
+	}
+
+	/**
+	 * Loads the content of a file.
+	 *
+	 * @param <T> the content type
+	 */
+	@FunctionalInterface
+	public interface Loader<T> {
+
+		/**
+		 * Load the content of the given file.
+		 * @param file the file
+		 * @return the content
+		 * @throws IOException if the content cannot be read
+		 */
+		T load(Path file) throws IOException;
+
+	}
+
+	/**
+	 * Key of a cache entry.
+	 *
+	 * @param file the normalized file path
+	 * @param type the type of content
+	 */
+	private record Key(Path file, Class<?> type) {
+
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.spring.concourse.googlechatnotify.system.ExclusiveFileLock;
+
+/**
+ * Coalesces matching messages sent by different builds within a window into a single
+ * message. The first build to send a message starts a group in the shared directory,
+ * waits for the window to pass and then sends the message on behalf of every build that
+ * joined the group. Builds that send a matching message while the group is open join it
+ * and return without calling the webhook.
+ * <p>
+ * Each group is a file holding the time it was started followed by one line per build. A
+ * group whose leader stopped before closing it is taken over by the next build to join.
+ * Groups are updated while holding an exclusive lock so that the directory can be shared
+ * by threads and processes.
+ *
+ * @author Scott Frederick
+ */
+class MessageCoalescer {
+
+	private static final Duration STALE_TIMEOUT = Duration.ofSeconds(30);
+
+	private static final String GROUP_SUFFIX = ".group";
+
+	private static final String LOCK = "coalesce.lock";
+
+	private final Path directory;
+
+	MessageCoalescer(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Add the given build to the group for the given key. If the build starts the group
+	 * this method waits for the window to pass before closing the group and returning the
+	 * builds that joined it.
+	 * @param key the key identifying matching messages
+	 * @param build a description of the build sending the message
+	 * @param window how long the group stays open
+	 * @return the builds in the group, starting with the given build, or {@code null} if
+	 * the build joined a group started by another build
+	 */
+	List<String> coalesce(String key, String build, Duration window) {
+		Path file = this.directory.resolve(key + GROUP_SUFFIX);
+		try {
+			if (!join(file, build, window)) {
+				return null;
+			}
+			boolean interrupted = !sleep(window);
+			try {
+				return close(file, build);
+			}
+			finally {
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Unable to coalesce message in '" + this.directory + "'", ex);
+		}
+	}
+
+	private boolean join(Path file, String build, Duration window) throws IOException {
+		return ExclusiveFileLock.call(this.directory.resolve(LOCK), () -> {
+			long now = System.currentTimeMillis();
+			List<String> builds = new ArrayList<>();
+			if (Files.exists(file)) {
+				List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+				long started = (!lines.isEmpty()) ? parseStarted(lines.get(0)) : 0;
+				if (now <= started + window.toMillis() + STALE_TIMEOUT.toMillis()) {
+					Files.writeString(file, build + "\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+					return false;
+				}
+				builds.addAll(lines.subList(Math.min(lines.size(), 1), lines.size()));
+			}
+			builds.add(0, build);
+			Files.writeString(file, now + "\n" + String.join("\n", builds) + "\n", StandardCharsets.UTF_8);
+			return true;
+		});
+	}
+
+	private List<String> close(Path file, String build) throws IOException {
+		return ExclusiveFileLock.call(this.directory.resolve(LOCK), () -> {
+			if (!Files.exists(file)) {
+				return List.of(build);
+			}
+			List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+			Files.deleteIfExists(file);
+			return lines.subList(Math.min(lines.size(), 1), lines.size())
+				.stream()
+				.filter((line) -> !line.isEmpty())
+				.toList();
+		});
+	}
+
+	private long parseStarted(String line) {
+		try {
+			return Long.parseLong(line);
+		}
+		catch (NumberFormatException ex) {
+			return 0;
+		}
+	}
+
+	private boolean sleep(Duration window) {
+		try {
+			Thread.sleep(window.toMillis());
+			return true;
+		}
+		catch (InterruptedException ex) {
+			// The group is closed early and sent, the interrupt is restored once the lock
+			// is no longer needed
+			return false;
+		}
+	}
+
+}
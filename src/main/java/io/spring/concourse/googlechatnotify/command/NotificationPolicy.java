@@ -0,0 +1,276 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.DateTimeException;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import io.spring.concourse.googlechatnotify.command.payload.Source;
+import io.spring.concourse.googlechatnotify.system.ConsoleLogger;
+import io.spring.concourse.googlechatnotify.system.ExclusiveFileLock;
+
+import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Policy used to decide whether a notification should be suppressed rather than sent.
+ * Notifications can be suppressed during quiet hours, when the status of a job has not
+ * changed since its last notification, or for all but every Nth consecutive success.
+ * <p>
+ * The last status of each job and its number of consecutive successes are kept in a small
+ * file per job in the state directory, updated while holding an exclusive lock for the
+ * job. Notifications suppressed during quiet hours do not update the status so that a
+ * change is still sent once the quiet hours end.
+ *
+ * @author Scott Frederick
+ */
+class NotificationPolicy {
+
+	private static final String LOCK_SUFFIX = ".lock";
+
+	private static final ConsoleLogger console = new ConsoleLogger();
+
+	private final boolean onlyOnTransitions;
+
+	private final Integer successEvery;
+
+	private final List<QuietHours> quietHours;
+
+	private final ZoneId zone;
+
+	private final Clock clock;
+
+	NotificationPolicy(boolean onlyOnTransitions, Integer successEvery, String quietHours, String timeZone,
+			Clock clock) {
+		this.onlyOnTransitions = onlyOnTransitions;
+		this.successEvery = successEvery;
+		this.quietHours = QuietHours.parseAll(quietHours);
+		this.zone = parseZone(timeZone);
+		this.clock = clock;
+	}
+
+	/**
+	 * Return the policy configured by the given source.
+	 * @param source the source configuration
+	 * @param clock the clock used to check quiet hours
+	 * @return the policy or {@code null} if notifications are never suppressed
+	 */
+	static NotificationPolicy of(Source source, Clock clock) {
+		if (!source.isOnlyOnTransitions() && source.getSuccessEvery() == null && source.getQuietHours() == null) {
+			return null;
+		}
+		return new NotificationPolicy(source.isOnlyOnTransitions(), source.getSuccessEvery(), source.getQuietHours(),
+				source.getTimeZone(), clock);
+	}
+
+	/**
+	 * Decide whether a notification for the given job should be suppressed. The status of
+	 * a tracked job is recorded straight away when the notification is suppressed.
+	 * Otherwise it is only recorded once the decision is {@link Decision#commit()
+	 * committed} after the notification has been sent, so that a notification that fails
+	 * to send is not treated as sent by the next build.
+	 * @param job the job sending the notification or {@code null} if not known
+	 * @param status the status of the build or {@code null} if not known
+	 * @param directory the directory used to store the status of jobs
+	 * @return the decision
+	 */
+	Decision decide(String job, String status, Path directory) {
+		LocalTime now = ZonedDateTime.now(this.clock.withZone(this.zone)).toLocalTime();
+		for (QuietHours quietHours : this.quietHours) {
+			if (quietHours.contains(now)) {
+				return new Decision("Quiet hours " + quietHours, null, null);
+			}
+		}
+		if (!StringUtils.hasText(status) || job == null || (!this.onlyOnTransitions && this.successEvery == null)) {
+			return Decision.SEND;
+		}
+		Assert.state(directory != null, "A state directory is required to track the status of jobs");
+		try {
+			return update(directory, job, status.trim().toLowerCase(Locale.ROOT));
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Unable to update status of job '" + job + "' in '" + directory + "'", ex);
+		}
+	}
+
+	private Decision update(Path directory, String job, String status) throws IOException {
+		Path file = directory.resolve(DigestUtils.md5DigestAsHex(job.getBytes(StandardCharsets.UTF_8)));
+		return ExclusiveFileLock.call(getLockFile(file), () -> update(file, status));
+	}
+
+	private Decision update(Path file, String status) throws IOException {
+		List<String> lines = (Files.exists(file)) ? Files.readAllLines(file, StandardCharsets.UTF_8) : List.of();
+		String previous = (!lines.isEmpty()) ? lines.get(0) : null;
+		boolean transition = !status.equals(previous);
+		boolean success = isSuccess(status);
+		long successes = (success) ? ((transition) ? 1 : parseCount(lines) + 1) : 0;
+		String content = status + "\n" + successes + "\n";
+		String suppressionReason = getSuppressionReason(status, transition, success, successes);
+		if (suppressionReason == null) {
+			return new Decision(null, file, content);
+		}
+		Files.writeString(file, content, StandardCharsets.UTF_8);
+		return new Decision(suppressionReason, null, null);
+	}
+
+	private String getSuppressionReason(String status, boolean transition, boolean success, long successes) {
+		if (transition) {
+			return null;
+		}
+		if (success && this.successEvery != null) {
+			// The success that changed the status is sent, then every Nth after it
+			return ((successes - 1) % this.successEvery == 0) ? null
+					: "Success " + successes + " since last change, sending every " + this.successEvery;
+		}
+		return (this.onlyOnTransitions) ? "Status '" + status + "' unchanged" : null;
+	}
+
+	private boolean isSuccess(String status) {
+		return "succeeded".equals(status) || "success".equals(status);
+	}
+
+	private long parseCount(List<String> lines) {
+		try {
+			return (lines.size() > 1) ? Long.parseLong(lines.get(1)) : 0;
+		}
+		catch (NumberFormatException ex) {
+			return 0;
+		}
+	}
+
+	private static Path getLockFile(Path file) {
+		return file.resolveSibling(file.getFileName() + LOCK_SUFFIX);
+	}
+
+	private static ZoneId parseZone(String timeZone) {
+		if (!StringUtils.hasText(timeZone)) {
+			return ZoneOffset.UTC;
+		}
+		try {
+			return ZoneId.of(timeZone);
+		}
+		catch (DateTimeException ex) {
+			throw new IllegalArgumentException("Invalid time zone '" + timeZone + "'", ex);
+		}
+	}
+
+	/**
+	 * The decision whether to suppress a notification.
+	 */
+	static final class Decision {
+
+		static final Decision SEND = new Decision(null, null, null);
+
+		private final String suppressionReason;
+
+		private final Path file;
+
+		private final String content;
+
+		private Decision(String suppressionReason, Path file, String content) {
+			this.suppressionReason = suppressionReason;
+			this.file = file;
+			this.content = content;
+		}
+
+		/**
+		 * Return the reason the notification is suppressed.
+		 * @return the reason or {@code null} if the notification should be sent
+		 */
+		String getSuppressionReason() {
+			return this.suppressionReason;
+		}
+
+		/**
+		 * Record the status of the job once the notification has been sent.
+		 */
+		void commit() {
+			if (this.file == null) {
+				return;
+			}
+			try {
+				ExclusiveFileLock.run(getLockFile(this.file),
+						() -> Files.writeString(this.file, this.content, StandardCharsets.UTF_8));
+			}
+			catch (IOException ex) {
+				// The notification has already been sent so is not failed
+				console.log("Unable to record status of job in '" + this.file + "': " + ex.getMessage());
+			}
+		}
+
+	}
+
+	/**
+	 * A daily window during which notifications are suppressed. Windows that end before
+	 * they start span midnight.
+	 *
+	 * @param start the start of the window
+	 * @param end the end of the window, exclusive
+	 */
+	record QuietHours(LocalTime start, LocalTime end) {
+
+		boolean contains(LocalTime time) {
+			if (this.start.isBefore(this.end)) {
+				return !time.isBefore(this.start) && time.isBefore(this.end);
+			}
+			return !time.isBefore(this.start) || time.isBefore(this.end);
+		}
+
+		@Override
+		public String toString() {
+			return this.start + "-" + this.end;
+		}
+
+		static List<QuietHours> parseAll(String value) {
+			List<QuietHours> quietHours = new ArrayList<>();
+			if (StringUtils.hasText(value)) {
+				for (String window : StringUtils.commaDelimitedListToStringArray(value)) {
+					quietHours.add(parse(window.trim()));
+				}
+			}
+			return List.copyOf(quietHours);
+		}
+
+		private static QuietHours parse(String window) {
+			String[] times = window.split("-");
+			Assert.isTrue(times.length == 2, () -> "Invalid quiet hours '" + window + "', expected 'HH:mm-HH:mm'");
+			try {
+				LocalTime start = LocalTime.parse(times[0].trim());
+				LocalTime end = LocalTime.parse(times[1].trim());
+				Assert.isTrue(!start.equals(end), () -> "Quiet hours '" + window + "' must not start and end together");
+				return new QuietHours(start, end);
+			}
+			catch (DateTimeException ex) {
+				throw new IllegalArgumentException("Invalid quiet hours '" + window + "', expected 'HH:mm-HH:mm'", ex);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import io.spring.concourse.googlechatnotify.command.payload.Metadata;
+import io.spring.concourse.googlechatnotify.command.payload.OutRequest;
+import io.spring.concourse.googlechatnotify.command.payload.OutResponse;
+import io.spring.concourse.googlechatnotify.command.payload.Source;
+import io.spring.concourse.googlechatnotify.command.payload.TimestampVersion;
+import io.spring.concourse.googlechatnotify.system.SystemInput;
+import io.spring.concourse.googlechatnotify.system.SystemOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * Command to send many notifications from newline-delimited JSON {@link OutRequest}
+ * input. Requests are read from {@code stdin} or from the file given by the
+ * {@code --file} option and sent concurrently, with at most {@code --concurrency}
+ * requests in flight. One {@link OutResponse} line is written as each request completes,
+ * with an {@code index} metadata item identifying the request.
+ *
+ * @author Scott Frederick
+ */
+@Component
+public class OutBatchCommand implements Command {
+
+	private static final Logger logger = LoggerFactory.getLogger(OutBatchCommand.class);
+
+	private static final int DEFAULT_CONCURRENCY = 8;
+
+	private final SystemInput systemInput;
+
+	private final SystemOutput systemOutput;
+
+	private final OutHandler handler;
+
+	public OutBatchCommand(SystemInput systemInput, SystemOutput systemOutput, OutHandler handler) {
+		this.systemInput = systemInput;
+		this.systemOutput = systemOutput;
+		this.handler = handler;
+	}
+
+	@Override
+	public String getName() {
+		return "out-batch";
+	}
+
+	@Override
+	@RegisterReflectionForBinding({ OutRequest.class, OutResponse.class, Source.Options.class })
+	public void run(ApplicationArguments args) throws Exception {
+		logger.debug("Running 'out-batch' command");
+		String workingDir = args.getNonOptionArgs().get(1);
+		int concurrency = getConcurrency(args);
+		List<String> files = args.getOptionValues("file");
+		if (files != null && !files.isEmpty()) {
+			try (InputStream in = Files.newInputStream(Path.of(files.get(0)))) {
+				run(this.systemInput.readAll(in, OutRequest.class), workingDir, concurrency);
+			}
+		}
+		else {
+			run(this.systemInput.readAll(OutRequest.class), workingDir, concurrency);
+		}
+	}
+
+	private int getConcurrency(ApplicationArguments args) {
+		List<String> values = args.getOptionValues("concurrency");
+		int concurrency = (values != null && !values.isEmpty()) ? Integer.parseInt(values.get(0)) : DEFAULT_CONCURRENCY;
+		Assert.state(concurrency > 0, "Concurrency must be greater than zero");
+		return concurrency;
+	}
+
+	void run(MappingIterator<OutRequest> requests, String workingDir, int concurrency) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		Semaphore permits = new Semaphore(concurrency);
+		AtomicInteger failures = new AtomicInteger();
+		int count = 0;
+		try (requests) {
+			while (requests.hasNextValue()) {
+				OutRequest request = requests.nextValue();
+				int index = count++;
+				permits.acquire();
+				executor.execute(() -> {
+					try {
+						send(index, request, workingDir, failures);
+					}
+					finally {
+						permits.release();
+					}
+				});
+			}
+		}
+		finally {
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		int total = count;
+		logger.debug("Sent {} batch requests", total);
+		Assert.state(failures.get() == 0, () -> failures.get() + " of " + total + " batch requests failed");
+	}
+
+	private void send(int index, OutRequest request, String workingDir, AtomicInteger failures) {
+		List<Metadata> metadata = new ArrayList<>();
+		metadata.add(new Metadata("index", index));
+		OutResponse response;
+		try {
+			OutResponse handled = this.handler.handle(request, workingDir);
+			metadata.addAll(handled.metadata());
+			response = new OutResponse(handled.version(), metadata);
+		}
+		catch (RuntimeException ex) {
+			logger.error("Error handling batch request " + index, ex);
+			failures.incrementAndGet();
+			metadata.add(new Metadata("error", ex.getMessage()));
+			response = new OutResponse(TimestampVersion.now(), metadata);
+		}
+		try {
+			this.systemOutput.writeLine(response);
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Error writing batch response " + index, ex);
+		}
+	}
+
+}
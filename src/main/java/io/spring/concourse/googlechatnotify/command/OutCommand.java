@@ -18,6 +18,7 @@ package io.spring.concourse.googlechatnotify.command;
 
 import io.spring.concourse.googlechatnotify.command.payload.OutRequest;
 import io.spring.concourse.googlechatnotify.command.payload.OutResponse;
+import io.spring.concourse.googlechatnotify.command.payload.Source;
 import io.spring.concourse.googlechatnotify.system.SystemInput;
 import io.spring.concourse.googlechatnotify.system.SystemOutput;
 import org.slf4j.Logger;
@@ -50,7 +51,7 @@ public class OutCommand implements Command {
 	}
 
 	@Override
-	@RegisterReflectionForBinding({ OutRequest.class, OutResponse.class })
+	@RegisterReflectionForBinding({ OutRequest.class, OutResponse.class, Source.Options.class })
 	public void run(ApplicationArguments args) throws Exception {
 		logger.debug("Running '/out' command");
 		OutRequest request = this.systemInput.read(OutRequest.class);
@@ -17,27 +17,44 @@
 package io.spring.concourse.googlechatnotify.command;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.spring.concourse.googlechatnotify.command.payload.Metadata;
 import io.spring.concourse.googlechatnotify.command.payload.OutRequest;
 import io.spring.concourse.googlechatnotify.command.payload.OutResponse;
 import io.spring.concourse.googlechatnotify.command.payload.Source;
 import io.spring.concourse.googlechatnotify.command.payload.TimestampVersion;
+import io.spring.concourse.googlechatnotify.system.ConsoleLogger;
+import io.spring.concourse.googlechatnotify.system.Variables;
+import io.spring.concourse.googlechatnotify.webhook.MessageFingerprint;
+import io.spring.concourse.googlechatnotify.webhook.MessageSplitter;
 import io.spring.concourse.googlechatnotify.webhook.OutgoingWebhook;
+import io.spring.concourse.googlechatnotify.webhook.RateLimit;
+import io.spring.concourse.googlechatnotify.webhook.RawJson;
+import io.spring.concourse.googlechatnotify.webhook.ResponseMode;
+import io.spring.concourse.googlechatnotify.webhook.RetryPolicy;
 import io.spring.concourse.googlechatnotify.webhook.WebhookMessage;
 import io.spring.concourse.googlechatnotify.webhook.WebhookResponse;
+import io.spring.concourse.googlechatnotify.webhook.WebhookSettings;
 
-import org.springframework.core.env.ConfigurableEnvironment;
-import org.springframework.core.env.MapPropertySource;
-import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
 import org.springframework.util.StringUtils;
 
 /**
@@ -48,69 +65,389 @@ import org.springframework.util.StringUtils;
 @Component
 public class OutHandler {
 
-	private final ConfigurableEnvironment environment;
+	private static final byte[][] PLACEHOLDER_MARKERS = { bytes("${"), bytes("\\u0024"), bytes("\\u007b"),
+			bytes("\\u007B") };
+
+	private static final String CARD_CACHE_DIRECTORY = "card-cache";
+
+	private static final Path DEFAULT_ASYNC_STATE_DIRECTORY = Path.of(System.getProperty("java.io.tmpdir"),
+			"google-chat-notify");
+
+	private static final String THREAD_CACHE_DIRECTORY = "thread-cache";
+
+	private static final String LEDGER_DIRECTORY = "delivery-ledger";
+
+	private static final String[] BUILD_VARIABLES = { "BUILD_ID", "BUILD_TEAM_NAME", "BUILD_PIPELINE_NAME",
+			"BUILD_JOB_NAME", "BUILD_NAME" };
+
+	private static final Map<String, String> UNSET_BUILD_VARIABLES = Map.of("BUILD_ID", "", "BUILD_TEAM_NAME", "",
+			"BUILD_PIPELINE_NAME", "", "BUILD_JOB_NAME", "", "BUILD_NAME", "", "ATC_EXTERNAL_URL", "");
+
+	private static final String COALESCE_DIRECTORY = "coalesce";
+
+	private static final String COALESCED = "Coalesced";
+
+	private static final String JOB_STATUS_DIRECTORY = "job-status";
+
+	private static final ConsoleLogger console = new ConsoleLogger();
+
+	private static final String TEXT_FILE_CONTENT = "TEXT_FILE_CONTENT";
+
+	private final Variables variables;
 
 	private final OutgoingWebhook webHook;
 
 	private final ObjectMapper objectMapper;
 
-	public OutHandler(ConfigurableEnvironment environment, OutgoingWebhook webHook, ObjectMapper objectMapper) {
-		this.environment = environment;
+	private final BackgroundSender backgroundSender;
+
+	private final FileContentCache fileContentCache;
+
+	private final MessageSplitter messageSplitter;
+
+	private final ThreadNameCache threadNames = new ThreadNameCache();
+
+	public OutHandler(Environment environment, OutgoingWebhook webHook, ObjectMapper objectMapper,
+			BackgroundSender backgroundSender, FileContentCache fileContentCache) {
+		this.variables = Variables.of(environment);
 		this.webHook = webHook;
 		this.objectMapper = objectMapper;
+		this.backgroundSender = backgroundSender;
+		this.fileContentCache = fileContentCache;
+		this.messageSplitter = new MessageSplitter(objectMapper);
 	}
 
 	public OutResponse handle(OutRequest request, String workingDir) {
+		return handle(request, workingDir, this.variables);
+	}
+
+	/**
+	 * Handle the given request, resolving placeholders in the message with the given
+	 * variables. Requests do not share any mutable state so may be handled concurrently.
+	 * @param request the request to handle
+	 * @param workingDir the working directory of the request
+	 * @param variables the variables used to resolve placeholders
+	 * @return the response
+	 */
+	public OutResponse handle(OutRequest request, String workingDir, Variables variables) {
 		OutRequest.Params params = request.params();
 		Assert.state(params.text() != null || params.cardFile() != null || params.textFile() != null,
 				"At least one of 'text', 'card_file', or 'text_file' must be provided");
 		Source source = request.source();
-		WebhookMessage message = createWebhookMessage(params, workingDir);
-		WebhookResponse response = this.webHook.send(source.getUrl(), message);
-		List<Metadata> metadata = List.of(new Metadata("status", response.statusCode()),
-				new Metadata("body", response.body()));
-		return new OutResponse(TimestampVersion.now(), metadata);
+		Path stateDirectory = getStateDirectory(source);
+		NotificationPolicy.Decision decision = getNotificationDecision(source, params, stateDirectory, variables);
+		String suppressionReason = decision.getSuppressionReason();
+		if (suppressionReason != null) {
+			console.log("Message suppressed: {}", suppressionReason);
+			return new OutResponse(TimestampVersion.now(),
+					List.of(new Metadata("status", "Suppressed"), new Metadata("reason", suppressionReason)));
+		}
+		WebhookMessage message = createWebhookMessage(params, workingDir, stateDirectory);
+		Variables messageVariables = getMessageVariables(params, workingDir, variables);
+		String idempotencyKey = getIdempotencyKey(source, stateDirectory, message, messageVariables);
+		DeliveryLedger ledger = (idempotencyKey != null)
+				? new DeliveryLedger(stateDirectory.resolve(LEDGER_DIRECTORY), this.objectMapper) : null;
+		if (ledger != null) {
+			OutResponse previous = ledger.find(idempotencyKey);
+			if (previous != null) {
+				console.log("Message has already been sent, returning the original response");
+				decision.commit();
+				return previous;
+			}
+		}
+		WebhookResponse response = send(source, message, messageVariables, stateDirectory);
+		// Queued messages are delivered from the outbox and coalesced messages are sent
+		// on behalf of this build by the build that started the group
+		if (isAccepted(response) || isQueued(response) || COALESCED.equals(response.statusCode())) {
+			decision.commit();
+		}
+		List<Metadata> metadata = new ArrayList<>();
+		metadata.add(new Metadata("status", response.statusCode()));
+		if (response.body() != null) {
+			metadata.add(new Metadata("body", response.body()));
+		}
+		response.details().forEach((name, value) -> metadata.add(new Metadata(name, value)));
+		OutResponse outResponse = new OutResponse(TimestampVersion.now(), metadata);
+		// Only messages accepted by the webhook are recorded so that a retried step
+		// sends a queued message again rather than replaying a success
+		if (ledger != null && isAccepted(response)) {
+			ledger.record(idempotencyKey, outResponse, source.getIdempotencyTtl());
+		}
+		return outResponse;
+	}
+
+	/**
+	 * Apply the notification policy of the source before any message content is read. The
+	 * decision is committed once the message has been sent.
+	 * @return the decision whether the message is suppressed
+	 */
+	private NotificationPolicy.Decision getNotificationDecision(Source source, OutRequest.Params params,
+			Path stateDirectory, Variables variables) {
+		NotificationPolicy policy = NotificationPolicy.of(source, Clock.systemUTC());
+		if (policy == null) {
+			return NotificationPolicy.Decision.SEND;
+		}
+		String job = getJob(variables);
+		Path directory = (stateDirectory != null) ? stateDirectory.resolve(JOB_STATUS_DIRECTORY) : null;
+		return policy.decide((job != null) ? source.getUrl() + "\n" + job : null, params.status(), directory);
+	}
+
+	private String getJob(Variables variables) {
+		String team = variables.apply("BUILD_TEAM_NAME");
+		String pipeline = variables.apply("BUILD_PIPELINE_NAME");
+		String job = variables.apply("BUILD_JOB_NAME");
+		return (StringUtils.hasText(job)) ? team + "/" + pipeline + "/" + job : null;
+	}
+
+	private String getIdempotencyKey(Source source, Path stateDirectory, WebhookMessage message, Variables variables) {
+		if (source.getIdempotencyTtl() == null) {
+			return null;
+		}
+		Assert.state(stateDirectory != null, "A state directory is required for idempotent sends");
+		if (variables.apply("BUILD_ID") == null && variables.apply("BUILD_NAME") == null) {
+			// Messages sent outside of a build cannot be told apart from a repeated send
+			return null;
+		}
+		StringBuilder key = new StringBuilder(source.getUrl()).append('\n');
+		for (String name : BUILD_VARIABLES) {
+			key.append(name).append('=').append(variables.apply(name)).append('\n');
+		}
+		key.append(MessageFingerprint.of(message, this.objectMapper, variables));
+		return DigestUtils.md5DigestAsHex(key.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private boolean isAccepted(WebhookResponse response) {
+		return response.statusCode().startsWith("2");
+	}
+
+	private boolean isQueued(WebhookResponse response) {
+		return response.details().containsKey("outbox");
+	}
+
+	private WebhookResponse send(Source source, WebhookMessage message, Variables messageVariables,
+			Path stateDirectory) {
+		List<String> coalescedBuilds = coalesce(source, stateDirectory, message, messageVariables);
+		if (coalescedBuilds != null && coalescedBuilds.isEmpty()) {
+			return new WebhookResponse(COALESCED, "").withDetail("coalesced", "joined");
+		}
+		Path threadDirectory = (stateDirectory != null) ? stateDirectory.resolve(THREAD_CACHE_DIRECTORY) : null;
+		String threadKey = getThreadKey(source, messageVariables);
+		if (threadKey != null) {
+			String threadName = this.threadNames.get(source.getUrl(), threadKey, threadDirectory);
+			message.put("thread", (threadName != null) ? Map.of("name", threadName) : Map.of("threadKey", threadKey));
+		}
+		RetryPolicy retryPolicy = RetryPolicy.of(source.getMaxAttempts(), source.getRetryBudget());
+		RateLimit rateLimit = RateLimit.of(source.getRateLimit(), source.getRateLimitBurst());
+		ResponseMode responseMode = ResponseMode.of(source.getResponseMode());
+		WebhookSettings settings = new WebhookSettings(source.getConnectTimeout(), source.getReadTimeout(), retryPolicy,
+				rateLimit, stateDirectory, responseMode);
+		List<WebhookMessage> parts = this.messageSplitter.split(message, messageVariables);
+		String url = (threadKey != null || parts.size() > 1) ? MessageSplitter.getThreadUrl(source.getUrl())
+				: source.getUrl();
+		WebhookResponse response = null;
+		for (WebhookMessage part : parts) {
+			response = (source.isAsync()) ? this.webHook.enqueue(url, part, messageVariables, settings)
+					: this.webHook.send(url, part, messageVariables, settings);
+		}
+		if (source.isAsync()) {
+			this.backgroundSender.start(settings);
+		}
+		if (parts.size() > 1) {
+			response = response.withDetail("parts", String.valueOf(parts.size()));
+		}
+		if (coalescedBuilds != null) {
+			response = response.withDetail("coalesced", String.valueOf(coalescedBuilds.size()));
+		}
+		String threadName = getThreadName(response);
+		if (threadName != null) {
+			if (threadKey != null) {
+				this.threadNames.put(source.getUrl(), threadKey, threadName, threadDirectory);
+			}
+			response = response.withDetail("thread", threadName);
+		}
+		return response;
+	}
+
+	/**
+	 * Coalesce the message with matching messages sent by other builds, adding the builds
+	 * to the message if it is to be sent on their behalf.
+	 * @return the coalesced builds, an empty list if the message was coalesced into a
+	 * message sent by another build, or {@code null} if messages are not coalesced
+	 */
+	private List<String> coalesce(Source source, Path stateDirectory, WebhookMessage message, Variables variables) {
+		if (source.getCoalesceWindow() == null) {
+			return null;
+		}
+		Assert.state(stateDirectory != null, "A state directory is required to coalesce messages");
+		// Placeholders in the message are not yet resolved so messages that differ
+		// only by the build that sent them are coalesced
+		String fingerprint = MessageFingerprint.of(message, this.objectMapper, variables.with(UNSET_BUILD_VARIABLES));
+		String key = DigestUtils
+			.md5DigestAsHex((source.getUrl() + "\n" + fingerprint).getBytes(StandardCharsets.UTF_8));
+		MessageCoalescer coalescer = new MessageCoalescer(stateDirectory.resolve(COALESCE_DIRECTORY));
+		List<String> builds = coalescer.coalesce(key, getBuildDescription(variables), source.getCoalesceWindow());
+		if (builds == null) {
+			console.log("Message coalesced into a message sent by another build");
+			return Collections.emptyList();
+		}
+		if (builds.size() > 1) {
+			String affected = "Affected builds:\n" + String.join("\n", builds);
+			Object text = message.get("text");
+			message.put("text", (text instanceof String string) ? string + "\n\n" + affected : affected);
+		}
+		return builds;
+	}
+
+	private String getBuildDescription(Variables variables) {
+		StringBuilder description = new StringBuilder();
+		for (String name : new String[] { "BUILD_TEAM_NAME", "BUILD_PIPELINE_NAME", "BUILD_JOB_NAME" }) {
+			String value = variables.apply(name);
+			if (StringUtils.hasText(value)) {
+				description.append((!description.isEmpty()) ? "/" : "").append(value);
+			}
+		}
+		String buildName = variables.apply("BUILD_NAME");
+		if (StringUtils.hasText(buildName)) {
+			description.append((!description.isEmpty()) ? " #" : "#").append(buildName);
+		}
+		return (!description.isEmpty()) ? description.toString() : "unknown build";
+	}
+
+	private String getThreadKey(Source source, Variables variables) {
+		if (source.getThreadKey() == null) {
+			return null;
+		}
+		String threadKey = variables.resolvePlaceholders(source.getThreadKey());
+		return (StringUtils.hasText(threadKey)) ? threadKey : null;
+	}
+
+	private String getThreadName(WebhookResponse response) {
+		String threadName = response.details().get("thread");
+		if (threadName != null || !StringUtils.hasText(response.body())) {
+			return threadName;
+		}
+		try {
+			JsonNode name = this.objectMapper.readTree(response.body()).at("/thread/name");
+			return (name.isTextual()) ? name.textValue() : null;
+		}
+		catch (IOException ex) {
+			// Responses that are not messages, such as errors, have no thread
+			return null;
+		}
+	}
+
+	private Path getStateDirectory(Source source) {
+		Path stateDirectory = source.getStateDirectory();
+		return (stateDirectory == null && source.isAsync()) ? DEFAULT_ASYNC_STATE_DIRECTORY : stateDirectory;
 	}
 
-	private WebhookMessage createWebhookMessage(OutRequest.Params params, String workingDir) {
+	private WebhookMessage createWebhookMessage(OutRequest.Params params, String workingDir, Path stateDirectory) {
 		WebhookMessage message = new WebhookMessage();
 		if (params.text() != null) {
 			message.put("text", params.text());
 		}
 		if (params.cardFile() != null) {
-			message.put("cardsV2", readJsonFileContent(workingDir, params.cardFile()));
+			message.put("cardsV2", readJsonFileContent(workingDir, params.cardFile(), stateDirectory));
 		}
 		if (params.text() == null && params.cardFile() == null) {
-			message.put("text", readFileContent(workingDir, params.textFile()));
-		}
-		else {
-			addTextFileToEnvironment(workingDir, params.textFile());
+			message.put("text", readTextFileContent(workingDir, params));
 		}
 		return message;
 	}
 
-	private void addTextFileToEnvironment(String workingDir, String textFile) {
-		if (StringUtils.hasText(textFile)) {
-			String content = readFileContent(workingDir, textFile);
-			PropertySource<?> propertySource = new MapPropertySource("textFile", Map.of("TEXT_FILE_CONTENT", content));
-			this.environment.getPropertySources().addLast(propertySource);
+	private Variables getMessageVariables(OutRequest.Params params, String workingDir, Variables variables) {
+		if ((params.text() != null || params.cardFile() != null) && StringUtils.hasText(params.textFile())) {
+			String content = readTextFileContent(workingDir, params);
+			return variables.with(Map.of(TEXT_FILE_CONTENT, content));
 		}
+		return variables;
 	}
 
-	private List<Map<Object, Object>> readJsonFileContent(String workingDir, String fileName) {
+	private Object readJsonFileContent(String workingDir, String fileName, Path stateDirectory) {
 		try {
-			TypeReference<List<Map<Object, Object>>> typeRef = new TypeReference<>() {
-			};
-			return this.objectMapper.readValue(Paths.get(workingDir, fileName).toFile(), typeRef);
+			return this.fileContentCache.get(Paths.get(workingDir, fileName), Object.class,
+					(file) -> readJsonContent(Files.readAllBytes(file), stateDirectory));
 		}
 		catch (IOException ex) {
 			throw new IllegalArgumentException("Error parsing JSON content from message file '" + fileName + "'", ex);
 		}
 	}
 
-	private String readFileContent(String workingDir, String fileName) {
+	private Object readJsonContent(byte[] content, Path stateDirectory) throws IOException {
+		RawJson rawJson = readRawJson(content);
+		if (rawJson != null) {
+			return rawJson;
+		}
+		if (stateDirectory != null) {
+			return new CardTemplateCache(stateDirectory.resolve(CARD_CACHE_DIRECTORY)).get(content, this.objectMapper);
+		}
+		TypeReference<List<Map<Object, Object>>> typeRef = new TypeReference<>() {
+		};
+		return this.objectMapper.readValue(content, typeRef);
+	}
+
+	/**
+	 * Return the content as {@link RawJson} if it can be sent without being read into
+	 * maps and lists. The content must be a single well formed UTF-8 JSON array without
+	 * any placeholders.
+	 * @param content the file content
+	 * @return the raw JSON or {@code null} if the content must be parsed
+	 * @throws IOException if the content is not well formed
+	 */
+	private RawJson readRawJson(byte[] content) throws IOException {
+		if (!isUtf8WithoutBom(content) || containsAny(content, PLACEHOLDER_MARKERS)) {
+			return null;
+		}
+		try (JsonParser parser = this.objectMapper.createParser(content)) {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				return null;
+			}
+			parser.skipChildren();
+			if (parser.nextToken() != null) {
+				return null;
+			}
+		}
+		return new RawJson(new String(content, StandardCharsets.UTF_8));
+	}
+
+	private boolean isUtf8WithoutBom(byte[] content) {
+		// Other encodings start with a byte order mark or have zero bytes around the
+		// first character
+		for (int i = 0; i < Math.min(content.length, 4); i++) {
+			if (content[i] == 0) {
+				return false;
+			}
+		}
+		return content.length == 0
+				|| (content[0] != (byte) 0xEF && content[0] != (byte) 0xFE && content[0] != (byte) 0xFF);
+	}
+
+	private boolean containsAny(byte[] content, byte[][] markers) {
+		for (byte[] marker : markers) {
+			for (int i = 0; i <= content.length - marker.length; i++) {
+				if (content[i] == marker[0] && Arrays.equals(content, i, i + marker.length, marker, 0, marker.length)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static byte[] bytes(String marker) {
+		return marker.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private String readTextFileContent(String workingDir, OutRequest.Params params) {
+		String fileName = params.textFile();
+		TextFileExcerpt excerpt = TextFileExcerpt.of(params);
 		try {
-			return new String(Files.readAllBytes(Paths.get(workingDir, fileName)));
+			if (excerpt != null) {
+				// Excerpts are typically taken from large log files that change, so
+				// are always read from disk
+				return excerpt.read(Paths.get(workingDir, fileName));
+			}
+			return this.fileContentCache.get(Paths.get(workingDir, fileName), String.class,
+					(file) -> new String(Files.readAllBytes(file)));
 		}
 		catch (IOException ex) {
 			throw new IllegalArgumentException("Error reading file '" + fileName + "'", ex);
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.spring.concourse.googlechatnotify.command.payload.OutRequest;
+import io.spring.concourse.googlechatnotify.command.payload.OutResponse;
+import io.spring.concourse.googlechatnotify.command.payload.Source;
+import io.spring.concourse.googlechatnotify.system.SystemInput;
+import io.spring.concourse.googlechatnotify.system.SystemOutput;
+import io.spring.concourse.googlechatnotify.system.Variables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Command that keeps the application running and handles {@code out} requests received on
+ * a Unix domain socket. Avoids application startup costs when many notifications are sent
+ * from the same host.
+ * <p>
+ * Each connection carries a single request made up of a line containing the working
+ * directory, zero or more {@code NAME=VALUE} lines with the build environment variables,
+ * an empty line and finally the JSON request. The JSON response is written back before
+ * the connection is closed or, if the request fails, a single line starting with
+ * {@code error:}. Connections are handled concurrently, with at most
+ * {@code --concurrency} requests in flight.
+ * <p>
+ * Card and text file content is cached between requests and evicted when the files
+ * change.
+ *
+ * @author Scott Frederick
+ */
+@Component
+public class ServeCommand implements Command, DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(ServeCommand.class);
+
+	/**
+	 * Property that can be used to configure the socket path.
+	 */
+	public static final String SOCKET_PROPERTY = "google-chat-notify.socket";
+
+	private static final String DEFAULT_SOCKET = "/tmp/google-chat-notify.sock";
+
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	private static final int DEFAULT_CONCURRENCY = 8;
+
+	private final Environment environment;
+
+	private final Variables variables;
+
+	private final SystemInput systemInput;
+
+	private final SystemOutput systemOutput;
+
+	private final OutHandler handler;
+
+	private final FileContentCache fileContentCache;
+
+	private volatile ServerSocketChannel server;
+
+	public ServeCommand(Environment environment, SystemInput systemInput, SystemOutput systemOutput, OutHandler handler,
+			FileContentCache fileContentCache) {
+		this.environment = environment;
+		this.variables = Variables.of(environment);
+		this.systemInput = systemInput;
+		this.systemOutput = systemOutput;
+		this.handler = handler;
+		this.fileContentCache = fileContentCache;
+	}
+
+	@Override
+	@RegisterReflectionForBinding({ OutRequest.class, OutResponse.class, Source.Options.class })
+	public void run(ApplicationArguments args) throws Exception {
+		logger.debug("Running 'serve' command");
+		serve(getSocket(args), getConcurrency(args));
+	}
+
+	private Path getSocket(ApplicationArguments args) {
+		List<String> values = args.getOptionValues("socket");
+		if (values != null && !values.isEmpty()) {
+			return Path.of(values.get(0));
+		}
+		return Path.of(this.environment.getProperty(SOCKET_PROPERTY, DEFAULT_SOCKET));
+	}
+
+	private int getConcurrency(ApplicationArguments args) {
+		List<String> values = args.getOptionValues("concurrency");
+		int concurrency = (values != null && !values.isEmpty()) ? Integer.parseInt(values.get(0)) : DEFAULT_CONCURRENCY;
+		Assert.state(concurrency > 0, "Concurrency must be greater than zero");
+		return concurrency;
+	}
+
+	void serve(Path socket) throws IOException {
+		serve(socket, DEFAULT_CONCURRENCY);
+	}
+
+	void serve(Path socket, int concurrency) throws IOException {
+		Files.deleteIfExists(socket);
+		this.fileContentCache.watch();
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			server.bind(UnixDomainSocketAddress.of(socket));
+			this.server = server;
+			logger.info("Listening for requests on {}", socket);
+			while (server.isOpen()) {
+				SocketChannel channel = server.accept();
+				executor.execute(() -> handle(channel));
+			}
+		}
+		catch (ClosedChannelException ex) {
+			logger.debug("Stopped listening for requests on {}", socket);
+		}
+		finally {
+			this.server = null;
+			executor.shutdown();
+			Files.deleteIfExists(socket);
+		}
+	}
+
+	private void handle(SocketChannel channel) {
+		try (channel) {
+			try {
+				InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+				String workingDir = readLine(in);
+				Assert.state(workingDir != null, "No working directory specified");
+				Map<String, String> variables = readVariables(in);
+				OutResponse response = handle(StreamUtils.nonClosing(in), workingDir, variables);
+				this.systemOutput.write(Channels.newOutputStream(channel), response);
+			}
+			catch (Exception ex) {
+				logger.error("Error handling request", ex);
+				writeError(channel, ex);
+			}
+		}
+		catch (IOException ex) {
+			logger.error("Error writing response", ex);
+		}
+	}
+
+	private void writeError(SocketChannel channel, Exception ex) throws IOException {
+		String message = (ex.getMessage() != null) ? ex.getMessage() : ex.getClass().getName();
+		String line = "error: " + message.replace('\n', ' ') + "\n";
+		channel.write(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private OutResponse handle(InputStream in, String workingDir, Map<String, String> values) throws IOException {
+		Variables variables = this.variables.with(values);
+		OutRequest request = this.systemInput.read(in, OutRequest.class, variables);
+		return this.handler.handle(request, workingDir, variables);
+	}
+
+	private Map<String, String> readVariables(InputStream in) throws IOException {
+		Map<String, String> variables = new LinkedHashMap<>();
+		String line = readLine(in);
+		while (line != null && !line.isEmpty()) {
+			int separator = line.indexOf('=');
+			if (separator > 0) {
+				variables.put(line.substring(0, separator), line.substring(separator + 1));
+			}
+			line = readLine(in);
+		}
+		return variables;
+	}
+
+	private String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int ch = in.read();
+		if (ch == -1) {
+			return null;
+		}
+		while (ch != -1 && ch != '\n') {
+			Assert.state(line.size() < MAX_LINE_LENGTH, "Request header line is too long");
+			line.write(ch);
+			ch = in.read();
+		}
+		return line.toString(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void destroy() throws IOException {
+		ServerSocketChannel server = this.server;
+		if (server != null) {
+			server.close();
+		}
+	}
+
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Pattern;
+
+import io.spring.concourse.googlechatnotify.command.payload.OutRequest;
+
+/**
+ * Excerpt of a {@code text_file} made up of its first bytes, its last lines or the lines
+ * that match a pattern. Files are read with positional reads into a fixed size buffer,
+ * and the last lines are found by reading backwards from the end of the file, so memory
+ * use depends on the size of the excerpt rather than the size of the file. Excerpts of
+ * lines are limited to {@link #MAX_SIZE} bytes and long lines are truncated.
+ *
+ * @author Scott Frederick
+ */
+final class TextFileExcerpt {
+
+	static final int MAX_SIZE = 1024 * 1024;
+
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	private final Integer headBytes;
+
+	private final Integer tailLines;
+
+	private final Pattern pattern;
+
+	private TextFileExcerpt(Integer headBytes, Integer tailLines, Pattern pattern) {
+		this.headBytes = headBytes;
+		this.tailLines = tailLines;
+		this.pattern = pattern;
+	}
+
+	/**
+	 * Return the excerpt described by the given parameters.
+	 * @param params the request parameters
+	 * @return the excerpt or {@code null} if the whole file should be used
+	 */
+	static TextFileExcerpt of(OutRequest.Params params) {
+		if (params.textFileHeadBytes() == null && params.textFileTailLines() == null
+				&& params.textFilePattern() == null) {
+			return null;
+		}
+		Pattern pattern = (params.textFilePattern() != null) ? Pattern.compile(params.textFilePattern()) : null;
+		return new TextFileExcerpt(params.textFileHeadBytes(), params.textFileTailLines(), pattern);
+	}
+
+	/**
+	 * Read the excerpt from the given file.
+	 * @param file the file to read
+	 * @return the excerpt
+	 * @throws IOException on read error
+	 */
+	String read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (this.pattern != null) {
+				return readMatchingLines(channel);
+			}
+			if (this.tailLines != null) {
+				return readTailLines(channel);
+			}
+			return readHead(channel);
+		}
+	}
+
+	private String readHead(FileChannel channel) throws IOException {
+		int length = (int) Math.min(Math.min(this.headBytes, MAX_SIZE), channel.size());
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		readFully(channel, buffer, 0);
+		return decode(buffer.array(), 0, withoutPartialCharacter(buffer.array(), buffer.limit()));
+	}
+
+	private String readTailLines(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long limit = Math.max(0, size - MAX_SIZE);
+		long start = findTailStart(channel, size, limit);
+		ByteBuffer buffer = ByteBuffer.allocate((int) (size - start));
+		readFully(channel, buffer, start);
+		byte[] bytes = buffer.array();
+		int offset = skipContinuationBytes(bytes, buffer.limit());
+		return decode(bytes, offset, buffer.limit() - offset);
+	}
+
+	private long findTailStart(FileChannel channel, long size, long limit) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		long position = size;
+		int lines = 0;
+		while (position > limit) {
+			int length = (int) Math.min(BUFFER_SIZE, position - limit);
+			position -= length;
+			buffer.clear().limit(length);
+			readFully(channel, buffer, position);
+			for (int i = length - 1; i >= 0; i--) {
+				// A newline at the very end of the file does not start another line
+				if (buffer.get(i) == '\n' && position + i != size - 1 && ++lines == this.tailLines) {
+					return position + i + 1;
+				}
+			}
+		}
+		return limit;
+	}
+
+	private String readMatchingLines(FileChannel channel) throws IOException {
+		Matches matches = new Matches();
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		long position = 0;
+		int read = channel.read(buffer, position);
+		while (read != -1 && !matches.isComplete()) {
+			for (int i = 0; i < read && !matches.isComplete(); i++) {
+				byte b = buffer.get(i);
+				if (b == '\n') {
+					matches.add(line);
+					line.reset();
+				}
+				else if (line.size() < MAX_LINE_LENGTH) {
+					line.write(b);
+				}
+			}
+			position += read;
+			buffer.clear();
+			read = channel.read(buffer, position);
+		}
+		if (line.size() > 0 && !matches.isComplete()) {
+			matches.add(line);
+		}
+		return matches.toString();
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read == -1) {
+				break;
+			}
+		}
+		buffer.flip();
+	}
+
+	private static int withoutPartialCharacter(byte[] bytes, int length) {
+		int start = length - 1;
+		while (start >= 0 && start > length - 4 && (bytes[start] & 0xC0) == 0x80) {
+			start--;
+		}
+		if (start < 0) {
+			return length;
+		}
+		return (length - start < getCharacterLength(bytes[start])) ? start : length;
+	}
+
+	private static int getCharacterLength(byte lead) {
+		int value = lead & 0xFF;
+		if (value >= 0xF0) {
+			return 4;
+		}
+		if (value >= 0xE0) {
+			return 3;
+		}
+		return (value >= 0xC0) ? 2 : 1;
+	}
+
+	private static int skipContinuationBytes(byte[] bytes, int length) {
+		int offset = 0;
+		while (offset < length && offset < 3 && (bytes[offset] & 0xC0) == 0x80) {
+			offset++;
+		}
+		return offset;
+	}
+
+	private static String decode(byte[] bytes, int offset, int length) {
+		return new String(bytes, offset, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Lines that match the pattern, keeping either the first lines up to the head size or
+	 * the last lines.
+	 */
+	private final class Matches {
+
+		private final Deque<Line> lines = new ArrayDeque<>();
+
+		private final int maxSize = (TextFileExcerpt.this.headBytes != null)
+				? Math.min(TextFileExcerpt.this.headBytes, MAX_SIZE) : MAX_SIZE;
+
+		private final int maxLines = (TextFileExcerpt.this.tailLines != null) ? TextFileExcerpt.this.tailLines
+				: Integer.MAX_VALUE;
+
+		private int size;
+
+		private boolean complete;
+
+		void add(ByteArrayOutputStream bytes) {
+			String text = bytes.toString(StandardCharsets.UTF_8);
+			int lineSize = bytes.size() + 1;
+			if (text.endsWith("\r")) {
+				text = text.substring(0, text.length() - 1);
+				lineSize--;
+			}
+			if (!TextFileExcerpt.this.pattern.matcher(text).find()) {
+				return;
+			}
+			if (TextFileExcerpt.this.tailLines == null && this.size + lineSize > this.maxSize) {
+				this.complete = true;
+				return;
+			}
+			this.lines.addLast(new Line(text, lineSize));
+			this.size += lineSize;
+			while (this.lines.size() > this.maxLines || this.size > this.maxSize) {
+				this.size -= this.lines.removeFirst().size();
+			}
+		}
+
+		boolean isComplete() {
+			return this.complete;
+		}
+
+		@Override
+		public String toString() {
+			return String.join("\n", this.lines.stream().map(Line::text).toList());
+		}
+
+	}
+
+	/**
+	 * A matching line.
+	 *
+	 * @param text the line text
+	 * @param size the size of the line in bytes, including its line separator
+	 */
+	private record Line(String text, int size) {
+
+	}
+
+}
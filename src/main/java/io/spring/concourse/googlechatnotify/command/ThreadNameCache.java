@@ -0,0 +1,164 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import io.spring.concourse.googlechatnotify.system.ConsoleLogger;
+
+/**
+ * Cache of the names of the threads that Google Chat created for thread keys, so that
+ * later messages for the same key reply to the thread by name. Names are held in memory
+ * for messages sent by the same process and, when a directory is given, in files shared
+ * with other invocations. Entries are keyed by a hash of the space and the thread key.
+ *
+ * @author Scott Frederick
+ */
+class ThreadNameCache {
+
+	private static final ConsoleLogger console = new ConsoleLogger();
+
+	private static final int MAX_ENTRIES = 1024;
+
+	private static final Duration MAX_AGE = Duration.ofDays(7);
+
+	private final Map<String, String> names = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+
+	});
+
+	/**
+	 * Return the cached thread name for the given thread key.
+	 * @param url the webhook URL
+	 * @param threadKey the thread key
+	 * @param directory the directory holding shared entries or {@code null}
+	 * @return the thread name or {@code null}
+	 */
+	String get(String url, String threadKey, Path directory) {
+		String key = getKey(url, threadKey);
+		String name = this.names.get(key);
+		if (name == null && directory != null) {
+			name = read(directory.resolve(key));
+			if (name != null) {
+				this.names.put(key, name);
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * Add the thread name for the given thread key to the cache.
+	 * @param url the webhook URL
+	 * @param threadKey the thread key
+	 * @param name the thread name
+	 * @param directory the directory holding shared entries or {@code null}
+	 */
+	void put(String url, String threadKey, String name, Path directory) {
+		String key = getKey(url, threadKey);
+		if (name.equals(this.names.put(key, name)) || directory == null) {
+			return;
+		}
+		write(directory, key, name);
+	}
+
+	private String read(Path file) {
+		try {
+			if (!Files.exists(file) || isExpired(file)) {
+				return null;
+			}
+			String name = Files.readString(file, StandardCharsets.UTF_8);
+			return (!name.isEmpty()) ? name : null;
+		}
+		catch (IOException ex) {
+			console.log("Ignoring unreadable thread cache entry '" + file + "': " + ex.getMessage());
+			return null;
+		}
+	}
+
+	private void write(Path directory, String key, String name) {
+		Path file = directory.resolve(key);
+		try {
+			Files.createDirectories(directory);
+			Path temp = Files.createTempFile(directory, "entry-", ".tmp");
+			try {
+				Files.writeString(temp, name, StandardCharsets.UTF_8);
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			finally {
+				Files.deleteIfExists(temp);
+			}
+			evict(directory);
+		}
+		catch (IOException ex) {
+			// Later messages start a new thread rather than failing
+			console.log("Unable to write thread cache entry '" + file + "': " + ex.getMessage());
+		}
+	}
+
+	private void evict(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : files.toList()) {
+				try {
+					if (isExpired(file)) {
+						Files.deleteIfExists(file);
+					}
+				}
+				catch (IOException ex) {
+					// Removed by another process
+				}
+			}
+		}
+	}
+
+	private boolean isExpired(Path file) throws IOException {
+		long age = System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis();
+		return age > MAX_AGE.toMillis();
+	}
+
+	private static String getKey(String url, String threadKey) {
+		// The query holds the webhook credentials, the space is identified by the path
+		int queryIndex = url.indexOf('?');
+		String space = (queryIndex != -1) ? url.substring(0, queryIndex) : url;
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(space.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(threadKey.getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest.digest());
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+}
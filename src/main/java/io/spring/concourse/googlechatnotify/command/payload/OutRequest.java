@@ -18,6 +18,8 @@ package io.spring.concourse.googlechatnotify.command.payload;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import io.spring.concourse.googlechatnotify.system.UnresolvedStringDeserializer;
 
 import org.springframework.core.style.ToStringCreator;
 import org.springframework.util.Assert;
@@ -46,18 +48,42 @@ public record OutRequest(Source source, Params params) {
 	/**
 	 * Parameters for the {@link OutRequest}.
 	 *
-	 * @param text formatted text to send to the webhook
+	 * @param text formatted text to send to the webhook, with placeholders left to be
+	 * resolved as the message is sent
 	 * @param cardFile JSON card content to send to the webhook
 	 * @param textFile a text file that can be included in webhook content
+	 * @param textFileHeadBytes the number of bytes to use from the start of the text file
+	 * @param textFileTailLines the number of lines to use from the end of the text file
+	 * @param textFilePattern a pattern that lines of the text file must match to be used
+	 * @param status the status of the build, such as {@code succeeded} or {@code failed}
 	 */
-	public record Params(String text, String cardFile, String textFile) {
+	public record Params(@JsonDeserialize(using = UnresolvedStringDeserializer.class) String text, String cardFile,
+			String textFile, Integer textFileHeadBytes, Integer textFileTailLines, String textFilePattern,
+			String status) {
 
 		@JsonCreator
 		public Params(@JsonProperty("text") String text, @JsonProperty("card_file") String cardFile,
-				@JsonProperty("text_file") String textFile) {
+				@JsonProperty("text_file") String textFile,
+				@JsonProperty("text_file_head_bytes") Integer textFileHeadBytes,
+				@JsonProperty("text_file_tail_lines") Integer textFileTailLines,
+				@JsonProperty("text_file_pattern") String textFilePattern, @JsonProperty("status") String status) {
+			Assert.isTrue(textFileHeadBytes == null || textFileHeadBytes > 0,
+					"Text file head bytes must be greater than zero");
+			Assert.isTrue(textFileTailLines == null || textFileTailLines > 0,
+					"Text file tail lines must be greater than zero");
+			Assert.isTrue(textFileHeadBytes == null || textFileTailLines == null,
+					"Only one of 'text_file_head_bytes' or 'text_file_tail_lines' may be provided");
 			this.text = text;
 			this.cardFile = cardFile;
 			this.textFile = textFile;
+			this.textFileHeadBytes = textFileHeadBytes;
+			this.textFileTailLines = textFileTailLines;
+			this.textFilePattern = textFilePattern;
+			this.status = status;
+		}
+
+		public Params(String text, String cardFile, String textFile) {
+			this(text, cardFile, textFile, null, null, null, null);
 		}
 
 		@Override
@@ -65,6 +91,10 @@ public record OutRequest(Source source, Params params) {
 			return new ToStringCreator(this).append("text", this.text)
 				.append("cardFile", this.cardFile)
 				.append("textFile", this.textFile)
+				.append("textFileHeadBytes", this.textFileHeadBytes)
+				.append("textFileTailLines", this.textFileTailLines)
+				.append("textFilePattern", this.textFilePattern)
+				.append("status", this.status)
 				.toString();
 		}
 
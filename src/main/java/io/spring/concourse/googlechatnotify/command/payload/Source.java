@@ -16,11 +16,18 @@
 
 package io.spring.concourse.googlechatnotify.command.payload;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
 
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.core.style.ToStringCreator;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
 /**
  * The source payload containing shared configuration.
@@ -31,20 +38,149 @@ public class Source {
 
 	private final String url;
 
+	/**
+	 * Options set from the remaining properties of the payload. Jackson does not support
+	 * unwrapped creator properties so the options are bound to this field.
+	 */
+	@JsonUnwrapped
+	private Options options = Options.NONE;
+
 	@JsonCreator
 	public Source(@JsonProperty("url") String uri) {
 		Assert.hasText(uri, "URL must not be empty");
 		this.url = uri;
 	}
 
+	private static Duration parseDuration(String value) {
+		return (StringUtils.hasText(value)) ? DurationStyle.detectAndParse(value, ChronoUnit.SECONDS) : null;
+	}
+
+	private static String nullIfEmpty(String value) {
+		return (StringUtils.hasText(value)) ? value : null;
+	}
+
 	public String getUrl() {
 		return this.url;
 	}
 
+	public Duration getConnectTimeout() {
+		return parseDuration(this.options.connectTimeout());
+	}
+
+	public Duration getReadTimeout() {
+		return parseDuration(this.options.readTimeout());
+	}
+
+	public Integer getMaxAttempts() {
+		return this.options.maxAttempts();
+	}
+
+	public Duration getRetryBudget() {
+		return parseDuration(this.options.retryBudget());
+	}
+
+	public Double getRateLimit() {
+		return this.options.rateLimit();
+	}
+
+	public Integer getRateLimitBurst() {
+		return this.options.rateLimitBurst();
+	}
+
+	public Path getStateDirectory() {
+		String stateDirectory = nullIfEmpty(this.options.stateDirectory());
+		return (stateDirectory != null) ? Path.of(stateDirectory) : null;
+	}
+
+	public boolean isAsync() {
+		return Boolean.TRUE.equals(this.options.async());
+	}
+
+	public String getThreadKey() {
+		return nullIfEmpty(this.options.threadKey());
+	}
+
+	public String getResponseMode() {
+		return this.options.responseMode();
+	}
+
+	public Duration getIdempotencyTtl() {
+		return parseDuration(this.options.idempotencyTtl());
+	}
+
+	public Duration getCoalesceWindow() {
+		return parseDuration(this.options.coalesceWindow());
+	}
+
+	public boolean isOnlyOnTransitions() {
+		return Boolean.TRUE.equals(this.options.onlyOnTransitions());
+	}
+
+	public Integer getSuccessEvery() {
+		return this.options.successEvery();
+	}
+
+	public String getQuietHours() {
+		return nullIfEmpty(this.options.quietHours());
+	}
+
+	public String getTimeZone() {
+		return nullIfEmpty(this.options.timeZone());
+	}
+
 	@Override
 	public String toString() {
-		ToStringCreator creator = new ToStringCreator(this).append("url", this.url);
+		ToStringCreator creator = new ToStringCreator(this).append("url", this.url).append("options", this.options);
 		return creator.toString();
 	}
 
+	/**
+	 * Optional settings of the source, as given in the payload.
+	 *
+	 * @param connectTimeout the time to wait for a connection to the webhook
+	 * @param readTimeout the time to wait for the webhook to respond
+	 * @param maxAttempts the maximum number of times a message is sent
+	 * @param retryBudget the maximum total time to spend sending a message
+	 * @param rateLimit the maximum number of messages per second
+	 * @param rateLimitBurst the number of messages that may be sent at once
+	 * @param stateDirectory the directory holding state shared between invocations
+	 * @param async if messages are queued for a background process
+	 * @param threadKey the key of the thread to send messages to
+	 * @param responseMode how the response is recorded in the metadata
+	 * @param idempotencyTtl how long sent messages are remembered
+	 * @param coalesceWindow how long to wait for matching messages from other builds
+	 * @param onlyOnTransitions if messages are only sent when the status changes
+	 * @param successEvery the number of consecutive successes between messages
+	 * @param quietHours the daily windows during which messages are suppressed
+	 * @param timeZone the time zone of the quiet hours
+	 */
+	public record Options(@JsonProperty("connect_timeout") String connectTimeout,
+			@JsonProperty("read_timeout") String readTimeout, @JsonProperty("max_attempts") Integer maxAttempts,
+			@JsonProperty("retry_budget") String retryBudget, @JsonProperty("rate_limit") Double rateLimit,
+			@JsonProperty("rate_limit_burst") Integer rateLimitBurst, @JsonProperty("state_dir") String stateDirectory,
+			@JsonProperty("async") Boolean async, @JsonProperty("thread_key") String threadKey,
+			@JsonProperty("response_mode") String responseMode, @JsonProperty("idempotency_ttl") String idempotencyTtl,
+			@JsonProperty("coalesce_window") String coalesceWindow,
+			@JsonProperty("only_on_transitions") Boolean onlyOnTransitions,
+			@JsonProperty("success_every") Integer successEvery, @JsonProperty("quiet_hours") String quietHours,
+			@JsonProperty("time_zone") String timeZone) {
+
+		static final Options NONE = new Options(null, null, null, null, null, null, null, null, null, null, null, null,
+				null, null, null, null);
+
+		public Options {
+			Assert.isTrue(maxAttempts == null || maxAttempts > 0, "Max attempts must be greater than zero");
+			Assert.isTrue(rateLimit == null || rateLimit > 0, "Rate limit must be greater than zero");
+			Assert.isTrue(rateLimitBurst == null || rateLimitBurst > 0, "Rate limit burst must be greater than zero");
+			Assert.isTrue(successEvery == null || successEvery > 0, "Success every must be greater than zero");
+			// Durations are checked so that invalid values fail when the payload is read
+			parseDuration(connectTimeout);
+			parseDuration(readTimeout);
+			parseDuration(retryBudget);
+			parseDuration(idempotencyTtl);
+			parseDuration(coalesceWindow);
+		}
+
+	}
+
 }
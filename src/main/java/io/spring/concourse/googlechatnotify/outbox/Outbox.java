@@ -0,0 +1,271 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.outbox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import io.spring.concourse.googlechatnotify.system.ConsoleLogger;
+import io.spring.concourse.googlechatnotify.system.ExclusiveFileLock;
+
+import org.springframework.util.Assert;
+
+/**
+ * Durable, append-only outbox of messages waiting to be delivered. Messages are written
+ * to a journal of fixed size, memory-mapped segments and drained in the order they were
+ * added. A checkpoint records the position of the next message to deliver so that
+ * draining can resume after a failure or from another process. Segments are deleted once
+ * drained, and the oldest segment is discarded if the journal grows beyond its maximum
+ * number of segments.
+ * <p>
+ * The webhook credentials are not written to the journal. The most recently used
+ * credentials are kept in a file that only its owner can read, and are added back to each
+ * message as it is drained.
+ * <p>
+ * Appends and drains take separate file locks so that processes sharing the directory can
+ * add messages while another process is delivering them. The locks are also held against
+ * other threads so that concurrent requests in one process can share the outbox.
+ *
+ * @author Scott Frederick
+ */
+public class Outbox {
+
+	private static final ConsoleLogger console = new ConsoleLogger();
+
+	private static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+	private static final int DEFAULT_MAX_SEGMENTS = 32;
+
+	private static final String SEGMENT_PREFIX = "segment-";
+
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	private static final String CHECKPOINT = "checkpoint";
+
+	private static final String CREDENTIALS = "credentials";
+
+	private static final String APPEND_LOCK = "append.lock";
+
+	private static final String DRAIN_LOCK = "drain.lock";
+
+	private final Path directory;
+
+	private final int segmentSize;
+
+	private final int maxSegments;
+
+	public Outbox(Path directory) {
+		this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+	}
+
+	Outbox(Path directory, int segmentSize, int maxSegments) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxSegments = maxSegments;
+	}
+
+	/**
+	 * Add a message to the end of the outbox.
+	 * @param message the message to add
+	 */
+	public void append(OutboxMessage message) {
+		String credentials = message.credentials();
+		byte[] record = message.withoutCredentials().toBytes();
+		Assert.state(record.length + OutboxSegment.HEADER_SIZE <= this.segmentSize,
+				"Message is too large to add to the outbox");
+		try {
+			ExclusiveFileLock.run(this.directory.resolve(APPEND_LOCK), () -> append(credentials, record));
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Unable to add message to the outbox in '" + this.directory + "'", ex);
+		}
+	}
+
+	private void append(String credentials, byte[] record) throws IOException {
+		if (!credentials.equals(readCredentials())) {
+			writeCredentials(credentials);
+		}
+		List<Long> segments = getSegments();
+		long segment = (!segments.isEmpty()) ? segments.get(segments.size() - 1) : 1;
+		if (!append(segment, record)) {
+			Assert.state(append(segment + 1, record), "Unable to add message to the outbox");
+			discardOldSegments();
+		}
+	}
+
+	private boolean append(long segment, byte[] record) throws IOException {
+		try (OutboxSegment outboxSegment = OutboxSegment.openForAppend(getSegmentFile(segment), this.segmentSize)) {
+			return outboxSegment.append(record);
+		}
+	}
+
+	private void discardOldSegments() throws IOException {
+		List<Long> segments = getSegments();
+		for (int i = 0; i < segments.size() - this.maxSegments; i++) {
+			console.log("Outbox is full, discarding undelivered messages in segment " + segments.get(i));
+			Files.deleteIfExists(getSegmentFile(segments.get(i)));
+		}
+	}
+
+	/**
+	 * Deliver messages from the outbox in order until the outbox is empty or a message
+	 * cannot be delivered. Returns immediately if another process or thread is draining
+	 * the outbox.
+	 * @param delivery function called to deliver each message, returning {@code true} if
+	 * the message was handled and can be removed from the outbox
+	 * @return {@code true} if the outbox is empty
+	 */
+	public boolean drain(Predicate<OutboxMessage> delivery) {
+		if (!Files.isDirectory(this.directory)) {
+			return true;
+		}
+		try (ExclusiveFileLock lock = ExclusiveFileLock.tryAcquire(this.directory.resolve(DRAIN_LOCK))) {
+			if (lock == null) {
+				console.log("Outbox is being drained by another process");
+				return false;
+			}
+			return drainLocked(delivery);
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Unable to drain outbox in '" + this.directory + "'", ex);
+		}
+	}
+
+	/**
+	 * Return if the outbox has no messages waiting to be delivered. An outbox that is
+	 * being drained by another process or thread is not considered empty.
+	 * @return {@code true} if the outbox is empty
+	 */
+	public boolean isEmpty() {
+		return drain((message) -> false);
+	}
+
+	private boolean drainLocked(Predicate<OutboxMessage> delivery) throws IOException {
+		Checkpoint checkpoint = readCheckpoint();
+		String credentials = readCredentials();
+		while (true) {
+			List<Long> segments = deleteDrainedSegments(checkpoint);
+			if (segments.isEmpty()) {
+				return true;
+			}
+			if (segments.get(0) != checkpoint.segment()) {
+				checkpoint = new Checkpoint(segments.get(0), 0);
+			}
+			int offset = checkpoint.offset();
+			try (OutboxSegment outboxSegment = OutboxSegment.openForRead(getSegmentFile(checkpoint.segment()))) {
+				OutboxSegment.Record record = outboxSegment.read(offset);
+				while (record != null) {
+					if (!delivery.test(OutboxMessage.fromBytes(record.bytes()).withCredentials(credentials))) {
+						return false;
+					}
+					offset = record.next();
+					writeCheckpoint(new Checkpoint(checkpoint.segment(), offset));
+					record = outboxSegment.read(offset);
+				}
+			}
+			if (segments.size() == 1) {
+				return true;
+			}
+			checkpoint = new Checkpoint(segments.get(1), 0);
+			writeCheckpoint(checkpoint);
+		}
+	}
+
+	private List<Long> deleteDrainedSegments(Checkpoint checkpoint) throws IOException {
+		List<Long> remaining = new ArrayList<>();
+		for (Long segment : getSegments()) {
+			if (segment < checkpoint.segment()) {
+				Files.deleteIfExists(getSegmentFile(segment));
+			}
+			else {
+				remaining.add(segment);
+			}
+		}
+		return remaining;
+	}
+
+	private Checkpoint readCheckpoint() throws IOException {
+		Path file = this.directory.resolve(CHECKPOINT);
+		if (!Files.exists(file)) {
+			return new Checkpoint(0, 0);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+		return new Checkpoint(buffer.getLong(), buffer.getInt());
+	}
+
+	private void writeCheckpoint(Checkpoint checkpoint) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + Integer.BYTES)
+			.putLong(checkpoint.segment())
+			.putInt(checkpoint.offset());
+		Path temp = this.directory.resolve(CHECKPOINT + ".tmp");
+		Files.write(temp, buffer.array());
+		Files.move(temp, this.directory.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private String readCredentials() throws IOException {
+		Path file = this.directory.resolve(CREDENTIALS);
+		return (Files.exists(file)) ? Files.readString(file, StandardCharsets.UTF_8) : "";
+	}
+
+	private void writeCredentials(String credentials) throws IOException {
+		Path temp = this.directory.resolve(CREDENTIALS + ".tmp");
+		Files.deleteIfExists(temp);
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+			Files.createFile(temp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		}
+		Files.writeString(temp, credentials, StandardCharsets.UTF_8);
+		Files.move(temp, this.directory.resolve(CREDENTIALS), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private List<Long> getSegments() throws IOException {
+		try (Stream<Path> files = Files.list(this.directory)) {
+			return files.map((file) -> file.getFileName().toString())
+				.filter((name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+				.map((name) -> Long.parseLong(name, SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length(),
+						10))
+				.sorted()
+				.toList();
+		}
+	}
+
+	private Path getSegmentFile(long segment) {
+		return this.directory.resolve(SEGMENT_PREFIX + "%020d".formatted(segment) + SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * Position of the next message to deliver.
+	 *
+	 * @param segment the segment number
+	 * @param offset the offset within the segment
+	 */
+	private record Checkpoint(long segment, int offset) {
+
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.outbox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A message held in the {@link Outbox} until it can be delivered. The {@code key} and
+ * {@code token} query parameters of the URL are credentials, so the outbox stores them
+ * apart from the message.
+ *
+ * @author Scott Frederick
+ * @param url the URL of the webhook
+ * @param body the serialized message
+ */
+public record OutboxMessage(String url, String body) {
+
+	private static final Set<String> CREDENTIAL_PARAMETERS = Set.of("key", "token");
+
+	/**
+	 * Return the credential query parameters of the URL.
+	 * @return the credential parameters joined with {@code &}, or an empty string
+	 */
+	String credentials() {
+		return String.join("&", getParameters(true));
+	}
+
+	/**
+	 * Return a copy of this message with the credential query parameters removed from the
+	 * URL.
+	 * @return a message without credentials
+	 */
+	OutboxMessage withoutCredentials() {
+		List<String> parameters = getParameters(false);
+		int queryIndex = this.url.indexOf('?');
+		String path = (queryIndex != -1) ? this.url.substring(0, queryIndex) : this.url;
+		return new OutboxMessage((!parameters.isEmpty()) ? path + "?" + String.join("&", parameters) : path, this.body);
+	}
+
+	/**
+	 * Return a copy of this message with the given credential query parameters added to
+	 * the URL.
+	 * @param credentials the credentials returned from {@link #credentials()}
+	 * @return a message with credentials
+	 */
+	OutboxMessage withCredentials(String credentials) {
+		if (credentials.isEmpty()) {
+			return this;
+		}
+		return new OutboxMessage(this.url + ((this.url.indexOf('?') != -1) ? "&" : "?") + credentials, this.body);
+	}
+
+	private List<String> getParameters(boolean credentials) {
+		List<String> parameters = new ArrayList<>();
+		int queryIndex = this.url.indexOf('?');
+		if (queryIndex == -1) {
+			return parameters;
+		}
+		for (String parameter : this.url.substring(queryIndex + 1).split("&")) {
+			int equalsIndex = parameter.indexOf('=');
+			String name = (equalsIndex != -1) ? parameter.substring(0, equalsIndex) : parameter;
+			if (!parameter.isEmpty() && CREDENTIAL_PARAMETERS.contains(name) == credentials) {
+				parameters.add(parameter);
+			}
+		}
+		return parameters;
+	}
+
+	byte[] toBytes() {
+		byte[] url = this.url.getBytes(StandardCharsets.UTF_8);
+		byte[] body = this.body.getBytes(StandardCharsets.UTF_8);
+		return ByteBuffer.allocate(Integer.BYTES + url.length + body.length)
+			.putInt(url.length)
+			.put(url)
+			.put(body)
+			.array();
+	}
+
+	static OutboxMessage fromBytes(byte[] bytes) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		int urlLength = buffer.getInt();
+		String url = new String(bytes, Integer.BYTES, urlLength, StandardCharsets.UTF_8);
+		int bodyOffset = Integer.BYTES + urlLength;
+		String body = new String(bytes, bodyOffset, bytes.length - bodyOffset, StandardCharsets.UTF_8);
+		return new OutboxMessage(url, body);
+	}
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.outbox;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import io.spring.concourse.googlechatnotify.system.ConsoleLogger;
+
+/**
+ * A memory-mapped segment of the {@link Outbox} journal. Each record is written as its
+ * length, a CRC32 checksum and the record bytes. Unwritten space is zero filled so a zero
+ * length marks the end of the records. A record that does not match its checksum is
+ * skipped using its length so that the records after it can still be read.
+ *
+ * @author Scott Frederick
+ */
+class OutboxSegment implements Closeable {
+
+	private static final ConsoleLogger console = new ConsoleLogger();
+
+	static final int HEADER_SIZE = Integer.BYTES * 2;
+
+	private final FileChannel channel;
+
+	private final MappedByteBuffer buffer;
+
+	private final int size;
+
+	private OutboxSegment(FileChannel channel, MappedByteBuffer buffer) {
+		this.channel = channel;
+		this.buffer = buffer;
+		this.size = buffer.capacity();
+	}
+
+	/**
+	 * Open a segment for appending, creating it with the given size if necessary.
+	 * @param file the segment file
+	 * @param size the segment size
+	 * @return the segment
+	 * @throws IOException on IO error
+	 */
+	static OutboxSegment openForAppend(Path file, int size) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		return new OutboxSegment(channel, channel.map(MapMode.READ_WRITE, 0, Math.max(size, channel.size())));
+	}
+
+	/**
+	 * Open an existing segment for reading.
+	 * @param file the segment file
+	 * @return the segment
+	 * @throws IOException on IO error
+	 */
+	static OutboxSegment openForRead(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		return new OutboxSegment(channel, channel.map(MapMode.READ_ONLY, 0, channel.size()));
+	}
+
+	/**
+	 * Append a record if there is space remaining in the segment.
+	 * @param record the record bytes
+	 * @return {@code true} if the record was appended or {@code false} if the segment is
+	 * full
+	 */
+	boolean append(byte[] record) {
+		int offset = findEnd();
+		if (offset + HEADER_SIZE + record.length > this.size) {
+			return false;
+		}
+		this.buffer.put(offset + HEADER_SIZE, record);
+		this.buffer.putInt(offset + Integer.BYTES, checksum(record));
+		this.buffer.putInt(offset, record.length);
+		this.buffer.force();
+		return true;
+	}
+
+	/**
+	 * Read the first intact record at or after the given offset, skipping any that do not
+	 * match their checksum.
+	 * @param offset the offset of the record
+	 * @return the record or {@code null} if there are no more complete records
+	 */
+	Record read(int offset) {
+		int length = getLength(offset);
+		while (length > 0) {
+			byte[] record = new byte[length];
+			this.buffer.get(offset + HEADER_SIZE, record);
+			int next = offset + HEADER_SIZE + length;
+			if (checksum(record) == this.buffer.getInt(offset + Integer.BYTES)) {
+				return new Record(record, next);
+			}
+			console.log("Skipping corrupt outbox record of {} bytes at offset {}", length, offset);
+			offset = next;
+			length = getLength(offset);
+		}
+		return null;
+	}
+
+	private int findEnd() {
+		int offset = 0;
+		int length = getLength(offset);
+		while (length > 0) {
+			offset += HEADER_SIZE + length;
+			length = getLength(offset);
+		}
+		return offset;
+	}
+
+	private int getLength(int offset) {
+		if (offset + HEADER_SIZE > this.size) {
+			return 0;
+		}
+		int length = this.buffer.getInt(offset);
+		return (length > 0 && offset + HEADER_SIZE + length <= this.size) ? length : 0;
+	}
+
+	private static int checksum(byte[] record) {
+		CRC32 crc = new CRC32();
+		crc.update(record);
+		return (int) crc.getValue();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	/**
+	 * A record read from the segment.
+	 *
+	 * @param bytes the record bytes
+	 * @param next the offset of the record that follows
+	 */
+	record Record(byte[] bytes, int next) {
+
+	}
+
+}
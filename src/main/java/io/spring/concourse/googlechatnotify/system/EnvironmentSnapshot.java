@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.system;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
+
+/**
+ * Snapshot of the properties of an {@link Environment} used as the base of
+ * {@link Variables}. The snapshot is taken once, when it is created, from the enumerable
+ * property sources into a {@link VariableMap} so that each lookup is a single hash lookup
+ * rather than a walk of every property source.
+ * <p>
+ * Names that are not in the snapshot, such as properties added after it was taken,
+ * relaxed names of environment variables or values from property sources that cannot be
+ * enumerated, are looked up in the environment.
+ *
+ * @author Scott Frederick
+ */
+final class EnvironmentSnapshot implements Function<String, String> {
+
+	private final Environment environment;
+
+	private final VariableMap properties;
+
+	private EnvironmentSnapshot(Environment environment) {
+		this.environment = environment;
+		this.properties = snapshot(environment);
+	}
+
+	static EnvironmentSnapshot of(Environment environment) {
+		return new EnvironmentSnapshot(environment);
+	}
+
+	@Override
+	public String apply(String name) {
+		String value = this.properties.get(name);
+		return (value != null) ? value : this.environment.getProperty(name);
+	}
+
+	private static VariableMap snapshot(Environment environment) {
+		if (!(environment instanceof ConfigurableEnvironment configurableEnvironment)) {
+			return VariableMap.EMPTY;
+		}
+		Map<String, String> properties = new HashMap<>();
+		for (PropertySource<?> propertySource : configurableEnvironment.getPropertySources()) {
+			if (propertySource instanceof EnumerablePropertySource<?> enumerable) {
+				for (String name : enumerable.getPropertyNames()) {
+					Object value = enumerable.getProperty(name);
+					if (value != null) {
+						properties.putIfAbsent(name, value.toString());
+					}
+				}
+			}
+		}
+		return new VariableMap(properties);
+	}
+
+}
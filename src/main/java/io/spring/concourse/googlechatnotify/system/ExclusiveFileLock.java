@@ -0,0 +1,190 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.system;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.util.Assert;
+
+/**
+ * An exclusive lock on a file that is held against both other processes and other threads
+ * of this process. A JVM can hold only one {@link FileLock} on a file, so the file lock
+ * is taken while holding a lock shared by every thread that locks the same file. The lock
+ * is not reentrant and must be closed by the thread that acquired it. Code that only
+ * needs to hold the lock while it runs can use {@link #call(Path, LockedCallable)} or
+ * {@link #run(Path, LockedRunnable)}.
+ *
+ * @author Scott Frederick
+ */
+public final class ExclusiveFileLock implements Closeable {
+
+	private static final Map<Path, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+	private final ReentrantLock lock;
+
+	private final FileChannel channel;
+
+	private boolean closed;
+
+	private ExclusiveFileLock(ReentrantLock lock, FileChannel channel) {
+		this.lock = lock;
+		this.channel = channel;
+	}
+
+	/**
+	 * Acquire a lock on the given file, waiting until it is available. The file and its
+	 * parent directories are created if necessary.
+	 * @param file the file to lock
+	 * @return the lock
+	 * @throws IOException if the file cannot be locked
+	 */
+	public static ExclusiveFileLock acquire(Path file) throws IOException {
+		ReentrantLock lock = getLock(file);
+		Assert.state(!lock.isHeldByCurrentThread(), () -> "Lock on '" + file + "' is already held by this thread");
+		lock.lock();
+		return lockFile(lock, file, true);
+	}
+
+	/**
+	 * Call the given callable while holding a lock on the given file, waiting until the
+	 * lock is available.
+	 * @param <T> the result type
+	 * @param file the file to lock
+	 * @param callable the callable to call
+	 * @return the result of the callable
+	 * @throws IOException if the file cannot be locked or the callable fails
+	 */
+	public static <T> T call(Path file, LockedCallable<T> callable) throws IOException {
+		ExclusiveFileLock lock = acquire(file);
+		try {
+			return callable.call();
+		}
+		finally {
+			lock.close();
+		}
+	}
+
+	/**
+	 * Run the given runnable while holding a lock on the given file, waiting until the
+	 * lock is available.
+	 * @param file the file to lock
+	 * @param runnable the runnable to run
+	 * @throws IOException if the file cannot be locked or the runnable fails
+	 */
+	public static void run(Path file, LockedRunnable runnable) throws IOException {
+		call(file, () -> {
+			runnable.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Acquire a lock on the given file if it is not already held by any thread or
+	 * process. The file and its parent directories are created if necessary.
+	 * @param file the file to lock
+	 * @return the lock or {@code null} if it is held elsewhere
+	 * @throws IOException if the file cannot be locked
+	 */
+	public static ExclusiveFileLock tryAcquire(Path file) throws IOException {
+		ReentrantLock lock = getLock(file);
+		if (lock.isHeldByCurrentThread() || !lock.tryLock()) {
+			return null;
+		}
+		return lockFile(lock, file, false);
+	}
+
+	private static ReentrantLock getLock(Path file) {
+		return locks.computeIfAbsent(file.toAbsolutePath().normalize(), (key) -> new ReentrantLock());
+	}
+
+	private static ExclusiveFileLock lockFile(ReentrantLock lock, Path file, boolean wait) throws IOException {
+		FileChannel channel = null;
+		boolean locked = false;
+		try {
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			// The file lock is released when the channel is closed
+			locked = ((wait) ? channel.lock() : channel.tryLock()) != null;
+			return (locked) ? new ExclusiveFileLock(lock, channel) : null;
+		}
+		finally {
+			if (!locked) {
+				release(lock, channel);
+			}
+		}
+	}
+
+	private static void release(ReentrantLock lock, FileChannel channel) throws IOException {
+		try {
+			if (channel != null) {
+				channel.close();
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!this.closed) {
+			this.closed = true;
+			release(this.lock, this.channel);
+		}
+	}
+
+	/**
+	 * Code called while holding a lock.
+	 *
+	 * @param <T> the result type
+	 */
+	@FunctionalInterface
+	public interface LockedCallable<T> {
+
+		/**
+		 * Call the code.
+		 * @return the result
+		 * @throws IOException on IO error
+		 */
+		T call() throws IOException;
+
+	}
+
+	/**
+	 * Code run while holding a lock.
+	 */
+	@FunctionalInterface
+	public interface LockedRunnable {
+
+		/**
+		 * Run the code.
+		 * @throws IOException on IO error
+		 */
+		void run() throws IOException;
+
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.system;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+
+/**
+ * {@link JsonParser} that fails if a top-level value spans more than a maximum number of
+ * bytes. Used when reading a sequence of values where each value, rather than the whole
+ * input, is limited.
+ *
+ * @author Scott Frederick
+ */
+class LimitedJsonParser extends JsonParserDelegate {
+
+	private final long maxSize;
+
+	private long valueStart;
+
+	LimitedJsonParser(JsonParser parser, long maxSize) {
+		super(parser);
+		this.maxSize = maxSize;
+	}
+
+	@Override
+	public JsonToken nextToken() throws IOException {
+		return check(super.nextToken());
+	}
+
+	@Override
+	public JsonToken nextValue() throws IOException {
+		return check(super.nextValue());
+	}
+
+	@Override
+	public JsonParser skipChildren() throws IOException {
+		super.skipChildren();
+		check(currentToken());
+		return this;
+	}
+
+	private JsonToken check(JsonToken token) throws IOException {
+		if (token != null && isValueStart(token)) {
+			this.valueStart = getTokenLocation().getByteOffset();
+		}
+		if (currentLocation().getByteOffset() - this.valueStart > this.maxSize) {
+			throw new IOException("Input exceeds maximum size of " + this.maxSize + " bytes");
+		}
+		return token;
+	}
+
+	private boolean isValueStart(JsonToken token) {
+		JsonStreamContext context = getParsingContext();
+		return (token.isStructStart()) ? context.getParent().inRoot() : context.inRoot();
+	}
+
+}
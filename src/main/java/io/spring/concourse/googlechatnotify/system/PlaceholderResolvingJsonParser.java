@@ -0,0 +1,111 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.system;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+
+/**
+ * {@link JsonParser} that resolves placeholders in string values as they are read. Field
+ * names and other tokens are returned unchanged. Values deserialized with an
+ * {@link UnresolvedStringDeserializer} are left unresolved.
+ *
+ * @author Scott Frederick
+ */
+class PlaceholderResolvingJsonParser extends JsonParserDelegate {
+
+	private static final String PLACEHOLDER_PREFIX = "${";
+
+	private final Variables variables;
+
+	private String lastText;
+
+	private String lastResolved;
+
+	PlaceholderResolvingJsonParser(JsonParser parser, Variables variables) {
+		super(parser);
+		this.variables = variables;
+	}
+
+	@Override
+	public String getText() throws IOException {
+		String text = super.getText();
+		return (hasToken(JsonToken.VALUE_STRING)) ? resolve(text) : text;
+	}
+
+	@Override
+	public String getValueAsString() throws IOException {
+		String text = super.getValueAsString();
+		return (hasToken(JsonToken.VALUE_STRING)) ? resolve(text) : text;
+	}
+
+	@Override
+	public String getValueAsString(String defaultValue) throws IOException {
+		String text = super.getValueAsString(defaultValue);
+		return (hasToken(JsonToken.VALUE_STRING)) ? resolve(text) : text;
+	}
+
+	@Override
+	public String nextTextValue() throws IOException {
+		String text = super.nextTextValue();
+		return (text != null) ? resolve(text) : null;
+	}
+
+	/**
+	 * Return the text of the current token without resolving placeholders.
+	 * @return the unresolved text
+	 * @throws IOException on IO error
+	 */
+	String getUnresolvedText() throws IOException {
+		return super.getText();
+	}
+
+	@Override
+	public boolean hasTextCharacters() {
+		return !hasToken(JsonToken.VALUE_STRING) && super.hasTextCharacters();
+	}
+
+	@Override
+	public char[] getTextCharacters() throws IOException {
+		return (hasToken(JsonToken.VALUE_STRING)) ? getText().toCharArray() : super.getTextCharacters();
+	}
+
+	@Override
+	public int getTextLength() throws IOException {
+		return (hasToken(JsonToken.VALUE_STRING)) ? getText().length() : super.getTextLength();
+	}
+
+	@Override
+	public int getTextOffset() throws IOException {
+		return (hasToken(JsonToken.VALUE_STRING)) ? 0 : super.getTextOffset();
+	}
+
+	private String resolve(String text) {
+		if (text == null || !text.contains(PLACEHOLDER_PREFIX)) {
+			return text;
+		}
+		if (text != this.lastText) {
+			this.lastResolved = this.variables.resolvePlaceholders(text);
+			this.lastText = text;
+		}
+		return this.lastResolved;
+	}
+
+}
@@ -16,19 +16,26 @@
 
 package io.spring.concourse.googlechatnotify.system;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.StringReader;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
-import org.springframework.util.Assert;
-import org.springframework.util.FileCopyUtils;
+import org.springframework.util.unit.DataSize;
 
 /**
  * Read input from {@link SystemStreams#in()} (dealing with timeouts).
@@ -39,9 +46,23 @@ import org.springframework.util.FileCopyUtils;
 @Component
 public class SystemInput {
 
-	private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(1);
+	private static final Logger logger = LoggerFactory.getLogger(SystemInput.class);
 
-	private final Environment environment;
+	/**
+	 * Property that can be used to configure how long to wait for input.
+	 */
+	public static final String TIMEOUT_PROPERTY = "google-chat-notify.input.timeout";
+
+	/**
+	 * Property that can be used to configure the maximum size of the input.
+	 */
+	public static final String MAX_SIZE_PROPERTY = "google-chat-notify.input.max-size";
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(1);
+
+	private static final DataSize MAX_SIZE = DataSize.ofMegabytes(1);
+
+	private final Variables variables;
 
 	private final SystemStreams systemStreams;
 
@@ -49,28 +70,148 @@ public class SystemInput {
 
 	private final long timeout;
 
+	private final long maxSize;
+
 	@Autowired
 	public SystemInput(Environment environment, SystemStreams systemStreams, ObjectMapper objectMapper) {
-		this(environment, systemStreams, objectMapper, TIMEOUT);
+		this(environment, systemStreams, objectMapper,
+				environment.getProperty(TIMEOUT_PROPERTY, Duration.class, TIMEOUT).toMillis(),
+				environment.getProperty(MAX_SIZE_PROPERTY, DataSize.class, MAX_SIZE).toBytes());
 	}
 
 	protected SystemInput(Environment environment, SystemStreams systemStreams, ObjectMapper objectMapper,
 			long timeout) {
-		this.environment = environment;
+		this(environment, systemStreams, objectMapper, timeout, MAX_SIZE.toBytes());
+	}
+
+	protected SystemInput(Environment environment, SystemStreams systemStreams, ObjectMapper objectMapper, long timeout,
+			long maxSize) {
+		this.variables = Variables.of(environment);
 		this.systemStreams = systemStreams;
 		this.objectMapper = objectMapper;
 		this.timeout = timeout;
+		this.maxSize = maxSize;
 	}
 
+	/**
+	 * Read JSON input of the given type, resolving any placeholders found in string
+	 * values. Input is parsed as it is streamed so that it is never held in memory as raw
+	 * text.
+	 * @param <T> the type to read
+	 * @param type the type to read
+	 * @return the read value
+	 * @throws IOException on IO error
+	 */
 	public <T> T read(Class<T> type) throws IOException {
-		BufferedReader in = new BufferedReader(new InputStreamReader(this.systemStreams.in()));
-		long startTime = System.currentTimeMillis();
-		while (!in.ready()) {
-			Assert.state(System.currentTimeMillis() - startTime < this.timeout, "Timeout waiting for input");
+		return read(awaitInput(this.systemStreams.in()), type);
+	}
+
+	/**
+	 * Read JSON input of the given type from the given stream, resolving any placeholders
+	 * found in string values.
+	 * @param <T> the type to read
+	 * @param in the input stream to read from
+	 * @param type the type to read
+	 * @return the read value
+	 * @throws IOException on IO error
+	 */
+	public <T> T read(InputStream in, Class<T> type) throws IOException {
+		return read(in, type, this.variables);
+	}
+
+	/**
+	 * Read JSON input of the given type from the given stream, resolving any placeholders
+	 * found in string values with the given variables.
+	 * @param <T> the type to read
+	 * @param in the input stream to read from
+	 * @param type the type to read
+	 * @param variables the variables used to resolve placeholders
+	 * @return the read value
+	 * @throws IOException on IO error
+	 */
+	public <T> T read(InputStream in, Class<T> type, Variables variables) throws IOException {
+		InputStream limited = new LimitedInputStream(in, this.maxSize);
+		try (JsonParser parser = new PlaceholderResolvingJsonParser(this.objectMapper.createParser(limited),
+				variables)) {
+			return this.objectMapper.readValue(parser, type);
+		}
+	}
+
+	/**
+	 * Read a sequence of JSON values of the given type, such as newline-delimited JSON,
+	 * resolving any placeholders found in string values. Values are read lazily as the
+	 * returned iterator is consumed.
+	 * @param <T> the type to read
+	 * @param type the type to read
+	 * @return an iterator over the read values
+	 * @throws IOException on IO error
+	 */
+	public <T> MappingIterator<T> readAll(Class<T> type) throws IOException {
+		return readAll(awaitInput(this.systemStreams.in()), type);
+	}
+
+	/**
+	 * Read a sequence of JSON values of the given type from the given stream, resolving
+	 * any placeholders found in string values. Values are read lazily as the returned
+	 * iterator is consumed and each value is limited to the maximum input size.
+	 * @param <T> the type to read
+	 * @param in the input stream to read from
+	 * @param type the type to read
+	 * @return an iterator over the read values
+	 * @throws IOException on IO error
+	 */
+	public <T> MappingIterator<T> readAll(InputStream in, Class<T> type) throws IOException {
+		JsonParser limited = new LimitedJsonParser(this.objectMapper.createParser(in), this.maxSize);
+		JsonParser parser = new PlaceholderResolvingJsonParser(limited, this.variables);
+		return this.objectMapper.readerFor(type).readValues(parser);
+	}
+
+	/**
+	 * Block until the first byte of input is available or the timeout expires. The
+	 * blocking read happens on a daemon thread so that the caller can wait on a deadline
+	 * rather than polling the stream.
+	 * @param in the source input stream
+	 * @return an input stream containing all input, including the first byte
+	 * @throws IOException on IO error
+	 */
+	private InputStream awaitInput(InputStream in) throws IOException {
+		long startTime = System.nanoTime();
+		CompletableFuture<Integer> firstByte = new CompletableFuture<>();
+		Thread reader = new Thread(() -> readFirstByte(in, firstByte), "system-input");
+		reader.setDaemon(true);
+		reader.start();
+		try {
+			int read = firstByte.get(this.timeout, TimeUnit.MILLISECONDS);
+			if (read == -1) {
+				throw new IllegalStateException("No input");
+			}
+			return new SequenceInputStream(new ByteArrayInputStream(new byte[] { (byte) read }), in);
+		}
+		catch (TimeoutException ex) {
+			throw new IllegalStateException("Timeout waiting for input");
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for input", ex);
+		}
+		catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException ioException) {
+				throw ioException;
+			}
+			throw new IllegalStateException("Error waiting for input", ex.getCause());
+		}
+		finally {
+			logger.debug("Waited {}ms for input", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+		}
+	}
+
+	private void readFirstByte(InputStream in, CompletableFuture<Integer> result) {
+		try {
+			result.complete(in.read());
+		}
+		catch (IOException ex) {
+			result.completeExceptionally(ex);
 		}
-		String content = FileCopyUtils.copyToString(in);
-		String resolved = this.environment.resolvePlaceholders(content);
-		return this.objectMapper.readValue(new StringReader(resolved), type);
 	}
 
 }
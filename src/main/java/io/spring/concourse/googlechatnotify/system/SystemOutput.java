@@ -17,6 +17,8 @@
 package io.spring.concourse.googlechatnotify.system;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -41,7 +43,28 @@ public class SystemOutput {
 	}
 
 	public <T> void write(T value) throws IOException {
-		this.objectMapper.writeValue(this.systemStreams.out(), value);
+		write(this.systemStreams.out(), value);
+	}
+
+	public <T> void write(OutputStream out, T value) throws IOException {
+		this.objectMapper.writeValue(out, value);
+	}
+
+	/**
+	 * Write the given value as a single line of JSON, leaving the output open so that
+	 * further lines can be written. Safe to call from multiple threads.
+	 * @param <T> the value type
+	 * @param value the value to write
+	 * @throws IOException on IO error
+	 */
+	public <T> void writeLine(T value) throws IOException {
+		byte[] bytes = this.objectMapper.writeValueAsBytes(value);
+		PrintStream out = this.systemStreams.out();
+		synchronized (out) {
+			out.write(bytes);
+			out.write('\n');
+			out.flush();
+		}
 	}
 
 }
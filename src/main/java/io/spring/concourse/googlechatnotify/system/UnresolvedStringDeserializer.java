@@ -0,0 +1,51 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.system;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+
+/**
+ * Deserializer for string values whose placeholders are left to be resolved when the
+ * value is used rather than when the input is read by {@link SystemInput}. Values read
+ * from other parsers are deserialized as any other string.
+ *
+ * @author Scott Frederick
+ */
+public class UnresolvedStringDeserializer extends StdScalarDeserializer<String> {
+
+	private static final long serialVersionUID = 1L;
+
+	public UnresolvedStringDeserializer() {
+		super(String.class);
+	}
+
+	@Override
+	public String deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+		if (parser instanceof PlaceholderResolvingJsonParser resolvingParser
+				&& parser.hasToken(JsonToken.VALUE_STRING)) {
+			return resolvingParser.getUnresolvedText();
+		}
+		return StringDeserializer.instance.deserialize(parser, context);
+	}
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.system;
+
+import java.util.Map;
+
+/**
+ * Immutable, open-addressed map of variable names to values. Entries are held in flat
+ * arrays and found with linear probing, so a lookup is a single hash calculation (cached
+ * by {@link String}) followed by a short scan without any allocation.
+ *
+ * @author Scott Frederick
+ */
+final class VariableMap {
+
+	static final VariableMap EMPTY = new VariableMap(Map.of());
+
+	private final String[] names;
+
+	private final String[] values;
+
+	private final int mask;
+
+	private final int size;
+
+	VariableMap(Map<String, String> variables) {
+		int capacity = Integer.highestOneBit(Math.max(2, variables.size() * 2) - 1) << 1;
+		this.names = new String[capacity];
+		this.values = new String[capacity];
+		this.mask = capacity - 1;
+		int size = 0;
+		for (Map.Entry<String, String> entry : variables.entrySet()) {
+			if (entry.getKey() != null && entry.getValue() != null) {
+				int index = indexOf(entry.getKey());
+				if (this.names[index] == null) {
+					size++;
+				}
+				this.names[index] = entry.getKey();
+				this.values[index] = entry.getValue();
+			}
+		}
+		this.size = size;
+	}
+
+	/**
+	 * Return the value of the given variable.
+	 * @param name the variable name
+	 * @return the value or {@code null}
+	 */
+	String get(String name) {
+		return this.values[indexOf(name)];
+	}
+
+	/**
+	 * Return the number of variables.
+	 * @return the number of variables
+	 */
+	int size() {
+		return this.size;
+	}
+
+	private int indexOf(String name) {
+		int hash = name.hashCode();
+		int index = (hash ^ (hash >>> 16)) & this.mask;
+		// The table is never more than half full so there is always an empty slot
+		while (this.names[index] != null && !this.names[index].equals(name)) {
+			index = (index + 1) & this.mask;
+		}
+		return index;
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.system;
+
+import java.util.Map;
+import java.util.function.Function;
+
+import org.springframework.core.env.Environment;
+import org.springframework.util.PropertyPlaceholderHelper;
+
+/**
+ * Immutable set of variables used to resolve placeholders for a single request. Variables
+ * are looked up in the values added with {@link #with(Map)} before those of the base
+ * {@link Environment}, so request values such as {@code TEXT_FILE_CONTENT} or build
+ * metadata received by a long-running process never need to be added to the shared
+ * environment.
+ *
+ * @author Scott Frederick
+ */
+public final class Variables implements Function<String, String> {
+
+	private static final PropertyPlaceholderHelper placeholderHelper = new PropertyPlaceholderHelper("${", "}", ":",
+			true);
+
+	private final Function<String, String> parent;
+
+	private final VariableMap values;
+
+	private Variables(Function<String, String> parent, VariableMap values) {
+		this.parent = parent;
+		this.values = values;
+	}
+
+	/**
+	 * Create variables backed by the properties of the given environment.
+	 * @param environment the environment
+	 * @return the variables
+	 */
+	public static Variables of(Environment environment) {
+		return new Variables(EnvironmentSnapshot.of(environment), VariableMap.EMPTY);
+	}
+
+	/**
+	 * Create variables with the given values.
+	 * @param values the variable values
+	 * @return the variables
+	 */
+	public static Variables of(Map<String, String> values) {
+		return new Variables((name) -> null, new VariableMap(values));
+	}
+
+	/**
+	 * Return new variables that include the given values, which take precedence over the
+	 * existing values. These variables are left unchanged.
+	 * @param values the values to add
+	 * @return the new variables
+	 */
+	public Variables with(Map<String, String> values) {
+		return (values.isEmpty()) ? this : new Variables(this, new VariableMap(values));
+	}
+
+	/**
+	 * Return the value of the given variable.
+	 * @param name the variable name
+	 * @return the value or {@code null}
+	 */
+	@Override
+	public String apply(String name) {
+		String value = this.values.get(name);
+		return (value != null) ? value : this.parent.apply(name);
+	}
+
+	/**
+	 * Resolve the placeholders in the given text. Placeholders that cannot be resolved
+	 * are left unchanged.
+	 * @param text the text to resolve
+	 * @return the resolved text
+	 */
+	public String resolvePlaceholders(String text) {
+		return placeholderHelper.replacePlaceholders(text, this::apply);
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link TokenBucket} with state held in a small memory-mapped file so that it can be
+ * shared by separate processes, such as concurrent {@code out} commands on the same
+ * worker. Each reservation is made while holding an exclusive lock on the file. Time is
+ * measured from the epoch since monotonic clocks are not comparable between processes.
+ *
+ * @author Scott Frederick
+ */
+class FileTokenBucket extends TokenBucket implements Closeable {
+
+	private static final int MAGIC = 0x54424b31;
+
+	private static final int TOKENS_OFFSET = 8;
+
+	private static final int LAST_REFILL_OFFSET = 16;
+
+	private static final int SIZE = 24;
+
+	private final Path file;
+
+	private final LongSupplier epochNanos;
+
+	private final FileChannel channel;
+
+	private final MappedByteBuffer buffer;
+
+	FileTokenBucket(Path file) throws IOException {
+		this(file, FileTokenBucket::epochNanos);
+	}
+
+	FileTokenBucket(Path file, LongSupplier epochNanos) throws IOException {
+		this.file = file;
+		this.epochNanos = epochNanos;
+		Files.createDirectories(file.getParent());
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		this.buffer = this.channel.map(MapMode.READ_WRITE, 0, SIZE);
+	}
+
+	@Override
+	synchronized Reservation reserve(RateLimit limit) {
+		try {
+			FileLock lock = this.channel.lock();
+			try {
+				long now = this.epochNanos.getAsLong();
+				double available = (this.buffer.getInt(0) != MAGIC) ? limit.burst() : refill(limit,
+						this.buffer.getDouble(TOKENS_OFFSET), now - this.buffer.getLong(LAST_REFILL_OFFSET));
+				this.buffer.putDouble(TOKENS_OFFSET, available - 1);
+				this.buffer.putLong(LAST_REFILL_OFFSET, now);
+				this.buffer.putInt(0, MAGIC);
+				return Reservation.of(limit, available);
+			}
+			finally {
+				lock.release();
+			}
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Unable to update rate limit state in '" + this.file + "'", ex);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	private static long epochNanos() {
+		Instant now = Instant.now();
+		return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+	}
+
+}
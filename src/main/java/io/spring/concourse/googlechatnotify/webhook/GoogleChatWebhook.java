@@ -16,15 +16,40 @@
 
 package io.spring.concourse.googlechatnotify.webhook;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.spring.concourse.googlechatnotify.outbox.Outbox;
+import io.spring.concourse.googlechatnotify.outbox.OutboxMessage;
 import io.spring.concourse.googlechatnotify.system.ConsoleLogger;
+import io.spring.concourse.googlechatnotify.system.Variables;
+import io.spring.concourse.googlechatnotify.webhook.TokenBucket.Reservation;
 
-import org.springframework.core.env.Environment;
-import org.springframework.http.HttpStatus;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClient;
-import org.springframework.web.client.RestClientResponseException;
 
 /**
  * Sends messages to a Google Chat webhook.
@@ -32,43 +57,362 @@ import org.springframework.web.client.RestClientResponseException;
  * @author Scott Frederick
  */
 @Component
-public class GoogleChatWebhook implements OutgoingWebhook {
+public class GoogleChatWebhook implements OutgoingWebhook, DisposableBean {
 
-	private final Environment environment;
+	private final RestClient.Builder restClientBuilder;
 
-	private final RestClient restClient;
+	private final WebhookTransport transport;
 
 	private final ObjectMapper objectMapper;
 
+	private final Map<List<Duration>, RestClient> restClients = new ConcurrentHashMap<>();
+
+	private final TemplateCache templates = new TemplateCache();
+
+	private final Map<String, TokenBucket> tokenBuckets = new ConcurrentHashMap<>();
+
+	private final Map<Path, FileTokenBucket> fileTokenBuckets = new ConcurrentHashMap<>();
+
 	private static final ConsoleLogger console = new ConsoleLogger();
 
-	public GoogleChatWebhook(Environment environment, RestClient.Builder restClientBuilder, ObjectMapper objectMapper) {
-		this.environment = environment;
-		this.restClient = restClientBuilder.build();
+	private static final String RATE_LIMIT_DIRECTORY = "rate-limit";
+
+	private static final String OUTBOX_DIRECTORY = "outbox";
+
+	private static final String QUEUED = "Queued";
+
+	private static final int MAX_ERROR_BODY_SIZE = 1024;
+
+	private static final Map<String, String> SUMMARY_FIELDS = Map.of("name", "message", "thread.name", "thread",
+			"createTime", "create_time");
+
+	private static final MediaType JSON_UTF8 = new MediaType(MediaType.APPLICATION_JSON, StandardCharsets.UTF_8);
+
+	public GoogleChatWebhook(RestClient.Builder restClientBuilder, WebhookTransport transport,
+			ObjectMapper objectMapper) {
+		this.restClientBuilder = restClientBuilder;
+		this.transport = transport;
 		this.objectMapper = objectMapper;
 	}
 
-	public WebhookResponse send(String url, WebhookMessage message) {
+	@Override
+	public void destroy() throws IOException {
+		for (FileTokenBucket bucket : this.fileTokenBuckets.values()) {
+			bucket.close();
+		}
+	}
+
+	@Override
+	public WebhookResponse send(String url, WebhookMessage message, Variables variables, WebhookSettings settings) {
+		MessageBody body = createBody(message, variables);
+		console.log("Sending message '" + body.getPreview() + "' to webhook");
+		return send(url, body, settings);
+	}
+
+	@Override
+	public WebhookResponse enqueue(String url, WebhookMessage message, Variables variables, WebhookSettings settings) {
+		Assert.state(settings.stateDirectory() != null, "A state directory is required to queue messages");
+		MessageBody body = createBody(message, variables);
+		console.log("Queueing message '" + body.getPreview() + "' for delivery");
+		getOutbox(url, settings).append(new OutboxMessage(url, body.asString()));
+		return new WebhookResponse(QUEUED, "").withDetail("outbox", "queued");
+	}
+
+	@Override
+	public boolean drain(WebhookSettings settings) {
+		Assert.state(settings.stateDirectory() != null, "A state directory is required to deliver queued messages");
+		boolean empty = true;
+		for (Outbox outbox : getOutboxes(settings)) {
+			// Each space is drained even if another cannot be delivered to
+			empty &= outbox.drain((queued) -> deliverQueued(queued, settings));
+		}
+		return empty;
+	}
+
+	@Override
+	public boolean hasQueuedMessages(WebhookSettings settings) {
+		Assert.state(settings.stateDirectory() != null, "A state directory is required to check queued messages");
+		return getOutboxes(settings).stream().anyMatch((outbox) -> !outbox.isEmpty());
+	}
+
+	private MessageBody createBody(WebhookMessage message, Variables variables) {
+		return MessageBody.of(message, this.objectMapper, (text) -> this.templates.resolve(text, variables));
+	}
+
+	private List<Outbox> getOutboxes(WebhookSettings settings) {
+		Path outboxes = settings.stateDirectory().resolve(OUTBOX_DIRECTORY);
+		if (!Files.isDirectory(outboxes)) {
+			return Collections.emptyList();
+		}
+		try (Stream<Path> directories = Files.list(outboxes)) {
+			return directories.filter(Files::isDirectory).map(Outbox::new).toList();
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Unable to list outboxes in '" + outboxes + "'", ex);
+		}
+	}
+
+	private Outbox getOutbox(String url, WebhookSettings settings) {
+		// Each space has its own outbox so that one that cannot be delivered to does not
+		// hold up messages to others
+		String name = DigestUtils.md5DigestAsHex(getSpaceKey(url).getBytes(StandardCharsets.UTF_8));
+		return new Outbox(settings.stateDirectory().resolve(OUTBOX_DIRECTORY).resolve(name));
+	}
+
+	private WebhookResponse send(String url, MessageBody body, WebhookSettings settings) {
+		if (settings.stateDirectory() == null) {
+			return complete(deliver(url, body, settings));
+		}
+		Outbox outbox = getOutbox(url, settings);
+		if (!outbox.drain((queued) -> deliverQueued(queued, settings))) {
+			console.log("Adding message to outbox behind undelivered messages");
+			outbox.append(new OutboxMessage(url, body.asString()));
+			return new WebhookResponse(QUEUED, "").withDetail("outbox", "queued");
+		}
+		Delivery delivery = deliver(url, body, settings);
+		if (!delivery.attempt().retryable()) {
+			return complete(delivery);
+		}
+		console.log("Adding undelivered message to outbox");
+		outbox.append(new OutboxMessage(url, body.asString()));
+		ResourceAccessException exception = delivery.attempt().exception();
+		WebhookResponse response = (exception != null) ? new WebhookResponse(QUEUED, exception.getMessage())
+				: delivery.attempt().response();
+		return addDetails(response, delivery).withDetail("outbox", "queued");
+	}
+
+	private Delivery deliver(String url, MessageBody body, WebhookSettings settings) {
+		RetryPolicy retryPolicy = settings.retryPolicy();
+		long startTime = System.nanoTime();
+		Duration totalBackoff = Duration.ZERO;
+		Pacing pacing = new Pacing();
+		for (int attempt = 1;; attempt++) {
+			Attempt result;
+			try {
+				pace(url, settings, pacing);
+				result = attempt(url, body, settings);
+			}
+			catch (ResourceAccessException ex) {
+				console.log("Error sending request: " + ex.getMessage());
+				result = new Attempt(null, true, null, ex);
+			}
+			Duration backoff = (result.retryable()) ? retryPolicy.getBackoff(attempt, result.retryAfter()) : null;
+			Duration elapsed = Duration.ofNanos(System.nanoTime() - startTime);
+			if (backoff == null || !retryPolicy.shouldRetry(attempt, elapsed, backoff)) {
+				return new Delivery(result, attempt, totalBackoff, pacing);
+			}
+			console.log("Retrying request in " + backoff.toMillis() + "ms");
+			if (!sleep(backoff)) {
+				return new Delivery(result, attempt, totalBackoff, pacing);
+			}
+			totalBackoff = totalBackoff.plus(backoff);
+		}
+	}
+
+	private boolean deliverQueued(OutboxMessage queued, WebhookSettings settings) {
+		MessageBody body = MessageBody.of(queued.body());
+		console.log("Sending queued message '" + body.getPreview() + "' to webhook");
 		try {
-			message.resolvePlaceholders(this.environment);
-			String messageString = this.objectMapper.writeValueAsString(message);
-			console.log("Sending message '" + messageString + "' to webhook");
-			String body = this.restClient.post()
-				.uri(url)
-				.header("accept", "application/json; charset=UTF-8")
-				.body(messageString)
-				.retrieve()
-				.body(String.class);
-			return new WebhookResponse(HttpStatus.OK.toString(), body);
-		}
-		catch (RestClientResponseException rce) {
-			console.log("Error sending request: " + rce.getMessage());
-			return new WebhookResponse(rce.getStatusText(), rce.getResponseBodyAsString());
-		}
-		catch (JsonProcessingException jpe) {
-			console.log("Error formatting message for sending: " + jpe.getMessage());
-			throw new IllegalStateException("Error formatting message for sending", jpe);
+			pace(queued.url(), settings, new Pacing());
+			// Messages rejected with a non-retryable status would never be delivered so
+			// are removed from the outbox
+			return !attempt(queued.url(), body, settings).retryable();
+		}
+		catch (ResourceAccessException ex) {
+			console.log("Error sending request: " + ex.getMessage());
+			return false;
+		}
+	}
+
+	private WebhookResponse complete(Delivery delivery) {
+		if (delivery.attempt().exception() != null) {
+			throw delivery.attempt().exception();
+		}
+		return addDetails(delivery.attempt().response(), delivery);
+	}
+
+	private WebhookResponse addDetails(WebhookResponse response, Delivery delivery) {
+		response = response.withDetail("attempts", String.valueOf(delivery.attempts()))
+			.withDetail("backoff", delivery.totalBackoff().toMillis() + "ms");
+		Pacing pacing = delivery.pacing();
+		if (pacing.queued != null) {
+			response = response.withDetail("rate_limit_wait", pacing.delay.toMillis() + "ms")
+				.withDetail("rate_limit_queue", String.valueOf(pacing.queued));
 		}
+		return response;
+	}
+
+	private void pace(String url, WebhookSettings settings, Pacing pacing) {
+		RateLimit rateLimit = settings.rateLimit();
+		if (rateLimit == null) {
+			return;
+		}
+		Reservation reservation = getTokenBucket(url, settings.stateDirectory()).reserve(rateLimit);
+		if (pacing.queued == null) {
+			pacing.queued = reservation.queued();
+		}
+		if (!reservation.delay().isZero()) {
+			console.log("Waiting " + reservation.delay().toMillis() + "ms for rate limit");
+			Assert.state(sleep(reservation.delay()), "Interrupted waiting for rate limit");
+			pacing.delay = pacing.delay.plus(reservation.delay());
+		}
+	}
+
+	private TokenBucket getTokenBucket(String url, Path stateDirectory) {
+		String key = getSpaceKey(url);
+		if (stateDirectory == null) {
+			return this.tokenBuckets.computeIfAbsent(key, (k) -> new TokenBucket());
+		}
+		String name = DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8));
+		Path file = stateDirectory.resolve(RATE_LIMIT_DIRECTORY).resolve(name);
+		return this.fileTokenBuckets.computeIfAbsent(file, this::createFileTokenBucket);
+	}
+
+	private FileTokenBucket createFileTokenBucket(Path file) {
+		try {
+			return new FileTokenBucket(file);
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Unable to open rate limit state '" + file + "'", ex);
+		}
+	}
+
+	private String getSpaceKey(String url) {
+		// The query holds the webhook credentials and thread options, the space is
+		// identified by the path
+		int queryIndex = url.indexOf('?');
+		return (queryIndex != -1) ? url.substring(0, queryIndex) : url;
+	}
+
+	private Attempt attempt(String url, MessageBody body, WebhookSettings settings) {
+		long startTime = System.nanoTime();
+		RestClient.RequestBodySpec request = getRestClient(settings).post()
+			.uri(url)
+			.header("accept", "application/json; charset=UTF-8")
+			.contentType(JSON_UTF8);
+		// The body is streamed with chunked encoding until its length is known from a
+		// previous attempt
+		long contentLength = body.getContentLength();
+		if (contentLength >= 0) {
+			request.contentLength(contentLength);
+		}
+		return request.body(body).exchange((clientRequest, response) -> getAttempt(response, settings, startTime));
+	}
+
+	private boolean sleep(Duration backoff) {
+		try {
+			Thread.sleep(backoff.toMillis());
+			return true;
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private RestClient getRestClient(WebhookSettings settings) {
+		List<Duration> key = List.of(settings.connectTimeout(), settings.readTimeout());
+		return this.restClients.computeIfAbsent(key, (timeouts) -> {
+			RestClient.Builder builder = this.restClientBuilder.clone();
+			this.transport.customize(builder, settings);
+			return builder.build();
+		});
+	}
+
+	private Attempt getAttempt(ClientHttpResponse response, WebhookSettings settings, long startTime)
+			throws IOException {
+		Duration responseTime = Duration.ofNanos(System.nanoTime() - startTime);
+		HttpStatusCode statusCode = response.getStatusCode();
+		Map<String, String> summary = new LinkedHashMap<>();
+		String body = readBody(response, statusCode, settings.responseMode(), summary);
+		Duration totalTime = Duration.ofNanos(System.nanoTime() - startTime);
+		Map<String, String> details = new LinkedHashMap<>();
+		details.put("response_time", responseTime.toMillis() + "ms");
+		details.put("total_time", totalTime.toMillis() + "ms");
+		details.putAll(summary);
+		RetryPolicy retryPolicy = settings.retryPolicy();
+		if (statusCode.isError()) {
+			console.log("Error sending request: " + statusCode.value() + " " + response.getStatusText());
+			WebhookResponse webhookResponse = new WebhookResponse(response.getStatusText(), body, details);
+			Duration retryAfter = RetryPolicy.parseRetryAfter(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER),
+					Clock.systemUTC());
+			return new Attempt(webhookResponse, retryPolicy.isRetryable(statusCode), retryAfter, null);
+		}
+		return new Attempt(new WebhookResponse(statusCode.toString(), body, details), false, null, null);
+	}
+
+	private String readBody(ClientHttpResponse response, HttpStatusCode statusCode, ResponseMode responseMode,
+			Map<String, String> summary) throws IOException {
+		if (responseMode == ResponseMode.FULL) {
+			return StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8);
+		}
+		if (statusCode.isError()) {
+			byte[] bytes = response.getBody().readNBytes(MAX_ERROR_BODY_SIZE + 1);
+			String body = new String(bytes, 0, Math.min(bytes.length, MAX_ERROR_BODY_SIZE), StandardCharsets.UTF_8);
+			return (bytes.length > MAX_ERROR_BODY_SIZE) ? body + "..." : body;
+		}
+		try (JsonParser parser = this.objectMapper.createParser(StreamUtils.nonClosing(response.getBody()))) {
+			if (parser.nextToken() == JsonToken.START_OBJECT) {
+				readSummary(parser, "", summary);
+			}
+		}
+		catch (JsonProcessingException ex) {
+			console.log("Ignoring unreadable response: " + ex.getOriginalMessage());
+		}
+		return null;
+	}
+
+	private void readSummary(JsonParser parser, String prefix, Map<String, String> summary) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = prefix + parser.currentName();
+			JsonToken token = parser.nextToken();
+			String name = SUMMARY_FIELDS.get(field);
+			if (name != null && token == JsonToken.VALUE_STRING) {
+				summary.put(name, parser.getText());
+			}
+			else if (token == JsonToken.START_OBJECT && "thread".equals(field)) {
+				readSummary(parser, "thread.", summary);
+			}
+			else {
+				parser.skipChildren();
+			}
+		}
+	}
+
+	/**
+	 * Time spent waiting for the rate limit while sending a message.
+	 */
+	private static final class Pacing {
+
+		private Duration delay = Duration.ZERO;
+
+		private Integer queued;
+
+	}
+
+	/**
+	 * The result of sending a message, including any retries.
+	 *
+	 * @param attempt the final attempt
+	 * @param attempts the number of attempts made
+	 * @param totalBackoff the total time spent backing off between attempts
+	 * @param pacing the time spent waiting for the rate limit
+	 */
+	private record Delivery(Attempt attempt, int attempts, Duration totalBackoff, Pacing pacing) {
+
+	}
+
+	/**
+	 * The result of a single attempt to call the webhook.
+	 *
+	 * @param response the response or {@code null} if the call failed with an exception
+	 * @param retryable if the attempt may succeed if retried
+	 * @param retryAfter the delay requested by the webhook or {@code null}
+	 * @param exception the exception thrown by the call or {@code null}
+	 */
+	private record Attempt(WebhookResponse response, boolean retryable, Duration retryAfter,
+			ResourceAccessException exception) {
+
 	}
 
 }
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.UnaryOperator;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Request body for a {@link WebhookMessage} that writes JSON directly to the connection
+ * rather than building a string first. The body may be written more than once, such as
+ * when a request is retried, and records its length the first time it is written so that
+ * later requests can send a {@code Content-Length} header instead of being chunked.
+ *
+ * @author Scott Frederick
+ */
+final class MessageBody implements StreamingHttpOutputMessage.Body {
+
+	private static final int PREVIEW_SIZE = 1024;
+
+	private final WebhookMessage message;
+
+	private final ObjectMapper objectMapper;
+
+	private final UnaryOperator<String> resolver;
+
+	private final byte[] bytes;
+
+	private volatile long contentLength;
+
+	private MessageBody(WebhookMessage message, ObjectMapper objectMapper, UnaryOperator<String> resolver,
+			byte[] bytes) {
+		this.message = message;
+		this.objectMapper = objectMapper;
+		this.resolver = resolver;
+		this.bytes = bytes;
+		this.contentLength = (bytes != null) ? bytes.length : -1;
+	}
+
+	/**
+	 * Create a body that writes the given message.
+	 * @param message the message to write
+	 * @param objectMapper the object mapper used to create the JSON generator
+	 * @param resolver the function used to resolve placeholders in string values
+	 * @return the body
+	 */
+	static MessageBody of(WebhookMessage message, ObjectMapper objectMapper, UnaryOperator<String> resolver) {
+		return new MessageBody(message, objectMapper, resolver, null);
+	}
+
+	/**
+	 * Create a body for an already serialized message.
+	 * @param json the JSON message
+	 * @return the body
+	 */
+	static MessageBody of(String json) {
+		return new MessageBody(null, null, null, json.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public void writeTo(OutputStream outputStream) throws IOException {
+		if (this.bytes != null) {
+			outputStream.write(this.bytes);
+			return;
+		}
+		CountingOutputStream counting = new CountingOutputStream(outputStream);
+		write(counting);
+		this.contentLength = counting.count;
+	}
+
+	private void write(OutputStream outputStream) throws IOException {
+		try (JsonGenerator generator = this.objectMapper.createGenerator(StreamUtils.nonClosing(outputStream),
+				JsonEncoding.UTF8)) {
+			this.message.write(generator, this.resolver);
+		}
+		catch (JsonProcessingException ex) {
+			// Formatting errors would fail every attempt so are not reported as I/O
+			// errors
+			throw new IllegalStateException("Error formatting message for sending", ex);
+		}
+	}
+
+	/**
+	 * Return the length of the body in bytes or {@code -1} if it is not yet known.
+	 * @return the content length
+	 */
+	long getContentLength() {
+		return this.contentLength;
+	}
+
+	/**
+	 * Return the start of the body for use in log messages. Only as much of the message
+	 * as is needed for the preview is written.
+	 * @return a preview of the body
+	 */
+	String getPreview() {
+		if (this.bytes != null) {
+			return preview(this.bytes, this.bytes.length);
+		}
+		PreviewOutputStream preview = new PreviewOutputStream();
+		try {
+			write(preview);
+		}
+		catch (PreviewCompleteException ex) {
+			// Enough of the message has been written
+		}
+		catch (IOException ex) {
+			return "";
+		}
+		return preview(preview.buffer, preview.size);
+	}
+
+	private static String preview(byte[] bytes, int length) {
+		if (length <= PREVIEW_SIZE) {
+			return new String(bytes, 0, length, StandardCharsets.UTF_8);
+		}
+		return new String(bytes, 0, PREVIEW_SIZE, StandardCharsets.UTF_8) + "...";
+	}
+
+	/**
+	 * Return the body as a string.
+	 * @return the body string
+	 */
+	String asString() {
+		if (this.bytes != null) {
+			return new String(this.bytes, StandardCharsets.UTF_8);
+		}
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		try {
+			write(outputStream);
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Error formatting message for sending", ex);
+		}
+		return outputStream.toString(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * {@link OutputStream} that counts the bytes written.
+	 */
+	private static final class CountingOutputStream extends FilterOutputStream {
+
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			this.out.write(b);
+			this.count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			this.count += len;
+		}
+
+	}
+
+	/**
+	 * {@link OutputStream} that captures the start of the body and stops writing once
+	 * enough has been captured.
+	 */
+	private static final class PreviewOutputStream extends OutputStream {
+
+		private final byte[] buffer = new byte[PREVIEW_SIZE + 1];
+
+		private int size;
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			int length = Math.min(len, this.buffer.length - this.size);
+			System.arraycopy(b, off, this.buffer, this.size, length);
+			this.size += length;
+			if (this.size == this.buffer.length) {
+				throw new PreviewCompleteException();
+			}
+		}
+
+	}
+
+	/**
+	 * Exception thrown to stop writing once the preview is complete.
+	 */
+	private static final class PreviewCompleteException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		PreviewCompleteException() {
+			super(null, null);
+		}
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+
+	}
+
+}
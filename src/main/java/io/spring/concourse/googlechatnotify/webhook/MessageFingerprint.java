@@ -0,0 +1,71 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Fingerprint of the content of a {@link WebhookMessage} with its placeholders resolved,
+ * used to recognize a message that has already been sent. The message is digested as it
+ * is written so the JSON is never held in memory.
+ *
+ * @author Scott Frederick
+ */
+public final class MessageFingerprint {
+
+	private static final TemplateCache templates = new TemplateCache();
+
+	private MessageFingerprint() {
+	}
+
+	/**
+	 * Return the fingerprint of the given message.
+	 * @param message the message
+	 * @param objectMapper the object mapper used to write the message
+	 * @param variables the variables used to resolve placeholders in the message
+	 * @return the hex encoded fingerprint
+	 */
+	public static String of(WebhookMessage message, ObjectMapper objectMapper, Function<String, String> variables) {
+		MessageDigest digest = createDigest();
+		MessageBody body = MessageBody.of(message, objectMapper, (text) -> templates.resolve(text, variables));
+		try (OutputStream outputStream = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+			body.writeTo(outputStream);
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Error formatting message for sending", ex);
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+}
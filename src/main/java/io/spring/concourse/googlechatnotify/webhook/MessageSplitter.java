@@ -0,0 +1,299 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.spring.concourse.googlechatnotify.system.ConsoleLogger;
+import io.spring.concourse.googlechatnotify.system.Variables;
+
+/**
+ * Splits messages that are too large for Google Chat into smaller parts that can be sent
+ * in order to the same thread. The size of a message is measured with its placeholders
+ * resolved so that a message that would be rejected is never sent.
+ *
+ * @author Scott Frederick
+ */
+public class MessageSplitter {
+
+	/**
+	 * The default maximum size of a message in bytes.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 32000;
+
+	private static final String TEXT = "text";
+
+	private static final String CARDS = "cardsV2";
+
+	private static final String REPLY_OPTION = "messageReplyOption";
+
+	private static final String REPLY_OPTION_PARAMETER = REPLY_OPTION + "=REPLY_MESSAGE_FALLBACK_TO_NEW_THREAD";
+
+	private static final ConsoleLogger console = new ConsoleLogger();
+
+	private final ObjectMapper objectMapper;
+
+	private final int maxSize;
+
+	private final TemplateCache templates = new TemplateCache();
+
+	public MessageSplitter(ObjectMapper objectMapper) {
+		this(objectMapper, DEFAULT_MAX_SIZE);
+	}
+
+	MessageSplitter(ObjectMapper objectMapper, int maxSize) {
+		this.objectMapper = objectMapper;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Split the given message into parts that are no larger than the maximum size.
+	 * Messages that are small enough are returned unchanged. Larger messages are split
+	 * into text parts on line boundaries followed by card parts, with cards that are too
+	 * large on their own split into separate cards holding some of their sections. Parts
+	 * have their placeholders already resolved and share a thread key, so should be sent
+	 * to the URL returned from {@link #getThreadUrl(String)}.
+	 * @param message the message to split
+	 * @param variables the variables used to resolve placeholders in the message
+	 * @return the message parts
+	 */
+	public List<WebhookMessage> split(WebhookMessage message, Variables variables) {
+		int size = measure(message, variables);
+		if (size <= this.maxSize) {
+			return List.of(message);
+		}
+		ObjectNode resolved = read(write(message, variables));
+		JsonNode text = resolved.get(TEXT);
+		JsonNode cards = resolved.get(CARDS);
+		resolved.remove(List.of(TEXT, CARDS));
+		if (!resolved.has("thread")) {
+			resolved.putObject("thread").put("threadKey", "google-chat-notify-" + UUID.randomUUID());
+		}
+		Map<String, Object> base = new LinkedHashMap<>();
+		resolved.fields()
+			.forEachRemaining((field) -> base.put(field.getKey(), new RawJson(field.getValue().toString())));
+		List<WebhookMessage> parts = new ArrayList<>();
+		if (text != null && text.isTextual()) {
+			addTextParts(parts, base, text.textValue());
+		}
+		if (cards != null && cards.isArray()) {
+			addCardParts(parts, base, cards);
+		}
+		if (parts.isEmpty()) {
+			throw new IllegalArgumentException(
+					"Message of " + size + " bytes is larger than the maximum size of " + this.maxSize + " bytes");
+		}
+		console.log("Splitting message of " + size + " bytes into " + parts.size() + " parts");
+		return parts;
+	}
+
+	private void addTextParts(List<WebhookMessage> parts, Map<String, Object> base, String text) {
+		int budget = getBudget(base, TEXT, "\"\"");
+		StringBuilder part = new StringBuilder();
+		int partSize = 0;
+		int start = 0;
+		while (start < text.length()) {
+			int end = text.indexOf('\n', start);
+			end = (end != -1) ? end + 1 : text.length();
+			String line = text.substring(start, end);
+			int lineSize = getEncodedSize(line);
+			if (partSize + lineSize > budget && partSize > 0) {
+				parts.add(createTextPart(base, part));
+				part.setLength(0);
+				partSize = 0;
+			}
+			if (lineSize <= budget) {
+				part.append(line);
+				partSize += lineSize;
+			}
+			else {
+				// Lines that are too long on their own are broken between characters
+				for (int i = 0; i < line.length(); i += Character.charCount(line.codePointAt(i))) {
+					String character = new String(Character.toChars(line.codePointAt(i)));
+					int characterSize = getEncodedSize(character);
+					if (partSize + characterSize > budget) {
+						parts.add(createTextPart(base, part));
+						part.setLength(0);
+						partSize = 0;
+					}
+					part.append(character);
+					partSize += characterSize;
+				}
+			}
+			start = end;
+		}
+		if (partSize > 0) {
+			parts.add(createTextPart(base, part));
+		}
+	}
+
+	private WebhookMessage createTextPart(Map<String, Object> base, CharSequence text) {
+		WebhookMessage part = WebhookMessage.from(base);
+		part.put(TEXT, new RawJson("\"" + new String(JsonStringEncoder.getInstance().quoteAsString(text)) + "\""));
+		return part;
+	}
+
+	private void addCardParts(List<WebhookMessage> parts, Map<String, Object> base, JsonNode cards) {
+		int budget = getBudget(base, CARDS, "[]");
+		StringBuilder part = new StringBuilder();
+		int partSize = 0;
+		for (JsonNode card : cards) {
+			for (String json : splitCard(card, budget)) {
+				int cardSize = json.getBytes(StandardCharsets.UTF_8).length;
+				if (partSize > 0 && partSize + 1 + cardSize > budget) {
+					parts.add(createCardPart(base, part));
+					part.setLength(0);
+					partSize = 0;
+				}
+				if (partSize > 0) {
+					part.append(',');
+					partSize++;
+				}
+				part.append(json);
+				partSize += cardSize;
+			}
+		}
+		if (partSize > 0) {
+			parts.add(createCardPart(base, part));
+		}
+	}
+
+	private List<String> splitCard(JsonNode card, int budget) {
+		String json = card.toString();
+		int cardSize = json.getBytes(StandardCharsets.UTF_8).length;
+		if (cardSize <= budget) {
+			return List.of(json);
+		}
+		JsonNode sections = card.path("card").path("sections");
+		if (!sections.isArray() || sections.size() < 2) {
+			throw new IllegalArgumentException("Card of " + cardSize + " bytes is larger than the maximum size of "
+					+ budget + " bytes and cannot be split");
+		}
+		ObjectNode empty = card.deepCopy();
+		((ObjectNode) empty.get("card")).putArray("sections");
+		int emptySize = getSize(empty);
+		List<String> split = new ArrayList<>();
+		ObjectNode current = null;
+		int currentSize = 0;
+		for (JsonNode section : sections) {
+			int sectionSize = getSize(section);
+			if (emptySize + sectionSize > budget) {
+				throw new IllegalArgumentException("Card section of " + sectionSize
+						+ " bytes is larger than the maximum size of " + budget + " bytes");
+			}
+			if (current != null && currentSize + 1 + sectionSize > budget) {
+				split.add(current.toString());
+				current = null;
+			}
+			if (current == null) {
+				current = empty.deepCopy();
+				currentSize = emptySize + sectionSize;
+			}
+			else {
+				currentSize += 1 + sectionSize;
+			}
+			((ArrayNode) current.get("card").get("sections")).add(section);
+		}
+		split.add(current.toString());
+		return split;
+	}
+
+	private WebhookMessage createCardPart(Map<String, Object> base, CharSequence cards) {
+		WebhookMessage part = WebhookMessage.from(base);
+		part.put(CARDS, new RawJson("[" + cards + "]"));
+		return part;
+	}
+
+	private int getBudget(Map<String, Object> base, String field, String emptyJson) {
+		WebhookMessage empty = WebhookMessage.from(base);
+		empty.put(field, new RawJson(emptyJson));
+		int budget = this.maxSize - measure(empty, null);
+		if (budget <= 0) {
+			throw new IllegalArgumentException(
+					"Message fields leave no room for content within the maximum size of " + this.maxSize + " bytes");
+		}
+		return budget;
+	}
+
+	private int getEncodedSize(String text) {
+		return JsonStringEncoder.getInstance().quoteAsUTF8(text).length;
+	}
+
+	private int getSize(JsonNode node) {
+		return node.toString().getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	private int measure(WebhookMessage message, Variables variables) {
+		// The body records its length as it is written so nothing needs to be kept
+		MessageBody body = write(message, variables, OutputStream.nullOutputStream());
+		return (int) body.getContentLength();
+	}
+
+	private byte[] write(WebhookMessage message, Variables variables) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		write(message, variables, outputStream);
+		return outputStream.toByteArray();
+	}
+
+	private MessageBody write(WebhookMessage message, Variables variables, OutputStream outputStream) {
+		MessageBody body = MessageBody.of(message, this.objectMapper,
+				(text) -> (variables != null) ? this.templates.resolve(text, variables) : text);
+		try {
+			body.writeTo(outputStream);
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Error formatting message for sending", ex);
+		}
+		return body;
+	}
+
+	private ObjectNode read(byte[] json) {
+		try {
+			return (ObjectNode) this.objectMapper.readTree(json);
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Error reading formatted message", ex);
+		}
+	}
+
+	/**
+	 * Return the given webhook URL with the option needed for messages with a thread key
+	 * to be added to the thread.
+	 * @param url the webhook URL
+	 * @return the URL with the reply option
+	 */
+	public static String getThreadUrl(String url) {
+		if (url.contains(REPLY_OPTION + "=")) {
+			return url;
+		}
+		return url + ((url.indexOf('?') != -1) ? "&" : "?") + REPLY_OPTION_PARAMETER;
+	}
+
+}
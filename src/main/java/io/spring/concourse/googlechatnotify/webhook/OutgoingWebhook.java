@@ -16,6 +16,8 @@
 
 package io.spring.concourse.googlechatnotify.webhook;
 
+import io.spring.concourse.googlechatnotify.system.Variables;
+
 /**
  * An outgoing webhook for sending build status notifications.
  *
@@ -23,6 +25,41 @@ package io.spring.concourse.googlechatnotify.webhook;
  */
 public interface OutgoingWebhook {
 
-	WebhookResponse send(String url, WebhookMessage message);
+	/**
+	 * Send a message to the webhook.
+	 * @param url the URL of the webhook
+	 * @param message the message to send
+	 * @param variables the variables used to resolve placeholders in the message
+	 * @param settings the settings to use
+	 * @return the response
+	 */
+	WebhookResponse send(String url, WebhookMessage message, Variables variables, WebhookSettings settings);
+
+	/**
+	 * Add a message to the outbox in the {@link WebhookSettings#stateDirectory() state
+	 * directory} so that it can be delivered later by {@link #drain(WebhookSettings)}.
+	 * @param url the URL of the webhook
+	 * @param message the message to send
+	 * @param variables the variables used to resolve placeholders in the message
+	 * @param settings the settings to use
+	 * @return a response indicating that the message was queued
+	 */
+	WebhookResponse enqueue(String url, WebhookMessage message, Variables variables, WebhookSettings settings);
+
+	/**
+	 * Deliver messages from the outboxes in the {@link WebhookSettings#stateDirectory()
+	 * state directory}.
+	 * @param settings the settings to use
+	 * @return {@code true} if every outbox is empty
+	 */
+	boolean drain(WebhookSettings settings);
+
+	/**
+	 * Return if messages are waiting in the outboxes in the
+	 * {@link WebhookSettings#stateDirectory() state directory}.
+	 * @param settings the settings to use
+	 * @return {@code true} if any outbox has messages or is being drained
+	 */
+	boolean hasQueuedMessages(WebhookSettings settings);
 
 }
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Text compiled into literal and {@code ${name}} placeholder segments so that it can be
+ * rendered many times without being parsed again. Placeholders may specify a default
+ * value using {@code ${name:default}}, may be nested and may resolve to values that
+ * themselves contain placeholders. Placeholders that cannot be resolved are left
+ * unchanged.
+ *
+ * @author Scott Frederick
+ */
+final class PlaceholderTemplate {
+
+	private static final String PREFIX = "${";
+
+	private static final char SUFFIX = '}';
+
+	private static final char SEPARATOR = ':';
+
+	private final String text;
+
+	private final List<Segment> segments;
+
+	private PlaceholderTemplate(String text, List<Segment> segments) {
+		this.text = text;
+		this.segments = segments;
+	}
+
+	/**
+	 * Return if the given text contains placeholders that may need to be resolved.
+	 * @param text the text to check
+	 * @return if the text contains placeholders
+	 */
+	static boolean hasPlaceholders(String text) {
+		return text != null && text.contains(PREFIX);
+	}
+
+	/**
+	 * Compile the given text.
+	 * @param text the text to compile
+	 * @return the compiled template
+	 */
+	static PlaceholderTemplate compile(String text) {
+		List<Segment> segments = new ArrayList<>();
+		int position = 0;
+		int start = text.indexOf(PREFIX);
+		while (start != -1) {
+			int end = findEnd(text, start + PREFIX.length());
+			if (end == -1) {
+				break;
+			}
+			if (start > position) {
+				segments.add(new Literal(text.substring(position, start)));
+			}
+			segments.add(Placeholder.compile(text.substring(start, end + 1)));
+			position = end + 1;
+			start = text.indexOf(PREFIX, position);
+		}
+		if (position < text.length()) {
+			segments.add(new Literal(text.substring(position)));
+		}
+		return new PlaceholderTemplate(text, List.copyOf(segments));
+	}
+
+	private static int findEnd(String text, int index) {
+		int depth = 0;
+		while (index < text.length()) {
+			if (text.startsWith(PREFIX, index)) {
+				depth++;
+				index += PREFIX.length();
+				continue;
+			}
+			if (text.charAt(index) == SUFFIX) {
+				if (depth == 0) {
+					return index;
+				}
+				depth--;
+			}
+			index++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Render the template using the given variables.
+	 * @param variables function used to look up variable values, returning {@code null}
+	 * for unknown variables
+	 * @return the rendered text
+	 */
+	String render(Function<String, String> variables) {
+		if (this.segments.size() == 1 && this.segments.get(0) instanceof Literal literal) {
+			return literal.text();
+		}
+		StringBuilder result = new StringBuilder(this.text.length());
+		render(result, variables, new HashSet<>());
+		return result.toString();
+	}
+
+	private void render(StringBuilder result, Function<String, String> variables, Set<String> visiting) {
+		for (Segment segment : this.segments) {
+			segment.render(result, variables, visiting);
+		}
+	}
+
+	private String render(Function<String, String> variables, Set<String> visiting) {
+		StringBuilder result = new StringBuilder();
+		render(result, variables, visiting);
+		return result.toString();
+	}
+
+	@Override
+	public String toString() {
+		return this.text;
+	}
+
+	/**
+	 * A segment of a compiled template.
+	 */
+	private interface Segment {
+
+		void render(StringBuilder result, Function<String, String> variables, Set<String> visiting);
+
+	}
+
+	/**
+	 * A segment containing literal text.
+	 *
+	 * @param text the text
+	 */
+	private record Literal(String text) implements Segment {
+
+		@Override
+		public void render(StringBuilder result, Function<String, String> variables, Set<String> visiting) {
+			result.append(this.text);
+		}
+
+	}
+
+	/**
+	 * A segment containing a placeholder.
+	 *
+	 * @param original the original placeholder text
+	 * @param name the template for the variable name
+	 * @param defaultValue the template for the default value or {@code null}
+	 */
+	private record Placeholder(String original, PlaceholderTemplate name,
+			PlaceholderTemplate defaultValue) implements Segment {
+
+		static Placeholder compile(String original) {
+			String content = original.substring(PREFIX.length(), original.length() - 1);
+			int separator = findSeparator(content);
+			if (separator == -1) {
+				return new Placeholder(original, PlaceholderTemplate.compile(content), null);
+			}
+			return new Placeholder(original, PlaceholderTemplate.compile(content.substring(0, separator)),
+					PlaceholderTemplate.compile(content.substring(separator + 1)));
+		}
+
+		private static int findSeparator(String content) {
+			int depth = 0;
+			for (int i = 0; i < content.length(); i++) {
+				if (content.startsWith(PREFIX, i)) {
+					depth++;
+					i++;
+				}
+				else if (content.charAt(i) == SUFFIX) {
+					depth--;
+				}
+				else if (content.charAt(i) == SEPARATOR && depth == 0) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public void render(StringBuilder result, Function<String, String> variables, Set<String> visiting) {
+			String name = this.name.render(variables, visiting);
+			String value = variables.apply(name);
+			if (value == null && this.defaultValue != null) {
+				value = this.defaultValue.render(variables, visiting);
+			}
+			if (value == null) {
+				result.append(this.original);
+				return;
+			}
+			if (!hasPlaceholders(value)) {
+				result.append(value);
+				return;
+			}
+			if (!visiting.add(name)) {
+				throw new IllegalArgumentException("Circular placeholder reference '" + name + "'");
+			}
+			PlaceholderTemplate.compile(value).render(result, variables, visiting);
+			visiting.remove(name);
+		}
+
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import org.springframework.util.Assert;
+
+/**
+ * Client-side limit on the rate at which messages are sent to a webhook. Calls that would
+ * exceed the limit are delayed until a permit is available rather than sent and rejected.
+ *
+ * @author Scott Frederick
+ * @param permitsPerSecond the sustained number of calls allowed per second
+ * @param burst the number of calls that may be made at once after a quiet period
+ */
+public record RateLimit(double permitsPerSecond, int burst) {
+
+	private static final int DEFAULT_BURST = 1;
+
+	public RateLimit(double permitsPerSecond, int burst) {
+		Assert.isTrue(permitsPerSecond > 0, "Permits per second must be greater than zero");
+		this.permitsPerSecond = permitsPerSecond;
+		this.burst = (burst > 0) ? burst : DEFAULT_BURST;
+	}
+
+	/**
+	 * Create a rate limit with the given rate and burst, returning {@code null} if no
+	 * rate is given.
+	 * @param permitsPerSecond the sustained number of calls allowed per second or
+	 * {@code null}
+	 * @param burst the number of calls allowed at once or {@code null}
+	 * @return a new rate limit or {@code null}
+	 */
+	public static RateLimit of(Double permitsPerSecond, Integer burst) {
+		if (permitsPerSecond == null) {
+			return null;
+		}
+		return new RateLimit(permitsPerSecond, (burst != null) ? burst : 0);
+	}
+
+}
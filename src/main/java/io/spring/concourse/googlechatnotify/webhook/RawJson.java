@@ -0,0 +1,35 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import org.springframework.util.Assert;
+
+/**
+ * A {@link WebhookMessage} value holding well formed JSON that is written to the message
+ * unchanged. Used to pass through content that has no placeholders to resolve without
+ * reading it into maps and lists.
+ *
+ * @param json the JSON content
+ * @author Scott Frederick
+ */
+public record RawJson(String json) {
+
+	public RawJson {
+		Assert.notNull(json, "JSON must not be null");
+	}
+
+}
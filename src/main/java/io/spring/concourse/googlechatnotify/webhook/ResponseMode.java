@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * How the body of a webhook response is handled.
+ *
+ * @author Scott Frederick
+ */
+public enum ResponseMode {
+
+	/**
+	 * The whole response body is kept.
+	 */
+	FULL,
+
+	/**
+	 * Only the message name, thread name and create time are parsed from the response
+	 * body as it is read, and the rest of the body is discarded. The bodies of error
+	 * responses are kept up to a limited size.
+	 */
+	SUMMARY;
+
+	/**
+	 * Return the response mode with the given name, ignoring case.
+	 * @param name the name of the mode or {@code null}
+	 * @return the response mode, {@link #FULL} if no name is given
+	 */
+	public static ResponseMode of(String name) {
+		if (!StringUtils.hasText(name)) {
+			return FULL;
+		}
+		for (ResponseMode mode : values()) {
+			if (mode.name().equalsIgnoreCase(name)) {
+				return mode;
+			}
+		}
+		throw new IllegalArgumentException("Unknown response mode '" + name + "'");
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.util.StringUtils;
+
+/**
+ * Policy used to decide if and when a failed webhook call should be retried. Backoff
+ * grows exponentially from the initial backoff up to the maximum, with random jitter,
+ * unless the webhook responds with a {@code Retry-After} header. No retry is attempted
+ * once the total time spent would exceed the budget.
+ *
+ * @author Scott Frederick
+ * @param maxAttempts the maximum number of attempts, including the first
+ * @param initialBackoff the backoff before the first retry
+ * @param maxBackoff the maximum backoff between attempts
+ * @param budget the maximum total time to spend sending a message, including retries
+ */
+public record RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff, Duration budget) {
+
+	private static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+	private static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofSeconds(1);
+
+	private static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(10);
+
+	private static final Duration DEFAULT_BUDGET = Duration.ofSeconds(60);
+
+	/**
+	 * Default retry policy. Declared after the defaults it is created from.
+	 */
+	public static final RetryPolicy DEFAULT = new RetryPolicy(0, null, null, null);
+
+	private static final Set<HttpStatus> RETRYABLE_STATUSES = Set.of(HttpStatus.REQUEST_TIMEOUT,
+			HttpStatus.TOO_MANY_REQUESTS, HttpStatus.INTERNAL_SERVER_ERROR, HttpStatus.BAD_GATEWAY,
+			HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.GATEWAY_TIMEOUT);
+
+	public RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff, Duration budget) {
+		this.maxAttempts = (maxAttempts > 0) ? maxAttempts : DEFAULT_MAX_ATTEMPTS;
+		this.initialBackoff = (initialBackoff != null) ? initialBackoff : DEFAULT_INITIAL_BACKOFF;
+		this.maxBackoff = (maxBackoff != null) ? maxBackoff : DEFAULT_MAX_BACKOFF;
+		this.budget = (budget != null) ? budget : DEFAULT_BUDGET;
+	}
+
+	/**
+	 * Create a policy with the given maximum attempts and budget, using defaults for any
+	 * {@code null} value.
+	 * @param maxAttempts the maximum number of attempts or {@code null}
+	 * @param budget the maximum total time or {@code null}
+	 * @return a new retry policy
+	 */
+	public static RetryPolicy of(Integer maxAttempts, Duration budget) {
+		return new RetryPolicy((maxAttempts != null) ? maxAttempts : 0, null, null, budget);
+	}
+
+	/**
+	 * Return if a response with the given status may succeed if retried.
+	 * @param statusCode the response status code
+	 * @return if the response is retryable
+	 */
+	public boolean isRetryable(HttpStatusCode statusCode) {
+		HttpStatus status = HttpStatus.resolve(statusCode.value());
+		return status != null && RETRYABLE_STATUSES.contains(status);
+	}
+
+	/**
+	 * Return the backoff to apply after the given failed attempt.
+	 * @param attempt the number of the failed attempt, starting at 1
+	 * @param retryAfter the delay requested by the webhook or {@code null}
+	 * @return the backoff
+	 */
+	public Duration getBackoff(int attempt, Duration retryAfter) {
+		if (retryAfter != null) {
+			return retryAfter;
+		}
+		long max = this.maxBackoff.toMillis();
+		long exponential = this.initialBackoff.toMillis() << Math.min(attempt - 1, 30);
+		long backoff = (exponential > 0) ? Math.min(exponential, max) : max;
+		long half = backoff / 2;
+		return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(backoff - half + 1));
+	}
+
+	/**
+	 * Return if another attempt should be made after the given failed attempt.
+	 * @param attempt the number of the failed attempt, starting at 1
+	 * @param elapsed the time spent so far
+	 * @param backoff the backoff that would be applied
+	 * @return if another attempt should be made
+	 */
+	public boolean shouldRetry(int attempt, Duration elapsed, Duration backoff) {
+		return attempt < this.maxAttempts && elapsed.plus(backoff).compareTo(this.budget) < 0;
+	}
+
+	/**
+	 * Parse the value of a {@code Retry-After} header, which may be either a number of
+	 * seconds or an HTTP date.
+	 * @param value the header value
+	 * @param clock the clock used to calculate the delay until a date
+	 * @return the delay or {@code null} if the value cannot be parsed
+	 */
+	static Duration parseRetryAfter(String value, Clock clock) {
+		if (!StringUtils.hasText(value)) {
+			return null;
+		}
+		String trimmed = value.trim();
+		if (trimmed.length() < 10 && trimmed.chars().allMatch(Character::isDigit)) {
+			return Duration.ofSeconds(Long.parseLong(trimmed));
+		}
+		try {
+			ZonedDateTime date = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+			Duration delay = Duration.between(clock.instant(), date.toInstant());
+			return (delay.isNegative()) ? Duration.ZERO : delay;
+		}
+		catch (DateTimeParseException ex) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Cache of {@link PlaceholderTemplate compiled templates} so that text that is sent
+ * repeatedly, such as in batch or daemon mode, is only parsed once. The cache is cleared
+ * once it reaches its maximum size to keep memory use bounded.
+ *
+ * @author Scott Frederick
+ */
+class TemplateCache {
+
+	private static final int DEFAULT_MAX_SIZE = 1024;
+
+	private final Map<String, PlaceholderTemplate> templates = new ConcurrentHashMap<>();
+
+	private final int maxSize;
+
+	TemplateCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	TemplateCache(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Return the compiled template for the given text.
+	 * @param text the template text
+	 * @return the compiled template
+	 */
+	PlaceholderTemplate get(String text) {
+		PlaceholderTemplate template = this.templates.get(text);
+		if (template == null) {
+			template = PlaceholderTemplate.compile(text);
+			if (this.templates.size() >= this.maxSize) {
+				this.templates.clear();
+			}
+			this.templates.put(text, template);
+		}
+		return template;
+	}
+
+	/**
+	 * Resolve the placeholders in the given text.
+	 * @param text the text to resolve
+	 * @param variables function used to look up variable values
+	 * @return the resolved text
+	 */
+	String resolve(String text, Function<String, String> variables) {
+		return (PlaceholderTemplate.hasPlaceholders(text)) ? get(text).render(variables) : text;
+	}
+
+}
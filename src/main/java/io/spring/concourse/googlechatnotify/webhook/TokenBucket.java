@@ -0,0 +1,97 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket used to pace calls to a single webhook. Each caller reserves a token and
+ * is told how long to wait for it, so concurrent callers are queued in arrival order
+ * rather than rejected. The token count is allowed to go negative to record reservations
+ * that are still waiting.
+ *
+ * @author Scott Frederick
+ */
+class TokenBucket {
+
+	private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+	private final LongSupplier nanoTime;
+
+	private double tokens = Double.NaN;
+
+	private long lastRefill;
+
+	TokenBucket() {
+		this(System::nanoTime);
+	}
+
+	TokenBucket(LongSupplier nanoTime) {
+		this.nanoTime = nanoTime;
+	}
+
+	/**
+	 * Reserve a token, returning how long the caller must wait before using it.
+	 * @param limit the rate limit to apply
+	 * @return the reservation
+	 */
+	synchronized Reservation reserve(RateLimit limit) {
+		long now = this.nanoTime.getAsLong();
+		double available = (Double.isNaN(this.tokens)) ? limit.burst()
+				: refill(limit, this.tokens, now - this.lastRefill);
+		this.tokens = available - 1;
+		this.lastRefill = now;
+		return Reservation.of(limit, available);
+	}
+
+	/**
+	 * Return the number of tokens available after the given time has elapsed.
+	 * @param limit the rate limit to apply
+	 * @param tokens the number of tokens at the last refill
+	 * @param elapsedNanos the time elapsed since the last refill
+	 * @return the number of available tokens
+	 */
+	static double refill(RateLimit limit, double tokens, long elapsedNanos) {
+		double refilled = Math.max(0, elapsedNanos) / NANOS_PER_SECOND * limit.permitsPerSecond();
+		return Math.min(limit.burst(), tokens + refilled);
+	}
+
+	/**
+	 * A reserved token.
+	 *
+	 * @param delay how long to wait before the token may be used
+	 * @param queued the number of earlier reservations that were still waiting
+	 */
+	record Reservation(Duration delay, int queued) {
+
+		/**
+		 * Create a reservation that takes one of the available tokens.
+		 * @param limit the rate limit to apply
+		 * @param available the number of tokens available before the reservation
+		 * @return the reservation
+		 */
+		static Reservation of(RateLimit limit, double available) {
+			int queued = (int) Math.max(0, Math.ceil(-available));
+			double remaining = available - 1;
+			long delayNanos = (remaining < 0) ? (long) (-remaining / limit.permitsPerSecond() * NANOS_PER_SECOND) : 0;
+			return new Reservation(Duration.ofNanos(delayNanos), queued);
+		}
+
+	}
+
+}
@@ -16,10 +16,12 @@
 
 package io.spring.concourse.googlechatnotify.webhook;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.UnaryOperator;
 
-import org.springframework.core.env.Environment;
+import com.fasterxml.jackson.core.JsonGenerator;
 
 /**
  * A response from an outgoing webhook call.
@@ -34,21 +36,51 @@ public class WebhookMessage extends HashMap<String, Object> {
 		return message;
 	}
 
-	void resolvePlaceholders(Environment environment) {
-		resolvePlaceholders(this, environment);
+	/**
+	 * Write the message as JSON, resolving placeholders in string values as they are
+	 * written. Nested maps, lists and arrays are written in the same pass and the message
+	 * itself is left unchanged. {@link RawJson} values are written as they are.
+	 * @param generator the generator to write to
+	 * @param resolver the function used to resolve placeholders in string values
+	 * @throws IOException on write error
+	 */
+	void write(JsonGenerator generator, UnaryOperator<String> resolver) throws IOException {
+		writeValue(generator, this, resolver);
 	}
 
-	@SuppressWarnings("unchecked")
-	private void resolvePlaceholders(Map<String, Object> map, Environment environment) {
-		for (Entry<String, Object> entry : map.entrySet()) {
-			if (Map.class.isAssignableFrom(entry.getValue().getClass())) {
-				resolvePlaceholders((Map<String, Object>) entry.getValue(), environment);
+	private static void writeValue(JsonGenerator generator, Object value, UnaryOperator<String> resolver)
+			throws IOException {
+		if (value instanceof String string) {
+			generator.writeString(resolver.apply(string));
+		}
+		else if (value instanceof RawJson rawJson) {
+			generator.writeRawValue(rawJson.json());
+		}
+		else if (value instanceof Map<?, ?> map) {
+			generator.writeStartObject();
+			for (Entry<?, ?> entry : map.entrySet()) {
+				generator.writeFieldName(String.valueOf(entry.getKey()));
+				writeValue(generator, entry.getValue(), resolver);
 			}
-			if (entry.getValue().getClass().isAssignableFrom(String.class)) {
-				map.replace(entry.getKey(), environment.resolvePlaceholders(entry.getValue().toString()));
+			generator.writeEndObject();
+		}
+		else if (value instanceof Iterable<?> iterable) {
+			generator.writeStartArray();
+			for (Object element : iterable) {
+				writeValue(generator, element, resolver);
 			}
+			generator.writeEndArray();
+		}
+		else if (value instanceof Object[] array) {
+			generator.writeStartArray();
+			for (Object element : array) {
+				writeValue(generator, element, resolver);
+			}
+			generator.writeEndArray();
+		}
+		else {
+			generator.writeObject(value);
 		}
-
 	}
 
 }
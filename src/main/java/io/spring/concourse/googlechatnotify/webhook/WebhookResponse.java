@@ -16,12 +16,41 @@
 
 package io.spring.concourse.googlechatnotify.webhook;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * A response from an outgoing webhook call.
  *
  * @author Scott Frederick
  * @param statusCode the webhook response HTTP status code
  * @param body the webhook response body
+ * @param details additional details about the call, such as timings
  */
-public record WebhookResponse(String statusCode, String body) {
+public record WebhookResponse(String statusCode, String body, Map<String, String> details) {
+
+	public WebhookResponse(String statusCode, String body) {
+		this(statusCode, body, null);
+	}
+
+	public WebhookResponse(String statusCode, String body, Map<String, String> details) {
+		this.statusCode = statusCode;
+		this.body = body;
+		this.details = (details != null) ? Collections.unmodifiableMap(new LinkedHashMap<>(details))
+				: Collections.emptyMap();
+	}
+
+	/**
+	 * Return a new {@link WebhookResponse} with an additional detail.
+	 * @param name the detail name
+	 * @param value the detail value
+	 * @return a new response instance
+	 */
+	public WebhookResponse withDetail(String name, String value) {
+		Map<String, String> details = new LinkedHashMap<>(this.details);
+		details.put(name, value);
+		return new WebhookResponse(this.statusCode, this.body, details);
+	}
+
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings used when sending a message to an outgoing webhook.
+ *
+ * @author Scott Frederick
+ * @param connectTimeout the timeout for establishing a connection
+ * @param readTimeout the timeout for receiving a response once connected
+ * @param retryPolicy the policy used to retry failed calls
+ * @param rateLimit the limit used to pace calls or {@code null} if calls are not paced
+ * @param stateDirectory the directory used for state shared with other processes or
+ * {@code null}
+ * @param responseMode how the body of the response is handled
+ */
+public record WebhookSettings(Duration connectTimeout, Duration readTimeout, RetryPolicy retryPolicy,
+		RateLimit rateLimit, Path stateDirectory, ResponseMode responseMode) {
+
+	private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+	private static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(30);
+
+	/**
+	 * Default settings. Declared after the defaults it is created from.
+	 */
+	public static final WebhookSettings DEFAULT = new WebhookSettings(null, null, null, null, null);
+
+	public WebhookSettings(Duration connectTimeout, Duration readTimeout, RetryPolicy retryPolicy, RateLimit rateLimit,
+			Path stateDirectory) {
+		this(connectTimeout, readTimeout, retryPolicy, rateLimit, stateDirectory, null);
+	}
+
+	public WebhookSettings(Duration connectTimeout, Duration readTimeout, RetryPolicy retryPolicy, RateLimit rateLimit,
+			Path stateDirectory, ResponseMode responseMode) {
+		this.connectTimeout = (connectTimeout != null) ? connectTimeout : DEFAULT_CONNECT_TIMEOUT;
+		this.readTimeout = (readTimeout != null) ? readTimeout : DEFAULT_READ_TIMEOUT;
+		this.retryPolicy = (retryPolicy != null) ? retryPolicy : RetryPolicy.DEFAULT;
+		this.rateLimit = rateLimit;
+		this.stateDirectory = stateDirectory;
+		this.responseMode = (responseMode != null) ? responseMode : ResponseMode.FULL;
+	}
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+/**
+ * HTTP transport used to send webhook messages. Uses a JDK {@link HttpClient} that
+ * prefers HTTP/2 and keeps connections alive so that they can be reused by subsequent
+ * messages sent from the same process. The JDK client does not expose the time spent
+ * connecting or negotiating TLS, so calls are timed from the request being sent.
+ *
+ * @author Scott Frederick
+ */
+@Component
+public class WebhookTransport {
+
+	private final Map<Duration, HttpClient> httpClients = new ConcurrentHashMap<>();
+
+	/**
+	 * Customize the given builder so that it uses this transport with the given settings.
+	 * @param builder the builder to customize
+	 * @param settings the webhook settings
+	 */
+	public void customize(RestClient.Builder builder, WebhookSettings settings) {
+		JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(
+				getHttpClient(settings.connectTimeout()));
+		requestFactory.setReadTimeout(settings.readTimeout());
+		builder.requestFactory(requestFactory);
+	}
+
+	HttpClient getHttpClient(Duration connectTimeout) {
+		return this.httpClients.computeIfAbsent(connectTimeout, this::createHttpClient);
+	}
+
+	private HttpClient createHttpClient(Duration connectTimeout) {
+		return HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_2)
+			.connectTimeout(connectTimeout)
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.build();
+	}
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+import io.spring.concourse.googlechatnotify.Application;
+import io.spring.concourse.googlechatnotify.system.ExclusiveFileLock;
+import io.spring.concourse.googlechatnotify.webhook.WebhookSettings;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+/**
+ * Tests for {@link BackgroundSender}.
+ *
+ * @author Scott Frederick
+ */
+class BackgroundSenderTests {
+
+	@TempDir
+	private Path tempDir;
+
+	private final WebhookSettings settings = new WebhookSettings(null, null, null, null, Path.of("/tmp/state"));
+
+	@Test
+	void getCommandWhenNativeImageRunsExecutableWithDrainArguments() {
+		Properties properties = new Properties();
+		properties.setProperty("org.graalvm.nativeimage.imagecode", "runtime");
+		BackgroundSender sender = new BackgroundSender(properties, () -> Optional.of("/artifact/google-chat-notify"));
+		List<String> command = sender.getCommand(this.settings);
+		assertThat(command).containsExactly(Stream
+			.concat(Stream.of("/artifact/google-chat-notify"), DrainCommand.getArguments(this.settings).stream())
+			.toArray(String[]::new));
+	}
+
+	@Test
+	void getCommandWhenNativeImageExecutableIsUnknownThrowsException() {
+		Properties properties = new Properties();
+		properties.setProperty("org.graalvm.nativeimage.imagecode", "runtime");
+		BackgroundSender sender = new BackgroundSender(properties, Optional::empty);
+		assertThatIllegalStateException().isThrownBy(() -> sender.getCommand(this.settings))
+			.withMessage("Unable to determine native image executable");
+	}
+
+	@Test
+	void getCommandWhenJarRunsJarWithJavaFromJavaHome() {
+		BackgroundSender sender = new BackgroundSender(javaProperties("/app/notify.jar"), Optional::empty);
+		List<String> command = sender.getCommand(this.settings);
+		assertThat(command).startsWith(Path.of("/opt/java/bin/java").toString(), "-jar", "/app/notify.jar");
+		assertThat(command).endsWith(DrainCommand.getArguments(this.settings).toArray(String[]::new));
+	}
+
+	@Test
+	void getCommandWhenClassPathRunsApplicationClass() {
+		String classPath = "/app/classes" + File.pathSeparator + "/app/lib/spring-core.jar";
+		BackgroundSender sender = new BackgroundSender(javaProperties(classPath), Optional::empty);
+		List<String> command = sender.getCommand(this.settings);
+		assertThat(command).startsWith(Path.of("/opt/java/bin/java").toString(), "-cp", classPath,
+				Application.class.getName(), "drain");
+	}
+
+	@Test
+	void getCommandWhenJavaHomeIsUnknownThrowsException() {
+		Properties properties = javaProperties("/app/notify.jar");
+		properties.remove("java.home");
+		BackgroundSender sender = new BackgroundSender(properties, Optional::empty);
+		assertThatIllegalStateException().isThrownBy(() -> sender.getCommand(this.settings))
+			.withMessage("Unable to determine Java home");
+	}
+
+	@Test
+	void startWhenDrainIsRunningDoesNotStartProcess() throws Exception {
+		WebhookSettings settings = new WebhookSettings(null, null, null, null, this.tempDir);
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Void> running = CompletableFuture.runAsync(() -> {
+			try {
+				ExclusiveFileLock lock = ExclusiveFileLock.acquire(this.tempDir.resolve("drain.lock"));
+				try {
+					locked.countDown();
+					release.await();
+				}
+				finally {
+					lock.close();
+				}
+			}
+			catch (Exception ex) {
+				throw new IllegalStateException(ex);
+			}
+		});
+		try {
+			locked.await();
+			new BackgroundSender().start(settings);
+			assertThat(this.tempDir.resolve("drain.log")).doesNotExist();
+		}
+		finally {
+			release.countDown();
+			running.get();
+		}
+	}
+
+	private Properties javaProperties(String classPath) {
+		Properties properties = new Properties();
+		properties.setProperty("java.home", "/opt/java");
+		properties.setProperty("java.class.path", classPath);
+		return properties;
+	}
+
+}
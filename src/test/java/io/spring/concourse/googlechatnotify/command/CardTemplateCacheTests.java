@@ -0,0 +1,110 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIOException;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * Tests for {@link CardTemplateCache}.
+ *
+ * @author Scott Frederick
+ */
+class CardTemplateCacheTests {
+
+	private static final byte[] CARDS = """
+			[{ "cardId": "${BUILD_NAME}", "card": { "sections": [ { "header": "Build" } ] } }]
+			""".getBytes(StandardCharsets.UTF_8);
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@TempDir
+	private Path directory;
+
+	@Test
+	void getParsesAndCachesCards() throws IOException {
+		CardTemplateCache cache = new CardTemplateCache(this.directory);
+		List<Map<Object, Object>> cards = cache.get(CARDS, this.objectMapper);
+		assertThat(cards).containsExactly(
+				Map.of("cardId", "${BUILD_NAME}", "card", Map.of("sections", List.of(Map.of("header", "Build")))));
+		assertThat(entries()).hasSize(1);
+	}
+
+	@Test
+	void getWhenCachedDoesNotParseContent() throws IOException {
+		List<Map<Object, Object>> cards = new CardTemplateCache(this.directory).get(CARDS, this.objectMapper);
+		ObjectMapper objectMapper = mock(ObjectMapper.class);
+		assertThat(new CardTemplateCache(this.directory).get(CARDS, objectMapper)).isEqualTo(cards);
+		verifyNoInteractions(objectMapper);
+	}
+
+	@Test
+	void getWhenEntryIsUnreadableParsesContent() throws IOException {
+		CardTemplateCache cache = new CardTemplateCache(this.directory);
+		cache.get(CARDS, this.objectMapper);
+		Files.write(entries().get(0), new byte[] { 1, 2, 3 });
+		assertThat(cache.get(CARDS, this.objectMapper)).hasSize(1);
+		assertThat(cache.get(CARDS, mock(ObjectMapper.class))).hasSize(1);
+	}
+
+	@Test
+	void getWhenContentIsInvalidThrowsException() {
+		CardTemplateCache cache = new CardTemplateCache(this.directory);
+		assertThatIOException().isThrownBy(() -> cache.get("[{".getBytes(StandardCharsets.UTF_8), this.objectMapper));
+	}
+
+	@Test
+	void getWhenCacheIsFullEvictsLeastRecentlyUsedEntries() throws IOException {
+		CardTemplateCache cache = new CardTemplateCache(this.directory, 150);
+		cache.get(cards("one"), this.objectMapper);
+		Path one = entries().get(0);
+		Files.setLastModifiedTime(one, FileTime.fromMillis(1000));
+		cache.get(cards("two"), this.objectMapper);
+		Path two = entries().stream().filter((entry) -> !entry.equals(one)).findFirst().get();
+		Files.setLastModifiedTime(two, FileTime.fromMillis(2000));
+		cache.get(cards("one"), this.objectMapper);
+		cache.get(cards("three"), this.objectMapper);
+		assertThat(entries()).hasSize(2).contains(one).doesNotContain(two);
+	}
+
+	private byte[] cards(String name) {
+		return ("[{ \"cardId\": \"${" + name + "}\", \"text\": \"" + "x".repeat(40) + "\" }]")
+			.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private List<Path> entries() throws IOException {
+		try (Stream<Path> files = Files.list(this.directory)) {
+			return files.sorted().toList();
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.spring.concourse.googlechatnotify.command.payload.Metadata;
+import io.spring.concourse.googlechatnotify.command.payload.OutResponse;
+import io.spring.concourse.googlechatnotify.command.payload.Version;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link DeliveryLedger}.
+ *
+ * @author Scott Frederick
+ */
+class DeliveryLedgerTests {
+
+	private static final OutResponse RESPONSE = new OutResponse(new Version("2023-10-01.120000000000000"),
+			List.of(new Metadata("status", "200 OK"), new Metadata("index", 3)));
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@TempDir
+	private Path tempDir;
+
+	@Test
+	void findWhenLedgerDoesNotExistReturnsNull() {
+		assertThat(new DeliveryLedger(this.tempDir.resolve("ledger"), this.objectMapper).find("key")).isNull();
+	}
+
+	@Test
+	void findWhenRecordedReturnsResponse() {
+		new DeliveryLedger(this.tempDir, this.objectMapper).record("key", RESPONSE, Duration.ofHours(1));
+		OutResponse response = new DeliveryLedger(this.tempDir, this.objectMapper).find("key");
+		assertThat(response.version()).isEqualTo(RESPONSE.version());
+		assertThat(response.metadata()).isEqualTo(RESPONSE.metadata());
+		assertThat(new DeliveryLedger(this.tempDir, this.objectMapper).find("other")).isNull();
+	}
+
+	@Test
+	void findWhenExpiredReturnsNull() {
+		DeliveryLedger ledger = new DeliveryLedger(this.tempDir, this.objectMapper);
+		ledger.record("key", RESPONSE, Duration.ofMillis(-1));
+		assertThat(ledger.find("key")).isNull();
+	}
+
+	@Test
+	void findIgnoresPartiallyWrittenEntry() throws IOException {
+		DeliveryLedger ledger = new DeliveryLedger(this.tempDir, this.objectMapper);
+		ledger.record("key", RESPONSE, Duration.ofHours(1));
+		Files.writeString(this.tempDir.resolve("ledger.log"), "other 12", StandardOpenOption.APPEND);
+		assertThat(ledger.find("key")).isNotNull();
+		assertThat(ledger.find("other")).isNull();
+		ledger.record("next", RESPONSE, Duration.ofHours(1));
+		assertThat(ledger.find("next")).isNotNull();
+	}
+
+	@Test
+	void recordWhenLedgerIsLargeRemovesExpiredEntries() throws IOException {
+		DeliveryLedger ledger = new DeliveryLedger(this.tempDir, this.objectMapper, 256);
+		ledger.record("expired", RESPONSE, Duration.ofMillis(-1));
+		ledger.record("first", RESPONSE, Duration.ofHours(1));
+		ledger.record("second", RESPONSE, Duration.ofHours(1));
+		List<String> lines = Files.readAllLines(this.tempDir.resolve("ledger.log"));
+		assertThat(lines).hasSize(2);
+		assertThat(lines).noneMatch((line) -> line.startsWith("expired "));
+		assertThat(ledger.find("first")).isNotNull();
+		assertThat(ledger.find("second")).isNotNull();
+	}
+
+	@Test
+	void recordAndFindFromConcurrentThreadsKeepsEveryEntry() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<CompletableFuture<Void>> futures = new ArrayList<>();
+			for (int thread = 0; thread < 8; thread++) {
+				String name = "thread-" + thread;
+				futures.add(CompletableFuture.runAsync(() -> {
+					DeliveryLedger ledger = new DeliveryLedger(this.tempDir, this.objectMapper, 4096);
+					for (int i = 0; i < 20; i++) {
+						ledger.record(name + "-" + i, RESPONSE, Duration.ofHours(1));
+						assertThat(ledger.find(name + "-" + i)).isNotNull();
+					}
+				}, executor));
+			}
+			CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+		}
+		finally {
+			executor.shutdown();
+		}
+		DeliveryLedger ledger = new DeliveryLedger(this.tempDir, this.objectMapper);
+		for (int thread = 0; thread < 8; thread++) {
+			for (int i = 0; i < 20; i++) {
+				assertThat(ledger.find("thread-" + thread + "-" + i)).isNotNull();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import io.spring.concourse.googlechatnotify.system.ExclusiveFileLock;
+import io.spring.concourse.googlechatnotify.webhook.OutgoingWebhook;
+import io.spring.concourse.googlechatnotify.webhook.RateLimit;
+import io.spring.concourse.googlechatnotify.webhook.RetryPolicy;
+import io.spring.concourse.googlechatnotify.webhook.WebhookSettings;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import org.springframework.boot.DefaultApplicationArguments;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link DrainCommand}.
+ *
+ * @author Scott Frederick
+ */
+@ExtendWith(MockitoExtension.class)
+class DrainCommandTests {
+
+	@TempDir
+	private Path tempDir;
+
+	@Mock
+	private OutgoingWebhook webHook;
+
+	@Test
+	void getNameReturnsDrain() {
+		assertThat(new DrainCommand(this.webHook).getName()).isEqualTo("drain");
+	}
+
+	@Test
+	void runUsesSettingsFromArguments() throws Exception {
+		WebhookSettings settings = new WebhookSettings(Duration.ofSeconds(5), Duration.ofSeconds(20),
+				RetryPolicy.of(4, Duration.ofMinutes(2)), new RateLimit(0.5, 2), this.tempDir);
+		given(this.webHook.drain(settings)).willReturn(true);
+		String[] arguments = DrainCommand.getArguments(settings).toArray(String[]::new);
+		new DrainCommand(this.webHook).run(new DefaultApplicationArguments(arguments));
+		verify(this.webHook).drain(settings);
+	}
+
+	@Test
+	void runWhenDeliveryFailsRetries() throws Exception {
+		WebhookSettings settings = new WebhookSettings(null, null, null, null, this.tempDir);
+		given(this.webHook.drain(settings)).willReturn(false, true);
+		String[] arguments = DrainCommand.getArguments(settings).toArray(String[]::new);
+		new DrainCommand(this.webHook).run(new DefaultApplicationArguments(arguments));
+		verify(this.webHook, times(2)).drain(settings);
+	}
+
+	@Test
+	void runWhenMessagesQueuedAfterDrainDrainsAgain() throws Exception {
+		WebhookSettings settings = new WebhookSettings(null, null, null, null, this.tempDir);
+		given(this.webHook.drain(settings)).willReturn(true);
+		given(this.webHook.hasQueuedMessages(settings)).willReturn(true, false);
+		String[] arguments = DrainCommand.getArguments(settings).toArray(String[]::new);
+		new DrainCommand(this.webHook).run(new DefaultApplicationArguments(arguments));
+		verify(this.webHook, times(2)).drain(settings);
+	}
+
+	@Test
+	void runWhenAnotherDrainIsRunningExitsImmediately() throws Exception {
+		WebhookSettings settings = new WebhookSettings(null, null, null, null, this.tempDir);
+		String[] arguments = DrainCommand.getArguments(settings).toArray(String[]::new);
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Void> running = CompletableFuture.runAsync(() -> {
+			try {
+				ExclusiveFileLock lock = ExclusiveFileLock.acquire(this.tempDir.resolve("drain.lock"));
+				try {
+					locked.countDown();
+					release.await();
+				}
+				finally {
+					lock.close();
+				}
+			}
+			catch (Exception ex) {
+				throw new IllegalStateException(ex);
+			}
+		});
+		try {
+			locked.await();
+			assertThat(DrainCommand.isRunning(this.tempDir)).isTrue();
+			new DrainCommand(this.webHook).run(new DefaultApplicationArguments(arguments));
+			verify(this.webHook, never()).drain(any());
+		}
+		finally {
+			release.countDown();
+			running.get();
+		}
+		assertThat(DrainCommand.isRunning(this.tempDir)).isFalse();
+	}
+
+	@Test
+	void runWithoutStateDirectoryThrowsException() {
+		assertThatIllegalStateException()
+			.isThrownBy(() -> new DrainCommand(this.webHook).run(new DefaultApplicationArguments("drain")))
+			.withMessage("No state directory specified");
+	}
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link FileContentCache}.
+ *
+ * @author Scott Frederick
+ */
+class FileContentCacheTests {
+
+	@TempDir
+	private Path directory;
+
+	private final FileContentCache cache = new FileContentCache();
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	@AfterEach
+	void destroy() throws IOException {
+		this.cache.destroy();
+	}
+
+	@Test
+	void getWhenNotWatchingLoadsEachTime() throws IOException {
+		Path file = Files.writeString(this.directory.resolve("text.txt"), "one");
+		assertThat(get(file)).isEqualTo("one");
+		assertThat(get(file)).isEqualTo("one");
+		assertThat(this.loads).hasValue(2);
+	}
+
+	@Test
+	void getWhenWatchingReturnsCachedContent() throws IOException {
+		this.cache.watch();
+		Path file = Files.writeString(this.directory.resolve("text.txt"), "one");
+		assertThat(get(file)).isEqualTo("one");
+		assertThat(get(file)).isEqualTo("one");
+		assertThat(this.loads).hasValue(1);
+	}
+
+	@Test
+	void getWhenWatchingCachesEachTypeSeparately() throws IOException {
+		this.cache.watch();
+		Path file = Files.writeString(this.directory.resolve("text.txt"), "one");
+		assertThat(get(file)).isEqualTo("one");
+		assertThat(this.cache.get(file, Integer.class, (loaded) -> 1)).isEqualTo(1);
+		assertThat(get(file)).isEqualTo("one");
+	}
+
+	@Test
+	void getWhenFileChangesReturnsNewContent() throws Exception {
+		this.cache.watch();
+		Path file = Files.writeString(this.directory.resolve("text.txt"), "one");
+		assertThat(get(file)).isEqualTo("one");
+		Files.writeString(file, "two");
+		assertThat(awaitContent(file, "two")).isEqualTo("two");
+	}
+
+	@Test
+	void getWhenFileIsDeletedAndRecreatedReturnsNewContent() throws Exception {
+		this.cache.watch();
+		Path file = Files.writeString(this.directory.resolve("text.txt"), "one");
+		assertThat(get(file)).isEqualTo("one");
+		Files.delete(file);
+		Files.writeString(file, "three");
+		assertThat(awaitContent(file, "three")).isEqualTo("three");
+	}
+
+	private String awaitContent(Path file, String expected) throws Exception {
+		// Watch services may poll so allow time for the change to be noticed
+		long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+		String content = get(file);
+		while (!expected.equals(content) && System.nanoTime() < deadline) {
+			Thread.sleep(50);
+			content = get(file);
+		}
+		return content;
+	}
+
+	private String get(Path file) throws IOException {
+		return this.cache.get(file, String.class, (loaded) -> {
+			this.loads.incrementAndGet();
+			return Files.readString(loaded);
+		});
+	}
+
+}
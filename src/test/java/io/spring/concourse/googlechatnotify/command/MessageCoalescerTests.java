@@ -0,0 +1,108 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link MessageCoalescer}.
+ *
+ * @author Scott Frederick
+ */
+class MessageCoalescerTests {
+
+	@TempDir
+	private Path tempDir;
+
+	@Test
+	void coalesceWhenAloneReturnsBuildAfterWindow() {
+		MessageCoalescer coalescer = new MessageCoalescer(this.tempDir);
+		long start = System.nanoTime();
+		assertThat(coalescer.coalesce("key", "build-1", Duration.ofMillis(100))).containsExactly("build-1");
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(100));
+		assertThat(this.tempDir.resolve("key.group")).doesNotExist();
+	}
+
+	@Test
+	void coalesceWhenGroupIsOpenJoinsGroup() throws Exception {
+		MessageCoalescer coalescer = new MessageCoalescer(this.tempDir);
+		CompletableFuture<List<String>> leader = CompletableFuture
+			.supplyAsync(() -> coalescer.coalesce("key", "build-1", Duration.ofSeconds(1)));
+		awaitGroup("key");
+		assertThat(new MessageCoalescer(this.tempDir).coalesce("key", "build-2", Duration.ofSeconds(1))).isNull();
+		assertThat(new MessageCoalescer(this.tempDir).coalesce("other", "build-3", Duration.ofMillis(10)))
+			.containsExactly("build-3");
+		assertThat(leader.get()).containsExactly("build-1", "build-2");
+	}
+
+	@Test
+	void coalesceWhenGroupIsStaleTakesOverGroup() throws IOException {
+		long started = System.currentTimeMillis() - Duration.ofMinutes(5).toMillis();
+		Files.writeString(this.tempDir.resolve("key.group"), started + "\nbuild-1\nbuild-2\n");
+		MessageCoalescer coalescer = new MessageCoalescer(this.tempDir);
+		assertThat(coalescer.coalesce("key", "build-3", Duration.ofMillis(10))).containsExactly("build-3", "build-1",
+				"build-2");
+	}
+
+	@Test
+	void coalesceFromConcurrentThreadsSendsOneMessageForEveryBuild() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<CompletableFuture<List<String>>> futures = new ArrayList<>();
+			for (int i = 1; i <= 8; i++) {
+				String build = "build-" + i;
+				futures.add(CompletableFuture.supplyAsync(
+						() -> new MessageCoalescer(this.tempDir).coalesce("key", build, Duration.ofSeconds(1)),
+						executor));
+			}
+			List<List<String>> sent = new ArrayList<>();
+			for (CompletableFuture<List<String>> future : futures) {
+				List<String> builds = future.get();
+				if (builds != null) {
+					sent.add(builds);
+				}
+			}
+			assertThat(sent).hasSize(1);
+			assertThat(sent.get(0)).hasSize(8).doesNotHaveDuplicates();
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	private void awaitGroup(String key) throws InterruptedException {
+		Path file = this.tempDir.resolve(key + ".group");
+		for (int i = 0; i < 100 && !Files.exists(file); i++) {
+			Thread.sleep(10);
+		}
+		assertThat(file).exists();
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.spring.concourse.googlechatnotify.command.payload.Source;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+/**
+ * Tests for {@link NotificationPolicy}.
+ *
+ * @author Scott Frederick
+ */
+class NotificationPolicyTests {
+
+	private static final Clock NOON = Clock.fixed(Instant.parse("2023-06-01T12:00:00Z"), ZoneOffset.UTC);
+
+	@TempDir
+	private Path tempDir;
+
+	@Test
+	void ofWhenNotConfiguredReturnsNull() {
+		assertThat(NotificationPolicy.of(new Source("https://chat.example.com"), NOON)).isNull();
+	}
+
+	@Test
+	void decideWhenOnlyOnTransitionsSuppressesUnchangedStatus() {
+		NotificationPolicy policy = new NotificationPolicy(true, null, null, null, NOON);
+		assertThat(send(policy, "job", "succeeded", this.tempDir)).isNull();
+		assertThat(send(policy, "job", "succeeded", this.tempDir)).isEqualTo("Status 'succeeded' unchanged");
+		assertThat(send(policy, "job", "failed", this.tempDir)).isNull();
+		assertThat(send(policy, "job", "Failed", this.tempDir)).isEqualTo("Status 'failed' unchanged");
+		assertThat(send(policy, "other", "failed", this.tempDir)).isNull();
+	}
+
+	@Test
+	void decideWhenSuccessEverySendsEveryNthSuccess() {
+		NotificationPolicy policy = new NotificationPolicy(false, 3, null, null, NOON);
+		assertThat(send(policy, "job", "succeeded", this.tempDir)).isNull();
+		assertThat(send(policy, "job", "succeeded", this.tempDir))
+			.isEqualTo("Success 2 since last change, sending every 3");
+		assertThat(send(policy, "job", "succeeded", this.tempDir)).isNotNull();
+		assertThat(send(policy, "job", "succeeded", this.tempDir)).isNull();
+		assertThat(send(policy, "job", "failed", this.tempDir)).isNull();
+		assertThat(send(policy, "job", "failed", this.tempDir)).isNull();
+		assertThat(send(policy, "job", "succeeded", this.tempDir)).isNull();
+	}
+
+	@Test
+	void decideWhenNoStatusSendsMessage() {
+		NotificationPolicy policy = new NotificationPolicy(true, null, null, null, NOON);
+		assertThat(send(policy, "job", null, this.tempDir)).isNull();
+		assertThat(send(policy, "job", null, this.tempDir)).isNull();
+	}
+
+	@Test
+	void decideWhenTrackingStatusWithoutDirectoryThrowsException() {
+		NotificationPolicy policy = new NotificationPolicy(true, null, null, null, NOON);
+		assertThatIllegalStateException().isThrownBy(() -> send(policy, "job", "succeeded", null))
+			.withMessage("A state directory is required to track the status of jobs");
+	}
+
+	@Test
+	void decideDuringQuietHoursSuppressesWithoutRecordingStatus() {
+		NotificationPolicy quiet = new NotificationPolicy(true, null, "11:30-12:30", null, NOON);
+		assertThat(send(quiet, "job", "failed", this.tempDir)).isEqualTo("Quiet hours 11:30-12:30");
+		NotificationPolicy policy = new NotificationPolicy(true, null, "11:30-12:00", null, NOON);
+		assertThat(send(policy, "job", "failed", this.tempDir)).isNull();
+	}
+
+	@Test
+	void decideWhenQuietHoursSpanMidnightUsesTimeZone() {
+		NotificationPolicy policy = new NotificationPolicy(false, null, "08:00-09:00, 21:00-07:00", "Asia/Tokyo", NOON);
+		assertThat(send(policy, null, null, null)).isEqualTo("Quiet hours 21:00-07:00");
+		NotificationPolicy utc = new NotificationPolicy(false, null, "08:00-09:00, 21:00-07:00", null, NOON);
+		assertThat(send(utc, null, null, null)).isNull();
+	}
+
+	@Test
+	void decideWhenNotCommittedDoesNotRecordStatus() {
+		NotificationPolicy policy = new NotificationPolicy(true, null, null, null, NOON);
+		assertThat(send(policy, "job", "failed", this.tempDir)).isNull();
+		assertThat(policy.decide("job", "succeeded", this.tempDir).getSuppressionReason()).isNull();
+		assertThat(policy.decide("job", "succeeded", this.tempDir).getSuppressionReason()).isNull();
+		assertThat(send(policy, "job", "succeeded", this.tempDir)).isNull();
+		assertThat(send(policy, "job", "succeeded", this.tempDir)).isEqualTo("Status 'succeeded' unchanged");
+	}
+
+	@Test
+	void decideFromConcurrentThreadsTracksEveryJob() throws Exception {
+		NotificationPolicy policy = new NotificationPolicy(true, null, null, null, NOON);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<CompletableFuture<Void>> futures = new ArrayList<>();
+			for (int thread = 0; thread < 8; thread++) {
+				String job = "job-" + (thread % 2);
+				futures.add(CompletableFuture.runAsync(() -> {
+					for (int i = 0; i < 20; i++) {
+						send(policy, job, (i % 2 == 0) ? "succeeded" : "failed", this.tempDir);
+					}
+				}, executor));
+			}
+			CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+		}
+		finally {
+			executor.shutdown();
+		}
+		assertThat(send(policy, "job-0", "failed", this.tempDir)).isEqualTo("Status 'failed' unchanged");
+		assertThat(send(policy, "job-1", "failed", this.tempDir)).isEqualTo("Status 'failed' unchanged");
+	}
+
+	@Test
+	void createWhenQuietHoursAreInvalidThrowsException() {
+		assertThatIllegalArgumentException().isThrownBy(() -> new NotificationPolicy(false, null, "22:00", null, NOON))
+			.withMessage("Invalid quiet hours '22:00', expected 'HH:mm-HH:mm'");
+		assertThatIllegalArgumentException()
+			.isThrownBy(() -> new NotificationPolicy(false, null, "22:00-25:00", null, NOON))
+			.withMessage("Invalid quiet hours '22:00-25:00', expected 'HH:mm-HH:mm'");
+	}
+
+	@Test
+	void createWhenTimeZoneIsInvalidThrowsException() {
+		assertThatIllegalArgumentException()
+			.isThrownBy(() -> new NotificationPolicy(false, null, "22:00-07:00", "Mars/Olympus", NOON))
+			.withMessage("Invalid time zone 'Mars/Olympus'");
+	}
+
+	private String send(NotificationPolicy policy, String job, String status, Path directory) {
+		NotificationPolicy.Decision decision = policy.decide(job, status, directory);
+		decision.commit();
+		return decision.getSuppressionReason();
+	}
+
+}
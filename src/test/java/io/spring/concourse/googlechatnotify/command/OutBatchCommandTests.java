@@ -0,0 +1,120 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.File;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.spring.concourse.googlechatnotify.command.payload.Metadata;
+import io.spring.concourse.googlechatnotify.command.payload.OutRequest;
+import io.spring.concourse.googlechatnotify.command.payload.OutResponse;
+import io.spring.concourse.googlechatnotify.command.payload.Version;
+import io.spring.concourse.googlechatnotify.system.MockSystemStreams;
+import io.spring.concourse.googlechatnotify.system.SystemInput;
+import io.spring.concourse.googlechatnotify.system.SystemOutput;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.util.FileCopyUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+
+/**
+ * Tests for {@link OutBatchCommand}.
+ *
+ * @author Scott Frederick
+ */
+@ExtendWith(MockitoExtension.class)
+class OutBatchCommandTests {
+
+	private static final String REQUESTS = """
+			{ "source": { "url": "https://chat.example.com" }, "params": { "text": "one" } }
+			{ "source": { "url": "https://chat.example.com" }, "params": { "text": "two" } }
+			""";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@TempDir
+	private File tempDir;
+
+	@Mock
+	private OutHandler handler;
+
+	@Test
+	void getNameReturnsOutBatch() {
+		assertThat(createCommand(new MockSystemStreams("")).getName()).isEqualTo("out-batch");
+	}
+
+	@Test
+	void runSendsEachRequestAndWritesResponseLines() throws Exception {
+		given(this.handler.handle(any(), eq("/tmp/test")))
+			.willReturn(new OutResponse(new Version("1234"), List.of(new Metadata("status", "200 OK"))));
+		MockSystemStreams systemStreams = new MockSystemStreams(REQUESTS);
+		createCommand(systemStreams).run(new DefaultApplicationArguments("out-batch", "/tmp/test", "--concurrency=2"));
+		List<String> lines = new String(systemStreams.getOutBytes()).lines().toList();
+		assertThat(lines).hasSize(2);
+		assertThat(lines).anyMatch((line) -> line.contains("{\"name\":\"index\",\"value\":0}"));
+		assertThat(lines).anyMatch((line) -> line.contains("{\"name\":\"index\",\"value\":1}"));
+		assertThat(lines).allMatch((line) -> line.contains("{\"name\":\"status\",\"value\":\"200 OK\"}"));
+	}
+
+	@Test
+	void runReadsRequestsFromFile() throws Exception {
+		File file = new File(this.tempDir, "requests.ndjson");
+		FileCopyUtils.copy(REQUESTS.getBytes(), file);
+		given(this.handler.handle(any(), eq("/tmp/test"))).willReturn(new OutResponse(new Version("1234")));
+		MockSystemStreams systemStreams = new MockSystemStreams("");
+		createCommand(systemStreams)
+			.run(new DefaultApplicationArguments("out-batch", "/tmp/test", "--file=" + file.getAbsolutePath()));
+		assertThat(new String(systemStreams.getOutBytes()).lines()).hasSize(2);
+	}
+
+	@Test
+	void runWhenRequestFailsWritesErrorAndThrowsException() throws Exception {
+		given(this.handler.handle(any(), eq("/tmp/test"))).willAnswer((invocation) -> {
+			OutRequest request = invocation.getArgument(0);
+			if ("two".equals(request.params().text())) {
+				throw new IllegalArgumentException("Bad request");
+			}
+			return new OutResponse(new Version("1234"));
+		});
+		MockSystemStreams systemStreams = new MockSystemStreams(REQUESTS);
+		OutBatchCommand command = createCommand(systemStreams);
+		assertThatIllegalStateException()
+			.isThrownBy(() -> command.run(new DefaultApplicationArguments("out-batch", "/tmp/test")))
+			.withMessage("1 of 2 batch requests failed");
+		assertThat(new String(systemStreams.getOutBytes()).lines())
+			.anyMatch((line) -> line.contains("{\"name\":\"error\",\"value\":\"Bad request\"}"));
+	}
+
+	private OutBatchCommand createCommand(MockSystemStreams systemStreams) {
+		MockEnvironment environment = new MockEnvironment();
+		return new OutBatchCommand(new SystemInput(environment, systemStreams, this.objectMapper),
+				new SystemOutput(systemStreams, this.objectMapper), this.handler);
+	}
+
+}
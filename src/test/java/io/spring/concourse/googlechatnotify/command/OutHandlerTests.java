@@ -16,25 +16,42 @@
 
 package io.spring.concourse.googlechatnotify.command;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.spring.concourse.googlechatnotify.command.payload.Metadata;
 import io.spring.concourse.googlechatnotify.command.payload.OutRequest;
 import io.spring.concourse.googlechatnotify.command.payload.OutResponse;
 import io.spring.concourse.googlechatnotify.command.payload.Source;
+import io.spring.concourse.googlechatnotify.system.MockSystemStreams;
+import io.spring.concourse.googlechatnotify.system.SystemInput;
+import io.spring.concourse.googlechatnotify.system.Variables;
 import io.spring.concourse.googlechatnotify.webhook.OutgoingWebhook;
+import io.spring.concourse.googlechatnotify.webhook.RateLimit;
+import io.spring.concourse.googlechatnotify.webhook.RawJson;
+import io.spring.concourse.googlechatnotify.webhook.ResponseMode;
+import io.spring.concourse.googlechatnotify.webhook.RetryPolicy;
 import io.spring.concourse.googlechatnotify.webhook.WebhookMessage;
 import io.spring.concourse.googlechatnotify.webhook.WebhookResponse;
+import io.spring.concourse.googlechatnotify.webhook.WebhookSettings;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -42,8 +59,14 @@ import org.springframework.mock.env.MockEnvironment;
 import org.springframework.util.FileCopyUtils;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
 import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 /**
  * Tests for {@link OutHandler}.
@@ -61,12 +84,19 @@ class OutHandlerTests {
 	@Mock
 	private OutgoingWebhook webHook;
 
+	@Mock
+	private BackgroundSender backgroundSender;
+
+	@Captor
+	private ArgumentCaptor<Variables> variables;
+
 	private OutHandler handler;
 
 	@BeforeEach
 	void setup() {
 		this.environment = new MockEnvironment();
-		this.handler = new OutHandler(this.environment, this.webHook, new ObjectMapper());
+		this.handler = new OutHandler(this.environment, this.webHook, new ObjectMapper(), this.backgroundSender,
+				new FileContentCache());
 	}
 
 	@Test
@@ -80,14 +110,15 @@ class OutHandlerTests {
 	void handleWithTextSendsToWebHook() throws IOException {
 		File textFile = createFile("info.txt", "text from file");
 		OutRequest request = createRequest("sample text", null, textFile.getAbsolutePath());
-		given(this.webHook.send("https://chat.example.com", WebhookMessage.from(Map.of("text", "sample text"))))
+		given(this.webHook.send(eq("https://chat.example.com"), eq(WebhookMessage.from(Map.of("text", "sample text"))),
+				this.variables.capture(), eq(WebhookSettings.DEFAULT)))
 			.willReturn(new WebhookResponse("200 OK", "test response"));
 		OutResponse response = this.handler.handle(request, "");
 		int year = Calendar.getInstance(TimeZone.getTimeZone("UTC")).get(Calendar.YEAR);
 		assertThat(response.version().getBuildNumber()).startsWith(String.valueOf(year));
 		assertThat(response.metadata()).containsExactly(new Metadata("status", "200 OK"),
 				new Metadata("body", "test response"));
-		assertThat(this.environment.getProperty("TEXT_FILE_CONTENT")).isEqualTo("text from file");
+		assertThat(this.variables.getValue().apply("TEXT_FILE_CONTENT")).isEqualTo("text from file");
 	}
 
 	@Test
@@ -96,30 +127,305 @@ class OutHandlerTests {
 		String cardJson = """
 				[{ "key1": "value1", "key2": 2, "key3": { "subkey1": "subvalue1", "subkey2": "subvalue2" } }]
 				""".strip();
-		List<Map<String, Object>> cardJsonMap = List
-			.of(Map.of("key1", "value1", "key2", 2, "key3", Map.of("subkey1", "subvalue1", "subkey2", "subvalue2")));
 		File jsonFile = createFile("card_json_file", cardJson);
 		OutRequest request = createRequest(null, jsonFile.getAbsolutePath(), textFile.getAbsolutePath());
-		given(this.webHook.send("https://chat.example.com", WebhookMessage.from(Map.of("cardsV2", cardJsonMap))))
+		given(this.webHook.send(eq("https://chat.example.com"),
+				eq(WebhookMessage.from(Map.of("cardsV2", new RawJson(cardJson)))), this.variables.capture(),
+				eq(WebhookSettings.DEFAULT)))
+			.willReturn(new WebhookResponse("200 OK", "test response"));
+		OutResponse response = this.handler.handle(request, "");
+		assertThat(response.metadata()).containsExactly(new Metadata("status", "200 OK"),
+				new Metadata("body", "test response"));
+		assertThat(this.variables.getValue().apply("TEXT_FILE_CONTENT")).isEqualTo("text from file");
+	}
+
+	@Test
+	void handleWithCardJsonFileContainingPlaceholdersSendsParsedCards() throws IOException {
+		String cardJson = """
+				[{ "key1": "${TEXT_FILE_CONTENT}", "key2": 2, "key3": { "subkey1": "subvalue1" } }]
+				""";
+		List<Map<String, Object>> cardJsonMap = List
+			.of(Map.of("key1", "${TEXT_FILE_CONTENT}", "key2", 2, "key3", Map.of("subkey1", "subvalue1")));
+		File jsonFile = createFile("card_json_file", cardJson);
+		OutRequest request = createRequest(null, jsonFile.getAbsolutePath(), null);
+		given(this.webHook.send(eq("https://chat.example.com"), eq(WebhookMessage.from(Map.of("cardsV2", cardJsonMap))),
+				this.variables.capture(), eq(WebhookSettings.DEFAULT)))
 			.willReturn(new WebhookResponse("200 OK", "test response"));
 		OutResponse response = this.handler.handle(request, "");
 		assertThat(response.metadata()).containsExactly(new Metadata("status", "200 OK"),
 				new Metadata("body", "test response"));
-		assertThat(this.environment.getProperty("TEXT_FILE_CONTENT")).isEqualTo("text from file");
+	}
+
+	@Test
+	void handleWithMalformedCardJsonFileThrowsException() throws IOException {
+		File jsonFile = createFile("card_json_file", "[{ \"key1\": \"value1\" ]");
+		OutRequest request = createRequest(null, jsonFile.getAbsolutePath(), null);
+		assertThatIllegalArgumentException().isThrownBy(() -> this.handler.handle(request, ""))
+			.withMessageContaining("Error parsing JSON content from message file");
+		verify(this.webHook, never()).send(any(), any(), any(), any());
 	}
 
 	@Test
 	void handleWithTextFileOnlySendsToWebhook() throws IOException {
 		File textFile = createFile("info.txt", "text from file");
 		OutRequest request = createRequest(null, null, textFile.getAbsolutePath());
-		given(this.webHook.send("https://chat.example.com", WebhookMessage.from(Map.of("text", "text from file"))))
+		given(this.webHook.send(eq("https://chat.example.com"),
+				eq(WebhookMessage.from(Map.of("text", "text from file"))), this.variables.capture(),
+				eq(WebhookSettings.DEFAULT)))
 			.willReturn(new WebhookResponse("200 OK", "test response"));
 		OutResponse response = this.handler.handle(request, "");
 		assertThat(response.metadata()).containsExactly(new Metadata("status", "200 OK"),
 				new Metadata("body", "test response"));
+		assertThat(this.variables.getValue().apply("TEXT_FILE_CONTENT")).isNull();
+	}
+
+	@Test
+	void handleWithVariablesSendsWithRequestVariables() throws IOException {
+		this.environment.setProperty("BUILD_NAME", "41");
+		File textFile = createFile("info.txt", "text from file");
+		OutRequest request = createRequest("sample text", null, textFile.getAbsolutePath());
+		given(this.webHook.send(eq("https://chat.example.com"), eq(WebhookMessage.from(Map.of("text", "sample text"))),
+				this.variables.capture(), eq(WebhookSettings.DEFAULT)))
+			.willReturn(new WebhookResponse("200 OK", "test response"));
+		Variables requestVariables = Variables.of(this.environment).with(Map.of("BUILD_NAME", "42"));
+		this.handler.handle(request, "", requestVariables);
+		assertThat(this.variables.getValue().apply("BUILD_NAME")).isEqualTo("42");
+		assertThat(this.variables.getValue().apply("TEXT_FILE_CONTENT")).isEqualTo("text from file");
+		assertThat(requestVariables.apply("TEXT_FILE_CONTENT")).isNull();
 		assertThat(this.environment.getProperty("TEXT_FILE_CONTENT")).isNull();
 	}
 
+	@Test
+	void handleWithTextFileExcerptSendsExcerpt() throws IOException {
+		File textFile = createFile("build.log", "one\ntwo\nthree\n");
+		OutRequest request = new OutRequest(new Source("https://chat.example.com"),
+				new OutRequest.Params(null, null, textFile.getAbsolutePath(), null, 2, null, null));
+		given(this.webHook.send(eq("https://chat.example.com"), eq(WebhookMessage.from(Map.of("text", "two\nthree\n"))),
+				this.variables.capture(), eq(WebhookSettings.DEFAULT)))
+			.willReturn(new WebhookResponse("200 OK", "test response"));
+		OutResponse response = this.handler.handle(request, "");
+		assertThat(response.metadata()).contains(new Metadata("status", "200 OK"));
+	}
+
+	@Test
+	void handleWhenMessageIsTooLargeSendsPartsToThread() {
+		String text = "x".repeat(100).concat("\n").repeat(400);
+		OutRequest request = createRequest(text, null, null);
+		String threadUrl = "https://chat.example.com?messageReplyOption=REPLY_MESSAGE_FALLBACK_TO_NEW_THREAD";
+		given(this.webHook.send(eq(threadUrl), any(), any(), eq(WebhookSettings.DEFAULT)))
+			.willReturn(new WebhookResponse("200 OK", "test response"));
+		OutResponse response = this.handler.handle(request, "");
+		assertThat(response.metadata()).containsExactly(new Metadata("status", "200 OK"),
+				new Metadata("body", "test response"), new Metadata("parts", "2"));
+		verify(this.webHook, times(2)).send(eq(threadUrl), any(), any(), eq(WebhookSettings.DEFAULT));
+	}
+
+	@Test
+	void handleWithThreadKeySendsToThreadAndRepliesByName() throws IOException {
+		this.environment.setProperty("BUILD_NAME", "42");
+		OutRequest request = new OutRequest(createSource("\"thread_key\": \"build-${BUILD_NAME}\""),
+				new OutRequest.Params("sample text", null, null));
+		String threadUrl = "https://chat.example.com?messageReplyOption=REPLY_MESSAGE_FALLBACK_TO_NEW_THREAD";
+		String body = "{ \"name\": \"spaces/AAA/messages/CCC\", \"thread\": { \"name\": \"spaces/AAA/threads/BBB\" } }";
+		given(this.webHook.send(eq(threadUrl),
+				eq(WebhookMessage.from(Map.of("text", "sample text", "thread", Map.of("threadKey", "build-42")))),
+				any(), any()))
+			.willReturn(new WebhookResponse("200 OK", body));
+		given(this.webHook.send(eq(threadUrl),
+				eq(WebhookMessage
+					.from(Map.of("text", "sample text", "thread", Map.of("name", "spaces/AAA/threads/BBB")))),
+				any(), any()))
+			.willReturn(new WebhookResponse("200 OK", body));
+		OutResponse first = this.handler.handle(request, "");
+		OutResponse second = this.handler.handle(request, "");
+		assertThat(first.metadata()).contains(new Metadata("thread", "spaces/AAA/threads/BBB"));
+		assertThat(second.metadata()).contains(new Metadata("thread", "spaces/AAA/threads/BBB"));
+		verify(this.webHook).send(eq(threadUrl),
+				eq(WebhookMessage
+					.from(Map.of("text", "sample text", "thread", Map.of("name", "spaces/AAA/threads/BBB")))),
+				any(), any());
+	}
+
+	@Test
+	void handleWithSummaryResponseModeOmitsBody() throws IOException {
+		OutRequest request = new OutRequest(createSource("\"response_mode\": \"summary\""),
+				new OutRequest.Params("sample text", null, null));
+		WebhookSettings settings = new WebhookSettings(null, null, null, null, null, ResponseMode.SUMMARY);
+		given(this.webHook.send(eq("https://chat.example.com"), eq(WebhookMessage.from(Map.of("text", "sample text"))),
+				this.variables.capture(), eq(settings)))
+			.willReturn(new WebhookResponse("200 OK", null,
+					Map.of("message", "spaces/AAA/messages/CCC", "thread", "spaces/AAA/threads/BBB")));
+		OutResponse response = this.handler.handle(request, "");
+		assertThat(response.metadata()).containsExactlyInAnyOrder(new Metadata("status", "200 OK"),
+				new Metadata("message", "spaces/AAA/messages/CCC"), new Metadata("thread", "spaces/AAA/threads/BBB"));
+	}
+
+	@Test
+	void handleWithIdempotencyTtlWhenRepeatedReturnsOriginalResponse() throws IOException {
+		this.environment.setProperty("BUILD_ID", "1234");
+		OutRequest request = new OutRequest(createSource(stateDir() + ", \"idempotency_ttl\": \"1h\""),
+				new OutRequest.Params("sample text", null, null));
+		given(this.webHook.send(eq("https://chat.example.com"), eq(WebhookMessage.from(Map.of("text", "sample text"))),
+				any(), any()))
+			.willReturn(new WebhookResponse("200 OK", "test response"));
+		OutResponse first = this.handler.handle(request, "");
+		OutResponse second = this.handler.handle(request, "");
+		assertThat(second.version()).isEqualTo(first.version());
+		assertThat(second.metadata()).isEqualTo(first.metadata());
+		verify(this.webHook, times(1)).send(any(), any(), any(), any());
+	}
+
+	@Test
+	void handleWithIdempotencyTtlWhenQueuedSendsAgain() throws IOException {
+		this.environment.setProperty("BUILD_ID", "1234");
+		OutRequest request = new OutRequest(createSource(stateDir() + ", \"idempotency_ttl\": \"1h\""),
+				new OutRequest.Params("sample text", null, null));
+		given(this.webHook.send(eq("https://chat.example.com"), any(), any(), any()))
+			.willReturn(new WebhookResponse("Queued", "", Map.of("outbox", "queued")));
+		this.handler.handle(request, "");
+		this.handler.handle(request, "");
+		verify(this.webHook, times(2)).send(any(), any(), any(), any());
+	}
+
+	@Test
+	void handleWithIdempotencyTtlWhenContentChangesSendsAgain() throws IOException {
+		this.environment.setProperty("BUILD_ID", "1234");
+		Source source = createSource(stateDir() + ", \"idempotency_ttl\": \"1h\"");
+		given(this.webHook.send(eq("https://chat.example.com"), any(), any(), any()))
+			.willReturn(new WebhookResponse("200 OK", "test response"));
+		this.handler.handle(new OutRequest(source, new OutRequest.Params("first", null, null)), "");
+		this.handler.handle(new OutRequest(source, new OutRequest.Params("second", null, null)), "");
+		verify(this.webHook, times(2)).send(any(), any(), any(), any());
+	}
+
+	@Test
+	void handleWithOnlyOnTransitionsWhenStatusUnchangedSuppressesMessage() throws IOException {
+		this.environment.setProperty("BUILD_TEAM_NAME", "main");
+		this.environment.setProperty("BUILD_PIPELINE_NAME", "project");
+		this.environment.setProperty("BUILD_JOB_NAME", "build");
+		Source source = createSource(stateDir() + ", \"only_on_transitions\": true");
+		OutRequest request = new OutRequest(source,
+				new OutRequest.Params(null, "missing-card.json", null, null, null, null, "succeeded"));
+		given(this.webHook.send(eq("https://chat.example.com"), any(), any(), any()))
+			.willReturn(new WebhookResponse("200 OK", "test response"));
+		this.handler.handle(new OutRequest(source,
+				new OutRequest.Params("Build passed", null, null, null, null, null, "succeeded")), "");
+		OutResponse response = this.handler.handle(request, "");
+		assertThat(response.metadata()).containsExactly(new Metadata("status", "Suppressed"),
+				new Metadata("reason", "Status 'succeeded' unchanged"));
+		verify(this.webHook, times(1)).send(any(), any(), any(), any());
+	}
+
+	@Test
+	void handleWithOnlyOnTransitionsWhenSendFailsDoesNotRecordStatus() throws IOException {
+		this.environment.setProperty("BUILD_TEAM_NAME", "main");
+		this.environment.setProperty("BUILD_PIPELINE_NAME", "project");
+		this.environment.setProperty("BUILD_JOB_NAME", "build");
+		Source source = createSource(stateDir() + ", \"only_on_transitions\": true");
+		OutRequest request = new OutRequest(source,
+				new OutRequest.Params("Build failed", null, null, null, null, null, "failed"));
+		given(this.webHook.send(eq("https://chat.example.com"), any(), any(), any()))
+			.willThrow(new IllegalStateException("Webhook unavailable"))
+			.willReturn(new WebhookResponse("200 OK", "test response"));
+		assertThatIllegalStateException().isThrownBy(() -> this.handler.handle(request, ""))
+			.withMessage("Webhook unavailable");
+		OutResponse response = this.handler.handle(request, "");
+		assertThat(response.metadata()).contains(new Metadata("status", "200 OK"));
+		assertThat(this.handler.handle(request, "").metadata()).contains(new Metadata("status", "Suppressed"));
+		verify(this.webHook, times(2)).send(any(), any(), any(), any());
+	}
+
+	@Test
+	void handleWithCoalesceWindowSendsOneMessageForMatchingBuilds() throws Exception {
+		Source source = createSource(stateDir() + ", \"coalesce_window\": \"1s\"");
+		OutRequest request = new OutRequest(source,
+				new OutRequest.Params("Build ${BUILD_JOB_NAME} #${BUILD_NAME} failed", null, null));
+		String text = "Build ${BUILD_JOB_NAME} #${BUILD_NAME} failed\n\nAffected builds:\ncompile #1\ntest #2";
+		given(this.webHook.send(eq("https://chat.example.com"), eq(WebhookMessage.from(Map.of("text", text))), any(),
+				any()))
+			.willReturn(new WebhookResponse("200 OK", "test response"));
+		Variables variables = Variables.of(this.environment);
+		CompletableFuture<OutResponse> leader = CompletableFuture.supplyAsync(() -> this.handler.handle(request, "",
+				variables.with(Map.of("BUILD_JOB_NAME", "compile", "BUILD_NAME", "1"))));
+		awaitCoalesceGroup();
+		OutResponse follower = this.handler.handle(request, "",
+				variables.with(Map.of("BUILD_JOB_NAME", "test", "BUILD_NAME", "2")));
+		assertThat(follower.metadata()).containsExactly(new Metadata("status", "Coalesced"), new Metadata("body", ""),
+				new Metadata("coalesced", "joined"));
+		assertThat(leader.get().metadata()).contains(new Metadata("status", "200 OK"), new Metadata("coalesced", "2"));
+		verify(this.webHook, times(1)).send(any(), any(), any(), any());
+	}
+
+	@Test
+	void handleWithCoalesceWindowWhenRequestsReadFromInputSendsOneMessageForMatchingBuilds() throws Exception {
+		String json = "{ \"source\": { \"url\": \"https://chat.example.com\", " + stateDir()
+				+ ", \"coalesce_window\": \"1s\" }, \"params\": { \"text\": \"Build ${BUILD_JOB_NAME} #${BUILD_NAME} failed\" } }";
+		String text = "Build ${BUILD_JOB_NAME} #${BUILD_NAME} failed\n\nAffected builds:\ncompile #1\ntest #2";
+		given(this.webHook.send(eq("https://chat.example.com"), eq(WebhookMessage.from(Map.of("text", text))),
+				this.variables.capture(), any()))
+			.willReturn(new WebhookResponse("200 OK", "test response"));
+		SystemInput input = new SystemInput(this.environment, new MockSystemStreams(""), new ObjectMapper());
+		Variables compile = Variables.of(this.environment).with(Map.of("BUILD_JOB_NAME", "compile", "BUILD_NAME", "1"));
+		Variables test = Variables.of(this.environment).with(Map.of("BUILD_JOB_NAME", "test", "BUILD_NAME", "2"));
+		OutRequest compileRequest = input.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+				OutRequest.class, compile);
+		OutRequest testRequest = input.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+				OutRequest.class, test);
+		CompletableFuture<OutResponse> leader = CompletableFuture
+			.supplyAsync(() -> this.handler.handle(compileRequest, "", compile));
+		awaitCoalesceGroup();
+		OutResponse follower = this.handler.handle(testRequest, "", test);
+		assertThat(follower.metadata()).contains(new Metadata("status", "Coalesced"));
+		assertThat(leader.get().metadata()).contains(new Metadata("status", "200 OK"), new Metadata("coalesced", "2"));
+		assertThat(this.variables.getValue().resolvePlaceholders(text)).startsWith("Build compile #1 failed");
+		verify(this.webHook, times(1)).send(any(), any(), any(), any());
+	}
+
+	@Test
+	void handleWithTimeoutsAndRetrySendsWithSettings() throws IOException {
+		OutRequest request = new OutRequest(
+				createSource("\"connect_timeout\": \"5\", \"read_timeout\": \"20s\", \"max_attempts\": 5, "
+						+ "\"retry_budget\": \"2m\", \"rate_limit\": 0.5, \"rate_limit_burst\": 2, \"state_dir\": \"/tmp/state\""),
+				new OutRequest.Params("sample text", null, null));
+		WebhookSettings settings = new WebhookSettings(Duration.ofSeconds(5), Duration.ofSeconds(20),
+				RetryPolicy.of(5, Duration.ofMinutes(2)), new RateLimit(0.5, 2), Path.of("/tmp/state"));
+		given(this.webHook.send(eq("https://chat.example.com"), eq(WebhookMessage.from(Map.of("text", "sample text"))),
+				this.variables.capture(), eq(settings)))
+			.willReturn(new WebhookResponse("200 OK", "test response", Map.of("response_time", "12ms")));
+		OutResponse response = this.handler.handle(request, "");
+		assertThat(response.metadata()).containsExactly(new Metadata("status", "200 OK"),
+				new Metadata("body", "test response"), new Metadata("response_time", "12ms"));
+	}
+
+	@Test
+	void handleWhenAsyncQueuesMessageAndStartsBackgroundSender() throws IOException {
+		OutRequest request = new OutRequest(createSource(stateDir() + ", \"async\": true"),
+				new OutRequest.Params("sample text", null, null));
+		WebhookSettings settings = new WebhookSettings(null, null, null, null, this.tempDir.toPath());
+		given(this.webHook.enqueue(eq("https://chat.example.com"),
+				eq(WebhookMessage.from(Map.of("text", "sample text"))), this.variables.capture(), eq(settings)))
+			.willReturn(new WebhookResponse("Queued", "", Map.of("outbox", "queued")));
+		OutResponse response = this.handler.handle(request, "");
+		assertThat(response.metadata()).containsExactly(new Metadata("status", "Queued"), new Metadata("body", ""),
+				new Metadata("outbox", "queued"));
+		verify(this.backgroundSender).start(settings);
+		verify(this.webHook, never()).send(any(), any(), any(), any());
+	}
+
+	private void awaitCoalesceGroup() throws Exception {
+		Path directory = this.tempDir.toPath().resolve("coalesce");
+		for (int i = 0; i < 100; i++) {
+			if (Files.isDirectory(directory)) {
+				try (Stream<Path> files = Files.list(directory)) {
+					if (files.anyMatch((file) -> file.toString().endsWith(".group"))) {
+						return;
+					}
+				}
+			}
+			Thread.sleep(10);
+		}
+	}
+
 	private File createFile(String name, String content) throws IOException {
 		File file = new File(this.tempDir, name);
 		FileCopyUtils.copy(content.getBytes(), file);
@@ -130,4 +436,13 @@ class OutHandlerTests {
 		return new OutRequest(new Source("https://chat.example.com"), new OutRequest.Params(text, cardFile, textFile));
 	}
 
+	private Source createSource(String options) throws IOException {
+		String json = "{ \"url\": \"https://chat.example.com\", " + options + " }";
+		return new ObjectMapper().readValue(json, Source.class);
+	}
+
+	private String stateDir() {
+		return "\"state_dir\": \"" + this.tempDir.getAbsolutePath() + "\"";
+	}
+
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.spring.concourse.googlechatnotify.command.payload.Metadata;
+import io.spring.concourse.googlechatnotify.command.payload.OutRequest;
+import io.spring.concourse.googlechatnotify.command.payload.OutResponse;
+import io.spring.concourse.googlechatnotify.command.payload.Version;
+import io.spring.concourse.googlechatnotify.system.MockSystemStreams;
+import io.spring.concourse.googlechatnotify.system.SystemInput;
+import io.spring.concourse.googlechatnotify.system.SystemOutput;
+import io.spring.concourse.googlechatnotify.system.Variables;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.util.StreamUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link ServeCommand}.
+ *
+ * @author Scott Frederick
+ */
+@ExtendWith(MockitoExtension.class)
+class ServeCommandTests {
+
+	@TempDir
+	private File tempDir;
+
+	@Mock
+	private OutHandler handler;
+
+	private MockEnvironment environment;
+
+	private final FileContentCache fileContentCache = new FileContentCache();
+
+	private ServeCommand command;
+
+	private Path socket;
+
+	private Thread server;
+
+	@BeforeEach
+	void setup() throws Exception {
+		this.environment = new MockEnvironment();
+		ObjectMapper objectMapper = new ObjectMapper();
+		MockSystemStreams systemStreams = new MockSystemStreams("");
+		this.command = new ServeCommand(this.environment,
+				new SystemInput(this.environment, systemStreams, objectMapper),
+				new SystemOutput(systemStreams, objectMapper), this.handler, this.fileContentCache);
+		this.socket = new File(this.tempDir, "notify.sock").toPath();
+		this.server = new Thread(() -> {
+			try {
+				this.command.serve(this.socket);
+			}
+			catch (IOException ex) {
+				throw new IllegalStateException(ex);
+			}
+		});
+		this.server.start();
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (!Files.exists(this.socket) && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	@AfterEach
+	void stop() throws Exception {
+		this.command.destroy();
+		this.server.join(Duration.ofSeconds(5).toMillis());
+		this.fileContentCache.destroy();
+	}
+
+	@Test
+	void serveHandlesRequestWithBuildVariables() throws Exception {
+		OutResponse response = new OutResponse(new Version("1234"), List.of(new Metadata("status", "200 OK")));
+		given(this.handler.handle(any(), eq("/tmp/build"), any())).willReturn(response);
+		String result = send("""
+				/tmp/build
+				BUILD_NAME=42
+
+				{ "source": { "url": "https://chat.example.com" }, "params": { "text": "Build ${BUILD_NAME}" } }
+				""");
+		ArgumentCaptor<OutRequest> request = ArgumentCaptor.forClass(OutRequest.class);
+		ArgumentCaptor<Variables> variables = ArgumentCaptor.forClass(Variables.class);
+		verify(this.handler).handle(request.capture(), eq("/tmp/build"), variables.capture());
+		assertThat(request.getValue().params().text()).isEqualTo("Build ${BUILD_NAME}");
+		assertThat(variables.getValue().apply("BUILD_NAME")).isEqualTo("42");
+		JSONAssert.assertEquals("""
+				{ "version": { "build_number": "1234" }, "metadata": [ { "name": "status", "value": "200 OK" } ] }
+				""", result, false);
+		assertThat(this.environment.getProperty("BUILD_NAME")).isNull();
+	}
+
+	@Test
+	void serveWhenRequestIsInvalidWritesError() throws Exception {
+		String result = send("""
+				/tmp/build
+
+				{ "source": { "url": "https://chat.example.com" } }
+				""");
+		assertThat(result).startsWith("error: ").endsWith("\n");
+	}
+
+	@Test
+	void serveWhenHandlerFailsWritesError() throws Exception {
+		given(this.handler.handle(any(), eq("/tmp/build"), any())).willThrow(new IllegalStateException("Failed"));
+		String result = send("""
+				/tmp/build
+
+				{ "source": { "url": "https://chat.example.com" }, "params": { "text": "Hello" } }
+				""");
+		assertThat(result).isEqualTo("error: Failed\n");
+	}
+
+	@Test
+	void serveHandlesConnectionsConcurrently() throws Exception {
+		CountDownLatch slowStarted = new CountDownLatch(1);
+		CountDownLatch fastHandled = new CountDownLatch(1);
+		OutResponse response = new OutResponse(new Version("1234"), List.of());
+		given(this.handler.handle(any(), eq("/tmp/slow"), any())).willAnswer((invocation) -> {
+			slowStarted.countDown();
+			assertThat(fastHandled.await(5, TimeUnit.SECONDS)).isTrue();
+			return response;
+		});
+		given(this.handler.handle(any(), eq("/tmp/fast"), any())).willAnswer((invocation) -> {
+			fastHandled.countDown();
+			return response;
+		});
+		String request = """
+
+				{ "source": { "url": "https://chat.example.com" }, "params": { "text": "Hello" } }
+				""";
+		CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> {
+			try {
+				return send("/tmp/slow\n" + request);
+			}
+			catch (Exception ex) {
+				throw new IllegalStateException(ex);
+			}
+		});
+		assertThat(slowStarted.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(send("/tmp/fast\n" + request)).contains("1234");
+		assertThat(slow.get(5, TimeUnit.SECONDS)).contains("1234");
+	}
+
+	private String send(String request) throws IOException, InterruptedException {
+		try (SocketChannel channel = connect()) {
+			channel.write(ByteBuffer.wrap(request.getBytes(StandardCharsets.UTF_8)));
+			channel.shutdownOutput();
+			return StreamUtils.copyToString(Channels.newInputStream(channel), StandardCharsets.UTF_8);
+		}
+	}
+
+	private SocketChannel connect() throws IOException, InterruptedException {
+		// The socket file exists as soon as it is bound, which can be just before the
+		// server starts listening
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (true) {
+			SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+			try {
+				channel.connect(UnixDomainSocketAddress.of(this.socket));
+				return channel;
+			}
+			catch (ConnectException ex) {
+				channel.close();
+				if (System.nanoTime() > deadline) {
+					throw ex;
+				}
+				Thread.sleep(10);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import io.spring.concourse.googlechatnotify.command.payload.OutRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link TextFileExcerpt}.
+ *
+ * @author Scott Frederick
+ */
+class TextFileExcerptTests {
+
+	private static final String LOG = """
+			Starting build
+			Compiling
+			WARN deprecated API
+			Running tests
+			ERROR test failed
+			Build failed
+			""";
+
+	@TempDir
+	private Path directory;
+
+	@Test
+	void ofWhenNoExcerptParamsReturnsNull() {
+		assertThat(TextFileExcerpt.of(new OutRequest.Params(null, null, "log.txt"))).isNull();
+	}
+
+	@Test
+	void readWithHeadBytesReturnsStartOfFile() throws IOException {
+		assertThat(read(LOG, 14, null, null)).isEqualTo("Starting build");
+	}
+
+	@Test
+	void readWithHeadBytesLargerThanFileReturnsFile() throws IOException {
+		assertThat(read(LOG, 10000, null, null)).isEqualTo(LOG);
+	}
+
+	@Test
+	void readWithHeadBytesDoesNotSplitCharacters() throws IOException {
+		// The euro sign is encoded as three bytes
+		assertThat(read("ab\u20ac", 4, null, null)).isEqualTo("ab");
+		assertThat(read("ab\u20ac", 5, null, null)).isEqualTo("ab\u20ac");
+	}
+
+	@Test
+	void readWithTailLinesReturnsEndOfFile() throws IOException {
+		assertThat(read(LOG, null, 2, null)).isEqualTo("ERROR test failed\nBuild failed\n");
+	}
+
+	@Test
+	void readWithTailLinesWhenFileHasNoTrailingNewlineReturnsEndOfFile() throws IOException {
+		assertThat(read(LOG.strip(), null, 1, null)).isEqualTo("Build failed");
+	}
+
+	@Test
+	void readWithTailLinesMoreThanFileReturnsFile() throws IOException {
+		assertThat(read(LOG, null, 100, null)).isEqualTo(LOG);
+	}
+
+	@Test
+	void readWithTailLinesWhenFileIsLargerThanBufferReturnsEndOfFile() throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			content.append("line ").append(i).append('\n');
+		}
+		assertThat(read(content.toString(), null, 3, null)).isEqualTo("line 9997\nline 9998\nline 9999\n");
+	}
+
+	@Test
+	void readWithTailLinesWhenExcerptIsLargerThanMaxSizeReturnsEndOfFile() throws IOException {
+		String line = "x".repeat(TextFileExcerpt.MAX_SIZE);
+		assertThat(read("first\n" + line + "\nlast\n", null, 3, null)).hasSize(TextFileExcerpt.MAX_SIZE)
+			.endsWith("x\nlast\n");
+	}
+
+	@Test
+	void readWithPatternReturnsMatchingLines() throws IOException {
+		assertThat(read(LOG, null, null, "WARN|ERROR")).isEqualTo("WARN deprecated API\nERROR test failed");
+	}
+
+	@Test
+	void readWithPatternAndTailLinesReturnsLastMatchingLines() throws IOException {
+		assertThat(read(LOG, null, 1, "WARN|ERROR")).isEqualTo("ERROR test failed");
+	}
+
+	@Test
+	void readWithPatternAndHeadBytesReturnsFirstMatchingLines() throws IOException {
+		assertThat(read(LOG, 25, null, "WARN|ERROR")).isEqualTo("WARN deprecated API");
+	}
+
+	@Test
+	void readWithPatternWhenLinesEndWithCarriageReturnReturnsLinesWithoutCarriageReturn() throws IOException {
+		assertThat(read("one\r\ntwo\r\n", null, null, "t")).isEqualTo("two");
+	}
+
+	private String read(String content, Integer headBytes, Integer tailLines, String pattern) throws IOException {
+		Path file = this.directory.resolve("log.txt");
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		OutRequest.Params params = new OutRequest.Params(null, null, "log.txt", headBytes, tailLines, pattern, null);
+		return TextFileExcerpt.of(params).read(file);
+	}
+
+}
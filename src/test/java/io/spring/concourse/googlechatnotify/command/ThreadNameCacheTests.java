@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.command;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link ThreadNameCache}.
+ *
+ * @author Scott Frederick
+ */
+class ThreadNameCacheTests {
+
+	private static final String URL = "https://chat.example.com/v1/spaces/AAA/messages?key=k&token=t";
+
+	@TempDir
+	private Path tempDir;
+
+	@Test
+	void getWhenNotCachedReturnsNull() {
+		assertThat(new ThreadNameCache().get(URL, "build/42", null)).isNull();
+	}
+
+	@Test
+	void getWhenCachedInMemoryReturnsName() {
+		ThreadNameCache cache = new ThreadNameCache();
+		cache.put(URL, "build/42", "spaces/AAA/threads/BBB", null);
+		assertThat(cache.get(URL, "build/42", null)).isEqualTo("spaces/AAA/threads/BBB");
+		assertThat(cache.get(URL, "build/43", null)).isNull();
+	}
+
+	@Test
+	void getIgnoresUrlQuery() {
+		ThreadNameCache cache = new ThreadNameCache();
+		cache.put(URL, "build/42", "spaces/AAA/threads/BBB", null);
+		assertThat(cache.get("https://chat.example.com/v1/spaces/AAA/messages?key=k&token=other", "build/42", null))
+			.isEqualTo("spaces/AAA/threads/BBB");
+		assertThat(cache.get("https://chat.example.com/v1/spaces/CCC/messages?key=k&token=t", "build/42", null))
+			.isNull();
+	}
+
+	@Test
+	void getWhenCachedByAnotherInstanceInDirectoryReturnsName() {
+		new ThreadNameCache().put(URL, "build/42", "spaces/AAA/threads/BBB", this.tempDir);
+		assertThat(new ThreadNameCache().get(URL, "build/42", this.tempDir)).isEqualTo("spaces/AAA/threads/BBB");
+	}
+
+	@Test
+	void getWhenEntryHasExpiredReturnsNull() throws IOException {
+		new ThreadNameCache().put(URL, "build/42", "spaces/AAA/threads/BBB", this.tempDir);
+		try (Stream<Path> files = Files.list(this.tempDir)) {
+			for (Path file : files.toList()) {
+				Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(Duration.ofDays(8))));
+			}
+		}
+		assertThat(new ThreadNameCache().get(URL, "build/42", this.tempDir)).isNull();
+	}
+
+}
@@ -50,6 +50,45 @@ class OutRequestTests {
 			.withMessage("Params must not be null");
 	}
 
+	@Test
+	void createParamsWhenHeadBytesAndTailLinesThrowsException() {
+		assertThatIllegalArgumentException()
+			.isThrownBy(() -> new OutRequest.Params(null, null, "log.txt", 100, 10, null, null))
+			.withMessage("Only one of 'text_file_head_bytes' or 'text_file_tail_lines' may be provided");
+	}
+
+	@Test
+	void createParamsWhenTailLinesIsZeroThrowsException() {
+		assertThatIllegalArgumentException()
+			.isThrownBy(() -> new OutRequest.Params(null, null, "log.txt", null, 0, null, null))
+			.withMessage("Text file tail lines must be greater than zero");
+	}
+
+	@Test
+	void readWithExcerptDeserializesJson() throws Exception {
+		OutRequest request = this.json.parseObject("""
+				{
+				  "source": { "url": "https://chat.example.com" },
+				  "params": { "text_file": "build.log", "text_file_tail_lines": 20, "text_file_pattern": "ERROR" }
+				}
+				""");
+		assertThat(request.params().textFile()).isEqualTo("build.log");
+		assertThat(request.params().textFileHeadBytes()).isNull();
+		assertThat(request.params().textFileTailLines()).isEqualTo(20);
+		assertThat(request.params().textFilePattern()).isEqualTo("ERROR");
+	}
+
+	@Test
+	void readWithStatusDeserializesJson() throws Exception {
+		OutRequest request = this.json.parseObject("""
+				{
+				  "source": { "url": "https://chat.example.com" },
+				  "params": { "text": "Build passed", "status": "succeeded" }
+				}
+				""");
+		assertThat(request.params().status()).isEqualTo("succeeded");
+	}
+
 	@Test
 	void readDeserializesJson() throws Exception {
 		OutRequest request = this.json.readObject("out-request.json");
@@ -16,6 +16,9 @@
 
 package io.spring.concourse.googlechatnotify.command.payload;
 
+import java.nio.file.Path;
+import java.time.Duration;
+
 import org.junit.jupiter.api.Test;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,6 +26,7 @@ import org.springframework.boot.test.autoconfigure.json.JsonTest;
 import org.springframework.boot.test.json.JacksonTester;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatException;
 import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
 
 /**
@@ -47,4 +51,73 @@ class SourceTests {
 		assertThat(source.getUrl()).isEqualTo("https://chat.example.com");
 	}
 
+	@Test
+	void readWhenNoOptionsDeserializesJson() throws Exception {
+		Source source = this.json.readObject("source.json");
+		assertThat(source.getConnectTimeout()).isNull();
+		assertThat(source.getReadTimeout()).isNull();
+		assertThat(source.getMaxAttempts()).isNull();
+		assertThat(source.getRetryBudget()).isNull();
+		assertThat(source.getRateLimit()).isNull();
+		assertThat(source.getRateLimitBurst()).isNull();
+		assertThat(source.getStateDirectory()).isNull();
+		assertThat(source.isAsync()).isFalse();
+		assertThat(source.getThreadKey()).isNull();
+		assertThat(source.getResponseMode()).isNull();
+		assertThat(source.getIdempotencyTtl()).isNull();
+		assertThat(source.getCoalesceWindow()).isNull();
+		assertThat(source.isOnlyOnTransitions()).isFalse();
+		assertThat(source.getSuccessEvery()).isNull();
+		assertThat(source.getQuietHours()).isNull();
+		assertThat(source.getTimeZone()).isNull();
+	}
+
+	@Test
+	void readWithOptionsDeserializesJson() throws Exception {
+		Source source = this.json.readObject("source-with-options.json");
+		assertThat(source.getConnectTimeout()).isEqualTo(Duration.ofSeconds(5));
+		assertThat(source.getReadTimeout()).isEqualTo(Duration.ofSeconds(20));
+		assertThat(source.getMaxAttempts()).isEqualTo(5);
+		assertThat(source.getRetryBudget()).isEqualTo(Duration.ofMinutes(2));
+		assertThat(source.getRateLimit()).isEqualTo(0.5);
+		assertThat(source.getRateLimitBurst()).isEqualTo(2);
+		assertThat(source.getStateDirectory()).isEqualTo(Path.of("/var/run/google-chat-notify"));
+		assertThat(source.isAsync()).isTrue();
+		assertThat(source.getThreadKey()).isEqualTo("${BUILD_PIPELINE_NAME}/${BUILD_JOB_NAME}/${BUILD_NAME}");
+		assertThat(source.getResponseMode()).isEqualTo("summary");
+		assertThat(source.getIdempotencyTtl()).isEqualTo(Duration.ofHours(24));
+		assertThat(source.getCoalesceWindow()).isEqualTo(Duration.ofSeconds(10));
+		assertThat(source.isOnlyOnTransitions()).isTrue();
+		assertThat(source.getSuccessEvery()).isEqualTo(10);
+		assertThat(source.getQuietHours()).isEqualTo("22:00-07:00,12:00-13:00");
+		assertThat(source.getTimeZone()).isEqualTo("Europe/London");
+	}
+
+	@Test
+	void readWhenMaxAttemptsIsZeroThrowsException() {
+		assertThatException()
+			.isThrownBy(() -> this.json.parseObject("{ \"url\": \"https://chat.example.com\", \"max_attempts\": 0 }"))
+			.havingRootCause()
+			.isInstanceOf(IllegalArgumentException.class)
+			.withMessage("Max attempts must be greater than zero");
+	}
+
+	@Test
+	void readWhenRateLimitIsZeroThrowsException() {
+		assertThatException()
+			.isThrownBy(() -> this.json.parseObject("{ \"url\": \"https://chat.example.com\", \"rate_limit\": 0.0 }"))
+			.havingRootCause()
+			.isInstanceOf(IllegalArgumentException.class)
+			.withMessage("Rate limit must be greater than zero");
+	}
+
+	@Test
+	void readWhenSuccessEveryIsZeroThrowsException() {
+		assertThatException()
+			.isThrownBy(() -> this.json.parseObject("{ \"url\": \"https://chat.example.com\", \"success_every\": 0 }"))
+			.havingRootCause()
+			.isInstanceOf(IllegalArgumentException.class)
+			.withMessage("Success every must be greater than zero");
+	}
+
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.outbox;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link OutboxSegment}.
+ *
+ * @author Scott Frederick
+ */
+class OutboxSegmentTests {
+
+	@TempDir
+	private File tempDir;
+
+	@Test
+	void appendAndRead() throws Exception {
+		Path file = new File(this.tempDir, "segment").toPath();
+		try (OutboxSegment segment = OutboxSegment.openForAppend(file, 64)) {
+			assertThat(segment.append(bytes("one"))).isTrue();
+			assertThat(segment.append(bytes("two"))).isTrue();
+		}
+		try (OutboxSegment segment = OutboxSegment.openForRead(file)) {
+			OutboxSegment.Record one = segment.read(0);
+			assertThat(one.bytes()).isEqualTo(bytes("one"));
+			assertThat(one.next()).isEqualTo(OutboxSegment.HEADER_SIZE + 3);
+			OutboxSegment.Record two = segment.read(one.next());
+			assertThat(two.bytes()).isEqualTo(bytes("two"));
+			assertThat(segment.read(two.next())).isNull();
+		}
+	}
+
+	@Test
+	void appendWhenFullReturnsFalse() throws Exception {
+		Path file = new File(this.tempDir, "segment").toPath();
+		try (OutboxSegment segment = OutboxSegment.openForAppend(file, 16)) {
+			assertThat(segment.append(bytes("one"))).isTrue();
+			assertThat(segment.append(bytes("two"))).isFalse();
+		}
+	}
+
+	@Test
+	void readWhenChecksumDoesNotMatchSkipsRecord() throws Exception {
+		Path file = new File(this.tempDir, "segment").toPath();
+		try (OutboxSegment segment = OutboxSegment.openForAppend(file, 64)) {
+			segment.append(bytes("one"));
+			segment.append(bytes("two"));
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.seek(OutboxSegment.HEADER_SIZE);
+			raf.write('x');
+		}
+		try (OutboxSegment segment = OutboxSegment.openForRead(file)) {
+			OutboxSegment.Record record = segment.read(0);
+			assertThat(record.bytes()).isEqualTo(bytes("two"));
+			assertThat(record.next()).isEqualTo((OutboxSegment.HEADER_SIZE + 3) * 2);
+		}
+	}
+
+	@Test
+	void readWhenOnlyRecordIsCorruptReturnsNull() throws Exception {
+		Path file = new File(this.tempDir, "segment").toPath();
+		try (OutboxSegment segment = OutboxSegment.openForAppend(file, 64)) {
+			segment.append(bytes("one"));
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.seek(OutboxSegment.HEADER_SIZE);
+			raf.write('x');
+		}
+		try (OutboxSegment segment = OutboxSegment.openForRead(file)) {
+			assertThat(segment.read(0)).isNull();
+		}
+	}
+
+	private byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.outbox;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+/**
+ * Tests for {@link Outbox}.
+ *
+ * @author Scott Frederick
+ */
+class OutboxTests {
+
+	@TempDir
+	private File tempDir;
+
+	@Test
+	void drainWhenNothingAddedReturnsTrue() {
+		Outbox outbox = new Outbox(new File(this.tempDir, "outbox").toPath());
+		assertThat(outbox.drain((message) -> true)).isTrue();
+	}
+
+	@Test
+	void drainDeliversMessagesInOrder() {
+		Outbox outbox = new Outbox(this.tempDir.toPath());
+		outbox.append(new OutboxMessage("https://chat.example.com/1", "one"));
+		outbox.append(new OutboxMessage("https://chat.example.com/2", "two"));
+		List<OutboxMessage> delivered = new ArrayList<>();
+		assertThat(outbox.drain(delivered::add)).isTrue();
+		assertThat(delivered).containsExactly(new OutboxMessage("https://chat.example.com/1", "one"),
+				new OutboxMessage("https://chat.example.com/2", "two"));
+		assertThat(outbox.drain(delivered::add)).isTrue();
+		assertThat(delivered).hasSize(2);
+	}
+
+	@Test
+	void isEmptyReturnsTrueOnlyWhenAllMessagesDelivered() {
+		Outbox outbox = new Outbox(this.tempDir.toPath());
+		assertThat(outbox.isEmpty()).isTrue();
+		outbox.append(new OutboxMessage("https://chat.example.com", "one"));
+		assertThat(outbox.isEmpty()).isFalse();
+		assertThat(outbox.isEmpty()).isFalse();
+		assertThat(outbox.drain((message) -> true)).isTrue();
+		assertThat(outbox.isEmpty()).isTrue();
+	}
+
+	@Test
+	void drainWhenDeliveryFailsResumesFromFailedMessage() {
+		Outbox outbox = new Outbox(this.tempDir.toPath());
+		outbox.append(new OutboxMessage("https://chat.example.com", "one"));
+		outbox.append(new OutboxMessage("https://chat.example.com", "two"));
+		outbox.append(new OutboxMessage("https://chat.example.com", "three"));
+		List<String> delivered = new ArrayList<>();
+		assertThat(outbox.drain((message) -> !message.body().equals("two") && delivered.add(message.body()))).isFalse();
+		assertThat(outbox.drain((message) -> delivered.add(message.body()))).isTrue();
+		assertThat(delivered).containsExactly("one", "two", "three");
+	}
+
+	@Test
+	void drainWhenMessageIsCorruptDeliversFollowingMessages() throws Exception {
+		Outbox outbox = new Outbox(this.tempDir.toPath());
+		outbox.append(new OutboxMessage("https://chat.example.com", "one"));
+		outbox.append(new OutboxMessage("https://chat.example.com", "two"));
+		try (RandomAccessFile raf = new RandomAccessFile(new File(this.tempDir, segments()[0]), "rw")) {
+			raf.seek(raf.readInt() - 1 + OutboxSegment.HEADER_SIZE);
+			raf.write('x');
+		}
+		List<String> delivered = new ArrayList<>();
+		assertThat(outbox.drain((message) -> delivered.add(message.body()))).isTrue();
+		assertThat(delivered).containsExactly("two");
+	}
+
+	@Test
+	void appendDoesNotWriteCredentialsToJournal() throws Exception {
+		Outbox outbox = new Outbox(this.tempDir.toPath());
+		outbox.append(new OutboxMessage("https://chat.example.com/v1/spaces/a/messages?key=k1&token=t1", "one"));
+		String journal = Files.readString(new File(this.tempDir, segments()[0]).toPath(), StandardCharsets.ISO_8859_1);
+		assertThat(journal).contains("/v1/spaces/a/messages").doesNotContain("k1").doesNotContain("t1");
+		Path credentials = new File(this.tempDir, "credentials").toPath();
+		assertThat(credentials).hasContent("key=k1&token=t1");
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+			assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(credentials)))
+				.isEqualTo("rw-------");
+		}
+	}
+
+	@Test
+	void drainAddsMostRecentCredentials() {
+		Outbox outbox = new Outbox(this.tempDir.toPath());
+		outbox.append(new OutboxMessage("https://chat.example.com/v1/spaces/a/messages?key=k1&token=t1", "one"));
+		outbox.append(new OutboxMessage(
+				"https://chat.example.com/v1/spaces/a/messages?key=k1&token=t2&messageReplyOption=REPLY", "two"));
+		List<OutboxMessage> delivered = new ArrayList<>();
+		assertThat(outbox.drain(delivered::add)).isTrue();
+		assertThat(delivered).extracting(OutboxMessage::url)
+			.containsExactly("https://chat.example.com/v1/spaces/a/messages?key=k1&token=t2",
+					"https://chat.example.com/v1/spaces/a/messages?messageReplyOption=REPLY&key=k1&token=t2");
+	}
+
+	@Test
+	void drainWhenMessagesSpanSegmentsDeletesDrainedSegments() {
+		Outbox outbox = new Outbox(this.tempDir.toPath(), 128, 10);
+		for (int i = 0; i < 10; i++) {
+			outbox.append(new OutboxMessage("https://chat.example.com", "message " + i));
+		}
+		assertThat(segments()).hasSizeGreaterThan(1);
+		List<String> delivered = new ArrayList<>();
+		assertThat(outbox.drain((message) -> delivered.add(message.body()))).isTrue();
+		assertThat(delivered).hasSize(10).startsWith("message 0").endsWith("message 9");
+		assertThat(segments()).hasSize(1);
+	}
+
+	@Test
+	void appendWhenFullDiscardsOldestSegment() {
+		Outbox outbox = new Outbox(this.tempDir.toPath(), 128, 2);
+		for (int i = 0; i < 10; i++) {
+			outbox.append(new OutboxMessage("https://chat.example.com", "message " + i));
+		}
+		assertThat(segments()).hasSize(2);
+		List<String> delivered = new ArrayList<>();
+		assertThat(outbox.drain((message) -> delivered.add(message.body()))).isTrue();
+		assertThat(delivered).doesNotContain("message 0").endsWith("message 9");
+	}
+
+	@Test
+	void appendWhenMessageTooLargeThrowsException() {
+		Outbox outbox = new Outbox(this.tempDir.toPath(), 128, 2);
+		assertThatIllegalStateException()
+			.isThrownBy(() -> outbox.append(new OutboxMessage("https://chat.example.com", "x".repeat(200))))
+			.withMessage("Message is too large to add to the outbox");
+	}
+
+	@Test
+	void appendAndDrainFromConcurrentThreadsDeliversEveryMessage() throws Exception {
+		List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<CompletableFuture<Void>> futures = new ArrayList<>();
+			for (int thread = 0; thread < 8; thread++) {
+				String name = "thread " + thread;
+				futures.add(CompletableFuture.runAsync(() -> {
+					Outbox outbox = new Outbox(this.tempDir.toPath(), 512, 100);
+					for (int i = 0; i < 20; i++) {
+						outbox.append(new OutboxMessage("https://chat.example.com", name + " message " + i));
+						outbox.drain((message) -> delivered.add(message.body()));
+					}
+				}, executor));
+			}
+			CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+		}
+		finally {
+			executor.shutdown();
+		}
+		assertThat(new Outbox(this.tempDir.toPath(), 512, 100).drain((message) -> delivered.add(message.body())))
+			.isTrue();
+		assertThat(delivered).hasSize(160).doesNotHaveDuplicates();
+		assertThat(delivered.stream().filter((body) -> body.startsWith("thread 3 ")))
+			.isSortedAccordingTo((a, b) -> Integer.compare(messageNumber(a), messageNumber(b)));
+	}
+
+	private int messageNumber(String body) {
+		return Integer.parseInt(body.substring(body.lastIndexOf(' ') + 1));
+	}
+
+	private String[] segments() {
+		return this.tempDir.list((dir, name) -> name.startsWith("segment-"));
+	}
+
+}
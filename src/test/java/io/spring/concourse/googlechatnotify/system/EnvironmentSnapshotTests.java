@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.system;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.PropertySource;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link EnvironmentSnapshot}.
+ *
+ * @author Scott Frederick
+ */
+class EnvironmentSnapshotTests {
+
+	@Test
+	void applyReturnsPropertyFromFirstSource() {
+		MockEnvironment environment = new MockEnvironment().withProperty("BUILD_NAME", "42");
+		environment.getPropertySources().addLast(new MapPropertySource("last", Map.of("BUILD_NAME", "43")));
+		assertThat(EnvironmentSnapshot.of(environment).apply("BUILD_NAME")).isEqualTo("42");
+	}
+
+	@Test
+	void applyWhenUnknownReturnsNull() {
+		assertThat(EnvironmentSnapshot.of(new MockEnvironment()).apply("UNKNOWN")).isNull();
+	}
+
+	@Test
+	void applyUsesSnapshotTakenWhenCreated() {
+		MockEnvironment environment = new MockEnvironment().withProperty("BUILD_NAME", "42");
+		EnvironmentSnapshot snapshot = EnvironmentSnapshot.of(environment);
+		environment.setProperty("BUILD_NAME", "43");
+		assertThat(snapshot.apply("BUILD_NAME")).isEqualTo("42");
+	}
+
+	@Test
+	void applyWhenPropertyAddedAfterSnapshotUsesEnvironment() {
+		MockEnvironment environment = new MockEnvironment();
+		EnvironmentSnapshot snapshot = EnvironmentSnapshot.of(environment);
+		environment.setProperty("BUILD_TEAM_NAME", "main");
+		assertThat(snapshot.apply("BUILD_TEAM_NAME")).isEqualTo("main");
+	}
+
+	@Test
+	void applyWhenNameIsNotInSnapshotUsesEnvironment() {
+		MockEnvironment environment = new MockEnvironment();
+		environment.getPropertySources().addLast(new PropertySource<>("computed") {
+
+			@Override
+			public Object getProperty(String name) {
+				return name.startsWith("computed.") ? name.substring(9) : null;
+			}
+
+		});
+		EnvironmentSnapshot snapshot = EnvironmentSnapshot.of(environment);
+		assertThat(snapshot.apply("computed.value")).isEqualTo("value");
+	}
+
+}
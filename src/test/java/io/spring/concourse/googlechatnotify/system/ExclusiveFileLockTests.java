@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.system;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIOException;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+/**
+ * Tests for {@link ExclusiveFileLock}.
+ *
+ * @author Scott Frederick
+ */
+class ExclusiveFileLockTests {
+
+	@TempDir
+	private Path tempDir;
+
+	@Test
+	void acquireCreatesFileAndParentDirectories() throws Exception {
+		Path file = this.tempDir.resolve("locks/test.lock");
+		try (ExclusiveFileLock lock = ExclusiveFileLock.acquire(file)) {
+			assertThat(lock).isNotNull();
+			assertThat(file).exists();
+		}
+	}
+
+	@Test
+	void tryAcquireWhenHeldByAnotherThreadReturnsNull() throws Exception {
+		Path file = this.tempDir.resolve("test.lock");
+		ExclusiveFileLock.run(file,
+				() -> assertThat(CompletableFuture.supplyAsync(() -> tryAcquireAndClose(file)).join()).isFalse());
+		assertThat(CompletableFuture.supplyAsync(() -> tryAcquireAndClose(file)).get()).isTrue();
+	}
+
+	@Test
+	void tryAcquireWhenHeldByCurrentThreadReturnsNull() throws Exception {
+		Path file = this.tempDir.resolve("test.lock");
+		ExclusiveFileLock.run(file, () -> {
+			assertThat(ExclusiveFileLock.tryAcquire(file)).isNull();
+			assertThatIllegalStateException().isThrownBy(() -> ExclusiveFileLock.acquire(file))
+				.withMessage("Lock on '" + file + "' is already held by this thread");
+		});
+	}
+
+	@Test
+	void acquireWhenHeldByAnotherThreadWaitsForRelease() throws Exception {
+		Path file = this.tempDir.resolve("test.lock");
+		CompletableFuture<Void> waiting;
+		ExclusiveFileLock lock = ExclusiveFileLock.acquire(file);
+		try {
+			waiting = CompletableFuture.runAsync(() -> {
+				try {
+					ExclusiveFileLock.acquire(file).close();
+				}
+				catch (Exception ex) {
+					throw new IllegalStateException(ex);
+				}
+			});
+			Thread.sleep(50);
+			assertThat(waiting).isNotDone();
+		}
+		finally {
+			lock.close();
+		}
+		waiting.get();
+	}
+
+	@Test
+	void callReturnsResultAndReleasesLock() throws Exception {
+		Path file = this.tempDir.resolve("test.lock");
+		assertThat(ExclusiveFileLock.call(file, () -> "result")).isEqualTo("result");
+		assertThat(tryAcquireAndClose(file)).isTrue();
+	}
+
+	@Test
+	void runWhenRunnableFailsReleasesLock() throws Exception {
+		Path file = this.tempDir.resolve("test.lock");
+		assertThatIOException().isThrownBy(() -> ExclusiveFileLock.run(file, () -> {
+			throw new IOException("Failed");
+		})).withMessage("Failed");
+		assertThat(tryAcquireAndClose(file)).isTrue();
+	}
+
+	private boolean tryAcquireAndClose(Path file) {
+		try (ExclusiveFileLock lock = ExclusiveFileLock.tryAcquire(file)) {
+			return lock != null;
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+}
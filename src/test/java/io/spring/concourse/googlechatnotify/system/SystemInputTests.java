@@ -16,13 +16,25 @@
 
 package io.spring.concourse.googlechatnotify.system;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import org.springframework.mock.env.MockEnvironment;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIOException;
 import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
 
 /**
@@ -41,10 +53,40 @@ class SystemInputTests {
 	}
 
 	@Test
-	void readWhenNoDataTimesout() {
+	void readWhenNoDataThrowsException() {
 		SystemInput input = new SystemInput(this.environment, new MockSystemStreams(""), new ObjectMapper(), 10);
-		assertThatIllegalStateException().isThrownBy(() -> input.read(String[].class))
-			.withMessage("Timeout waiting for input");
+		assertThatIllegalStateException().isThrownBy(() -> input.read(String[].class)).withMessage("No input");
+	}
+
+	@Test
+	void readWhenInputNeverArrivesTimesout() throws IOException {
+		try (PipedOutputStream source = new PipedOutputStream()) {
+			SystemStreams streams = new SystemStreams(new PipedInputStream(source),
+					new PrintStream(OutputStream.nullOutputStream()));
+			SystemInput input = new SystemInput(this.environment, streams, new ObjectMapper(), 10);
+			assertThatIllegalStateException().isThrownBy(() -> input.read(String[].class))
+				.withMessage("Timeout waiting for input");
+		}
+	}
+
+	@Test
+	void readWhenInputArrivesLateDeserializesJson() throws Exception {
+		PipedOutputStream source = new PipedOutputStream();
+		SystemStreams streams = new SystemStreams(new PipedInputStream(source),
+				new PrintStream(OutputStream.nullOutputStream()));
+		SystemInput input = new SystemInput(this.environment, streams, new ObjectMapper(), 5000);
+		Thread writer = new Thread(() -> {
+			try (source) {
+				Thread.sleep(50);
+				source.write("[\"foo\",\"bar\"]".getBytes(StandardCharsets.UTF_8));
+			}
+			catch (Exception ex) {
+				throw new IllegalStateException(ex);
+			}
+		});
+		writer.start();
+		String[] result = input.read(String[].class);
+		assertThat(result).containsExactly("foo", "bar");
 	}
 
 	@Test
@@ -64,4 +106,61 @@ class SystemInputTests {
 		assertThat(result).containsExactly("foo", "hello-world");
 	}
 
+	@Test
+	void readResolvesPlaceholdersOnlyInValues() throws Exception {
+		this.environment.setProperty("bar", "hello-world");
+		SystemInput input = new SystemInput(this.environment, new MockSystemStreams("{\"${bar}\":\"${bar}\"}"),
+				new ObjectMapper());
+		Map<?, ?> result = input.read(Map.class);
+		assertThat(result).isEqualTo(Map.of("${bar}", "hello-world"));
+	}
+
+	@Test
+	void readResolvesPlaceholdersContainingQuotes() throws Exception {
+		this.environment.setProperty("bar", "hello \"world\"");
+		SystemInput input = new SystemInput(this.environment, new MockSystemStreams("[\"foo\",\"${bar}\"]"),
+				new ObjectMapper());
+		String[] result = input.read(String[].class);
+		assertThat(result).containsExactly("foo", "hello \"world\"");
+	}
+
+	@Test
+	void readWhenUnresolvedStringDeserializerLeavesPlaceholders() throws Exception {
+		this.environment.setProperty("bar", "hello-world");
+		SystemInput input = new SystemInput(this.environment,
+				new MockSystemStreams("{\"template\":\"${bar}\",\"value\":\"${bar}\"}"), new ObjectMapper());
+		Message result = input.read(Message.class);
+		assertThat(result.template()).isEqualTo("${bar}");
+		assertThat(result.value()).isEqualTo("hello-world");
+	}
+
+	@Test
+	void readWhenInputExceedsMaximumSizeThrowsException() {
+		SystemInput input = new SystemInput(this.environment, new MockSystemStreams("[\"foo\",\"bar\"]"),
+				new ObjectMapper(), 1000, 8);
+		assertThatIOException().isThrownBy(() -> input.read(String[].class))
+			.withMessage("Input exceeds maximum size of 8 bytes");
+	}
+
+	@Test
+	void readAllWhenEachValueIsWithinMaximumSizeReadsAllValues() throws Exception {
+		SystemInput input = new SystemInput(this.environment,
+				new MockSystemStreams("[\"foo\"]\n{\"bar\":[1]}\n[\"baz\"]\n"), new ObjectMapper(), 1000, 12);
+		MappingIterator<Object> values = input.readAll(Object.class);
+		assertThat(values.readAll()).hasSize(3);
+	}
+
+	@Test
+	void readAllWhenValueExceedsMaximumSizeThrowsException() throws Exception {
+		SystemInput input = new SystemInput(this.environment,
+				new MockSystemStreams("[\"foo\"]\n{\"bar\":\"too long\",\"baz\":1}\n"), new ObjectMapper(), 1000, 12);
+		MappingIterator<Object> values = input.readAll(Object.class);
+		assertThat(values.nextValue()).isEqualTo(List.of("foo"));
+		assertThatIOException().isThrownBy(values::nextValue).withMessage("Input exceeds maximum size of 12 bytes");
+	}
+
+	record Message(@JsonDeserialize(using = UnresolvedStringDeserializer.class) String template, String value) {
+
+	}
+
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.system;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link VariableMap}.
+ *
+ * @author Scott Frederick
+ */
+class VariableMapTests {
+
+	@Test
+	void getReturnsValue() {
+		VariableMap map = new VariableMap(Map.of("BUILD_NAME", "42", "BUILD_TEAM_NAME", "main"));
+		assertThat(map.get("BUILD_NAME")).isEqualTo("42");
+		assertThat(map.get("BUILD_TEAM_NAME")).isEqualTo("main");
+		assertThat(map.size()).isEqualTo(2);
+	}
+
+	@Test
+	void getWhenUnknownReturnsNull() {
+		assertThat(new VariableMap(Map.of("BUILD_NAME", "42")).get("UNKNOWN")).isNull();
+		assertThat(VariableMap.EMPTY.get("UNKNOWN")).isNull();
+	}
+
+	@Test
+	void getWhenNamesCollideReturnsValue() {
+		// "Aa" and "BB" have the same hash code
+		VariableMap map = new VariableMap(Map.of("Aa", "one", "BB", "two"));
+		assertThat(map.get("Aa")).isEqualTo("one");
+		assertThat(map.get("BB")).isEqualTo("two");
+	}
+
+	@Test
+	void getWhenManyVariablesReturnsEachValue() {
+		Map<String, String> variables = new HashMap<>();
+		for (int i = 0; i < 1000; i++) {
+			variables.put("VARIABLE_" + i, String.valueOf(i));
+		}
+		VariableMap map = new VariableMap(variables);
+		for (int i = 0; i < 1000; i++) {
+			assertThat(map.get("VARIABLE_" + i)).isEqualTo(String.valueOf(i));
+		}
+		assertThat(map.get("VARIABLE_1000")).isNull();
+		assertThat(map.size()).isEqualTo(1000);
+	}
+
+}
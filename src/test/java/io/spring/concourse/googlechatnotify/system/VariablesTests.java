@@ -0,0 +1,63 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.system;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link Variables}.
+ *
+ * @author Scott Frederick
+ */
+class VariablesTests {
+
+	@Test
+	void applyReturnsEnvironmentProperty() {
+		MockEnvironment environment = new MockEnvironment().withProperty("BUILD_NAME", "42");
+		assertThat(Variables.of(environment).apply("BUILD_NAME")).isEqualTo("42");
+	}
+
+	@Test
+	void applyWhenUnknownReturnsNull() {
+		assertThat(Variables.of(Map.of("BUILD_NAME", "42")).apply("UNKNOWN")).isNull();
+	}
+
+	@Test
+	void withReturnsNewVariablesThatTakePrecedence() {
+		MockEnvironment environment = new MockEnvironment().withProperty("BUILD_NAME", "42")
+			.withProperty("BUILD_TEAM_NAME", "main");
+		Variables variables = Variables.of(environment);
+		Variables request = variables.with(Map.of("BUILD_NAME", "43"));
+		assertThat(request.apply("BUILD_NAME")).isEqualTo("43");
+		assertThat(request.apply("BUILD_TEAM_NAME")).isEqualTo("main");
+		assertThat(variables.apply("BUILD_NAME")).isEqualTo("42");
+	}
+
+	@Test
+	void resolvePlaceholdersResolvesVariables() {
+		Variables variables = Variables.of(Map.of("BUILD_NAME", "42"));
+		assertThat(variables.resolvePlaceholders("Build ${BUILD_NAME} ${UNKNOWN} ${MISSING:none}"))
+			.isEqualTo("Build 42 ${UNKNOWN} none");
+	}
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.spring.concourse.googlechatnotify.webhook.TokenBucket.Reservation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link FileTokenBucket}.
+ *
+ * @author Scott Frederick
+ */
+class FileTokenBucketTests {
+
+	private final AtomicLong epochNanos = new AtomicLong(Duration.ofDays(20000).toNanos());
+
+	@TempDir
+	private File tempDir;
+
+	@Test
+	void reserveCreatesStateFile() throws Exception {
+		File file = new File(this.tempDir, "rate-limit/bucket");
+		try (FileTokenBucket bucket = new FileTokenBucket(file.toPath(), this.epochNanos::get)) {
+			assertThat(bucket.reserve(new RateLimit(1, 1))).isEqualTo(new Reservation(Duration.ZERO, 0));
+		}
+		assertThat(file).exists();
+	}
+
+	@Test
+	void reserveSharesStateBetweenBuckets() throws Exception {
+		File file = new File(this.tempDir, "bucket");
+		RateLimit limit = new RateLimit(2, 1);
+		try (FileTokenBucket first = new FileTokenBucket(file.toPath(), this.epochNanos::get);
+				FileTokenBucket second = new FileTokenBucket(file.toPath(), this.epochNanos::get)) {
+			assertThat(first.reserve(limit)).isEqualTo(new Reservation(Duration.ZERO, 0));
+			assertThat(second.reserve(limit)).isEqualTo(new Reservation(Duration.ofMillis(500), 0));
+			assertThat(first.reserve(limit)).isEqualTo(new Reservation(Duration.ofSeconds(1), 1));
+		}
+	}
+
+	@Test
+	void reserveWhenReopenedRestoresState() throws Exception {
+		File file = new File(this.tempDir, "bucket");
+		RateLimit limit = new RateLimit(1, 1);
+		try (FileTokenBucket bucket = new FileTokenBucket(file.toPath(), this.epochNanos::get)) {
+			bucket.reserve(limit);
+		}
+		this.epochNanos.addAndGet(Duration.ofMillis(500).toNanos());
+		try (FileTokenBucket bucket = new FileTokenBucket(file.toPath(), this.epochNanos::get)) {
+			assertThat(bucket.reserve(limit)).isEqualTo(new Reservation(Duration.ofMillis(500), 0));
+		}
+	}
+
+}
@@ -16,22 +16,34 @@
 
 package io.spring.concourse.googlechatnotify.webhook;
 
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 
+import io.spring.concourse.googlechatnotify.system.Variables;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.client.RestClientTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.test.web.client.ExpectedCount;
 import org.springframework.test.web.client.MockRestServiceServer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.content;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.jsonPath;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withBadRequest;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
 
 /**
@@ -39,16 +51,21 @@ import static org.springframework.test.web.client.response.MockRestResponseCreat
  *
  * @author Scott Frederick
  */
-@RestClientTest(value = GoogleChatWebhook.class,
-		properties = { "ENV_KEY_1=value1", "ENV_KEY_2=value2", "ENV_KEY_QUOTED=env with \"quotes\"" })
+@RestClientTest(GoogleChatWebhook.class)
 class GoogleChatWebhookTests {
 
+	private final Variables variables = Variables
+		.of(Map.of("ENV_KEY_1", "value1", "ENV_KEY_2", "value2", "ENV_KEY_QUOTED", "env with \"quotes\""));
+
 	@Autowired
 	private MockRestServiceServer server;
 
 	@Autowired
 	private GoogleChatWebhook webhook;
 
+	@MockBean
+	private WebhookTransport transport;
+
 	@Test
 	void webhookCallSucceeds() {
 		this.server.expect(requestTo("https://chat.example.com/"))
@@ -56,9 +73,21 @@ class GoogleChatWebhookTests {
 			.andExpect(jsonPath("$.name").value("value"))
 			.andRespond(withSuccess("success", MediaType.TEXT_PLAIN));
 		WebhookResponse response = this.webhook.send("https://chat.example.com/",
-				WebhookMessage.from(Map.of("name", "value")));
+				WebhookMessage.from(Map.of("name", "value")), this.variables, WebhookSettings.DEFAULT);
 		assertThat(response.statusCode()).isEqualTo("200 OK");
 		assertThat(response.body()).isEqualTo("success");
+		assertThat(response.details()).containsKeys("response_time", "total_time");
+	}
+
+	@Test
+	void webhookCallSendsJsonBody() {
+		this.server.expect(requestTo("https://chat.example.com/"))
+			.andExpect(content().contentType("application/json;charset=UTF-8"))
+			.andExpect(content().string("{\"text\":\"value1\"}"))
+			.andRespond(withSuccess("success", MediaType.TEXT_PLAIN));
+		this.webhook.send("https://chat.example.com/", WebhookMessage.from(Map.of("text", "${ENV_KEY_1}")),
+				this.variables, WebhookSettings.DEFAULT);
+		this.server.verify();
 	}
 
 	@Test
@@ -69,7 +98,8 @@ class GoogleChatWebhookTests {
 			.andExpect(jsonPath("$.key1").value("value1"))
 			.andExpect(jsonPath("$.key2").value("value2"))
 			.andRespond(withSuccess("success", MediaType.TEXT_PLAIN));
-		WebhookResponse response = this.webhook.send("https://chat.example.com/", WebhookMessage.from(jsonValue));
+		WebhookResponse response = this.webhook.send("https://chat.example.com/", WebhookMessage.from(jsonValue),
+				this.variables, WebhookSettings.DEFAULT);
 		assertThat(response.statusCode()).isEqualTo("200 OK");
 		assertThat(response.body()).isEqualTo("success");
 	}
@@ -82,7 +112,8 @@ class GoogleChatWebhookTests {
 			.andExpect(jsonPath("$.key1").value("value1"))
 			.andExpect(jsonPath("$.key2").value("value2"))
 			.andRespond(withSuccess("success", MediaType.TEXT_PLAIN));
-		WebhookResponse response = this.webhook.send("https://chat.example.com/", WebhookMessage.from(jsonValue));
+		WebhookResponse response = this.webhook.send("https://chat.example.com/", WebhookMessage.from(jsonValue),
+				this.variables, WebhookSettings.DEFAULT);
 		assertThat(response.statusCode()).isEqualTo("200 OK");
 		assertThat(response.body()).isEqualTo("success");
 	}
@@ -95,7 +126,8 @@ class GoogleChatWebhookTests {
 			.andExpect(jsonPath("$.key1").value("value with \"quotes\""))
 			.andExpect(jsonPath("$.key2").value("env with \"quotes\""))
 			.andRespond(withSuccess("success", MediaType.TEXT_PLAIN));
-		WebhookResponse response = this.webhook.send("https://chat.example.com/", WebhookMessage.from(jsonValue));
+		WebhookResponse response = this.webhook.send("https://chat.example.com/", WebhookMessage.from(jsonValue),
+				this.variables, WebhookSettings.DEFAULT);
 		assertThat(response.statusCode()).isEqualTo("200 OK");
 		assertThat(response.body()).isEqualTo("success");
 	}
@@ -106,9 +138,235 @@ class GoogleChatWebhookTests {
 			.andExpect(method(HttpMethod.POST))
 			.andRespond(withBadRequest());
 		WebhookResponse response = this.webhook.send("https://chat.example.com/",
-				WebhookMessage.from(Map.of("test", "test")));
+				WebhookMessage.from(Map.of("test", "test")), this.variables, WebhookSettings.DEFAULT);
 		assertThat(response.statusCode()).isEqualTo(HttpStatus.BAD_REQUEST.getReasonPhrase());
 		assertThat(response.body()).isEmpty();
 	}
 
+	@Test
+	void webhookCallWithSummaryResponseModeReadsSummaryFields() {
+		String body = """
+				{
+				  "name": "spaces/AAA/messages/CCC",
+				  "sender": { "name": "users/DDD", "displayName": "Notify" },
+				  "text": "a long message",
+				  "cardsV2": [ { "card": { "name": "ignored" } } ],
+				  "thread": { "name": "spaces/AAA/threads/BBB", "retentionSettings": { "state": "PERMANENT" } },
+				  "createTime": "2023-10-01T12:00:00.000000Z"
+				}
+				""";
+		this.server.expect(requestTo("https://chat.example.com/"))
+			.andRespond(withSuccess(body, MediaType.APPLICATION_JSON));
+		WebhookSettings settings = new WebhookSettings(null, null, null, null, null, ResponseMode.SUMMARY);
+		WebhookResponse response = this.webhook.send("https://chat.example.com/",
+				WebhookMessage.from(Map.of("text", "test")), this.variables, settings);
+		assertThat(response.statusCode()).isEqualTo("200 OK");
+		assertThat(response.body()).isNull();
+		assertThat(response.details()).containsEntry("message", "spaces/AAA/messages/CCC")
+			.containsEntry("thread", "spaces/AAA/threads/BBB")
+			.containsEntry("create_time", "2023-10-01T12:00:00.000000Z")
+			.doesNotContainKey("text");
+	}
+
+	@Test
+	void webhookCallWithSummaryResponseModeWhenResponseIsNotJsonIgnoresBody() {
+		this.server.expect(requestTo("https://chat.example.com/"))
+			.andRespond(withSuccess("success", MediaType.TEXT_PLAIN));
+		WebhookSettings settings = new WebhookSettings(null, null, null, null, null, ResponseMode.SUMMARY);
+		WebhookResponse response = this.webhook.send("https://chat.example.com/",
+				WebhookMessage.from(Map.of("text", "test")), this.variables, settings);
+		assertThat(response.statusCode()).isEqualTo("200 OK");
+		assertThat(response.body()).isNull();
+		assertThat(response.details()).containsOnlyKeys("response_time", "total_time", "attempts", "backoff");
+	}
+
+	@Test
+	void webhookFailsWithSummaryResponseModeLimitsBody() {
+		this.server.expect(requestTo("https://chat.example.com/")).andRespond(withBadRequest().body("x".repeat(2000)));
+		WebhookSettings settings = new WebhookSettings(null, null, null, null, null, ResponseMode.SUMMARY);
+		WebhookResponse response = this.webhook.send("https://chat.example.com/",
+				WebhookMessage.from(Map.of("text", "test")), this.variables, settings);
+		assertThat(response.statusCode()).isEqualTo(HttpStatus.BAD_REQUEST.getReasonPhrase());
+		assertThat(response.body()).isEqualTo("x".repeat(1024) + "...");
+	}
+
+	@Test
+	void webhookCallWithPlaceholdersInListsSucceeds() {
+		List<Map<String, Object>> cards = List.of(Map.of("cardId", "${ENV_KEY_1}", "card",
+				Map.of("sections", List.of(Map.of("header", "${ENV_KEY_2}")))));
+		this.server.expect(requestTo("https://chat.example.com/"))
+			.andExpect(method(HttpMethod.POST))
+			.andExpect(jsonPath("$.cardsV2[0].cardId").value("value1"))
+			.andExpect(jsonPath("$.cardsV2[0].card.sections[0].header").value("value2"))
+			.andRespond(withSuccess("success", MediaType.TEXT_PLAIN));
+		WebhookMessage message = WebhookMessage.from(Map.of("cardsV2", cards));
+		this.webhook.send("https://chat.example.com/", message, this.variables, WebhookSettings.DEFAULT);
+		this.server.verify();
+		assertThat(message).isEqualTo(WebhookMessage.from(Map.of("cardsV2", cards)));
+	}
+
+	@Test
+	void webhookCallWhenRateLimitedRetriesAfterDelay() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.RETRY_AFTER, "0");
+		this.server.expect(requestTo("https://chat.example.com/"))
+			.andExpect(method(HttpMethod.POST))
+			.andRespond(withStatus(HttpStatus.TOO_MANY_REQUESTS).headers(headers));
+		this.server.expect(requestTo("https://chat.example.com/"))
+			.andExpect(method(HttpMethod.POST))
+			.andExpect(header(HttpHeaders.CONTENT_LENGTH, "15"))
+			.andRespond(withSuccess("success", MediaType.TEXT_PLAIN));
+		WebhookResponse response = this.webhook.send("https://chat.example.com/",
+				WebhookMessage.from(Map.of("test", "test")), this.variables, WebhookSettings.DEFAULT);
+		this.server.verify();
+		assertThat(response.statusCode()).isEqualTo("200 OK");
+		assertThat(response.details()).containsEntry("attempts", "2").containsEntry("backoff", "0ms");
+	}
+
+	@Test
+	void webhookCallWhenUnavailableStopsAfterMaxAttempts() {
+		this.server.expect(ExpectedCount.times(2), requestTo("https://chat.example.com/"))
+			.andExpect(method(HttpMethod.POST))
+			.andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+		RetryPolicy retryPolicy = new RetryPolicy(2, Duration.ofMillis(1), Duration.ofMillis(1), null);
+		WebhookResponse response = this.webhook.send("https://chat.example.com/",
+				WebhookMessage.from(Map.of("test", "test")), this.variables,
+				new WebhookSettings(null, null, retryPolicy, null, null));
+		this.server.verify();
+		assertThat(response.statusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase());
+		assertThat(response.details()).containsEntry("attempts", "2");
+	}
+
+	@Test
+	void webhookCallWithRateLimitPacesCalls() {
+		this.server.expect(ExpectedCount.times(2), requestTo("https://chat.example.com/"))
+			.andExpect(method(HttpMethod.POST))
+			.andRespond(withSuccess("success", MediaType.TEXT_PLAIN));
+		WebhookSettings settings = new WebhookSettings(null, null, null, new RateLimit(20, 1), null);
+		WebhookResponse first = this.webhook.send("https://chat.example.com/",
+				WebhookMessage.from(Map.of("test", "test")), this.variables, settings);
+		WebhookResponse second = this.webhook.send("https://chat.example.com/",
+				WebhookMessage.from(Map.of("test", "test")), this.variables, settings);
+		this.server.verify();
+		assertThat(first.details()).containsEntry("rate_limit_wait", "0ms").containsEntry("rate_limit_queue", "0");
+		assertThat(second.details()).containsKey("rate_limit_wait").containsEntry("rate_limit_queue", "0");
+		assertThat(second.details().get("rate_limit_wait")).isNotEqualTo("0ms");
+	}
+
+	@Test
+	void webhookCallWithRateLimitAndStateDirectoryStoresSharedState(@TempDir File stateDirectory) {
+		this.server.expect(requestTo("https://chat.example.com/space?key=secret"))
+			.andExpect(method(HttpMethod.POST))
+			.andRespond(withSuccess("success", MediaType.TEXT_PLAIN));
+		WebhookSettings settings = new WebhookSettings(null, null, null, new RateLimit(1, 1), stateDirectory.toPath());
+		WebhookResponse response = this.webhook.send("https://chat.example.com/space?key=secret",
+				WebhookMessage.from(Map.of("test", "test")), this.variables, settings);
+		assertThat(response.details()).containsEntry("rate_limit_queue", "0");
+		assertThat(new File(stateDirectory, "rate-limit").listFiles()).hasSize(1);
+	}
+
+	@Test
+	void webhookCallWithStateDirectoryWhenUnavailableQueuesMessageAndDeliversLater(@TempDir File stateDirectory) {
+		RetryPolicy retryPolicy = new RetryPolicy(1, null, null, null);
+		WebhookSettings settings = new WebhookSettings(null, null, retryPolicy, null, stateDirectory.toPath());
+		this.server.expect(requestTo("https://chat.example.com/"))
+			.andExpect(jsonPath("$.text").value("first"))
+			.andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+		this.server.expect(requestTo("https://chat.example.com/"))
+			.andExpect(jsonPath("$.text").value("first"))
+			.andRespond(withSuccess("success", MediaType.TEXT_PLAIN));
+		this.server.expect(requestTo("https://chat.example.com/"))
+			.andExpect(jsonPath("$.text").value("second"))
+			.andRespond(withSuccess("success", MediaType.TEXT_PLAIN));
+		WebhookResponse first = this.webhook.send("https://chat.example.com/",
+				WebhookMessage.from(Map.of("text", "first")), this.variables, settings);
+		assertThat(first.details()).containsEntry("outbox", "queued");
+		WebhookResponse second = this.webhook.send("https://chat.example.com/",
+				WebhookMessage.from(Map.of("text", "second")), this.variables, settings);
+		this.server.verify();
+		assertThat(second.statusCode()).isEqualTo("200 OK");
+		assertThat(second.details()).doesNotContainKey("outbox");
+	}
+
+	@Test
+	void webhookCallWithStateDirectoryWhenBadRequestDoesNotQueueMessage(@TempDir File stateDirectory) {
+		WebhookSettings settings = new WebhookSettings(null, null, null, null, stateDirectory.toPath());
+		this.server.expect(requestTo("https://chat.example.com/")).andRespond(withBadRequest());
+		WebhookResponse response = this.webhook.send("https://chat.example.com/",
+				WebhookMessage.from(Map.of("text", "test")), this.variables, settings);
+		this.server.verify();
+		assertThat(response.details()).doesNotContainKey("outbox");
+		assertThat(new File(stateDirectory, "outbox")).doesNotExist();
+	}
+
+	@Test
+	void webhookCallWithStateDirectoryWhenOtherSpaceUnavailableDoesNotDeliverQueuedMessage(
+			@TempDir File stateDirectory) {
+		RetryPolicy retryPolicy = new RetryPolicy(1, null, null, null);
+		WebhookSettings settings = new WebhookSettings(null, null, retryPolicy, null, stateDirectory.toPath());
+		this.server.expect(requestTo("https://chat.example.com/one?key=secret"))
+			.andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+		this.server.expect(requestTo("https://chat.example.com/two?key=secret"))
+			.andExpect(jsonPath("$.text").value("second"))
+			.andRespond(withSuccess("success", MediaType.TEXT_PLAIN));
+		this.webhook.send("https://chat.example.com/one?key=secret", WebhookMessage.from(Map.of("text", "first")),
+				this.variables, settings);
+		WebhookResponse response = this.webhook.send("https://chat.example.com/two?key=secret",
+				WebhookMessage.from(Map.of("text", "second")), this.variables, settings);
+		this.server.verify();
+		assertThat(response.statusCode()).isEqualTo("200 OK");
+		assertThat(new File(stateDirectory, "outbox").listFiles()).hasSize(1);
+	}
+
+	@Test
+	void drainDeliversMessagesQueuedForEachSpace(@TempDir File stateDirectory) {
+		WebhookSettings settings = new WebhookSettings(null, null, null, null, stateDirectory.toPath());
+		this.server.expect(ExpectedCount.times(2), requestTo(startsWith("https://chat.example.com/")))
+			.andRespond(withSuccess("success", MediaType.TEXT_PLAIN));
+		this.webhook.enqueue("https://chat.example.com/one", WebhookMessage.from(Map.of("text", "first")),
+				this.variables, settings);
+		this.webhook.enqueue("https://chat.example.com/two", WebhookMessage.from(Map.of("text", "second")),
+				this.variables, settings);
+		assertThat(new File(stateDirectory, "outbox").listFiles()).hasSize(2);
+		assertThat(this.webhook.hasQueuedMessages(settings)).isTrue();
+		assertThat(this.webhook.drain(settings)).isTrue();
+		assertThat(this.webhook.hasQueuedMessages(settings)).isFalse();
+		this.server.verify();
+	}
+
+	@Test
+	void enqueueAndDrainDeliversMessage(@TempDir File stateDirectory) {
+		WebhookSettings settings = new WebhookSettings(null, null, null, null, stateDirectory.toPath());
+		this.server.expect(requestTo("https://chat.example.com/"))
+			.andExpect(jsonPath("$.text").value("value1"))
+			.andRespond(withSuccess("success", MediaType.TEXT_PLAIN));
+		WebhookResponse response = this.webhook.enqueue("https://chat.example.com/",
+				WebhookMessage.from(Map.of("text", "${ENV_KEY_1}")), this.variables, settings);
+		assertThat(response.statusCode()).isEqualTo("Queued");
+		assertThat(response.details()).containsEntry("outbox", "queued");
+		assertThat(this.webhook.drain(settings)).isTrue();
+		this.server.verify();
+	}
+
+	@Test
+	void webhookCallWithoutRateLimitDoesNotReportPacing() {
+		this.server.expect(requestTo("https://chat.example.com/"))
+			.andExpect(method(HttpMethod.POST))
+			.andRespond(withSuccess("success", MediaType.TEXT_PLAIN));
+		WebhookResponse response = this.webhook.send("https://chat.example.com/",
+				WebhookMessage.from(Map.of("test", "test")), this.variables, WebhookSettings.DEFAULT);
+		assertThat(response.details()).doesNotContainKeys("rate_limit_wait", "rate_limit_queue");
+	}
+
+	@Test
+	void webhookCallWhenBadRequestDoesNotRetry() {
+		this.server.expect(ExpectedCount.once(), requestTo("https://chat.example.com/"))
+			.andExpect(method(HttpMethod.POST))
+			.andRespond(withBadRequest());
+		WebhookResponse response = this.webhook.send("https://chat.example.com/",
+				WebhookMessage.from(Map.of("test", "test")), this.variables, WebhookSettings.DEFAULT);
+		this.server.verify();
+		assertThat(response.details()).containsEntry("attempts", "1");
+	}
+
 }
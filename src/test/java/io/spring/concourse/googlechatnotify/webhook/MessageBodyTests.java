@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link MessageBody}.
+ *
+ * @author Scott Frederick
+ */
+class MessageBodyTests {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final UnaryOperator<String> resolver = (text) -> text.replace("${BUILD_NAME}", "42");
+
+	@Test
+	void writeToWritesResolvedMessage() throws Exception {
+		MessageBody body = MessageBody.of(WebhookMessage.from(Map.of("text", "Build ${BUILD_NAME}")), this.objectMapper,
+				this.resolver);
+		JSONAssert.assertEquals("""
+				{ "text": "Build 42" }
+				""", write(body), true);
+	}
+
+	@Test
+	void getContentLengthIsKnownAfterWrite() throws Exception {
+		MessageBody body = MessageBody.of(WebhookMessage.from(Map.of("text", "Build ${BUILD_NAME}")), this.objectMapper,
+				this.resolver);
+		assertThat(body.getContentLength()).isEqualTo(-1);
+		String json = write(body);
+		assertThat(body.getContentLength()).isEqualTo(json.getBytes(StandardCharsets.UTF_8).length);
+		assertThat(write(body)).isEqualTo(json);
+	}
+
+	@Test
+	void getContentLengthWhenCreatedFromJsonIsKnown() {
+		MessageBody body = MessageBody.of("{\"text\":\"ok\"}");
+		assertThat(body.getContentLength()).isEqualTo(13);
+	}
+
+	@Test
+	void getPreviewWhenMessageIsSmallReturnsMessage() {
+		MessageBody body = MessageBody.of(WebhookMessage.from(Map.of("text", "Build ${BUILD_NAME}")), this.objectMapper,
+				this.resolver);
+		assertThat(body.getPreview()).isEqualTo("{\"text\":\"Build 42\"}");
+	}
+
+	@Test
+	void getPreviewWhenMessageIsLargeReturnsStartOfMessage() {
+		String text = "x".repeat(100_000);
+		MessageBody body = MessageBody.of(WebhookMessage.from(Map.of("text", text)), this.objectMapper, this.resolver);
+		String preview = body.getPreview();
+		assertThat(preview).startsWith("{\"text\":\"xxx").endsWith("...").hasSize(1027);
+		assertThat(MessageBody.of("{\"text\":\"" + text + "\"}").getPreview()).isEqualTo(preview);
+	}
+
+	@Test
+	void asStringReturnsMessage() {
+		MessageBody body = MessageBody.of(WebhookMessage.from(Map.of("text", "Build ${BUILD_NAME}")), this.objectMapper,
+				this.resolver);
+		assertThat(body.asString()).isEqualTo("{\"text\":\"Build 42\"}");
+		assertThat(MessageBody.of("{\"text\":\"Build 42\"}").asString()).isEqualTo("{\"text\":\"Build 42\"}");
+	}
+
+	private String write(MessageBody body) throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		body.writeTo(outputStream);
+		return outputStream.toString(StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.spring.concourse.googlechatnotify.system.Variables;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link MessageFingerprint}.
+ *
+ * @author Scott Frederick
+ */
+class MessageFingerprintTests {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void ofWhenContentIsSameReturnsSameFingerprint() {
+		WebhookMessage message = WebhookMessage
+			.from(Map.of("text", "Build ${BUILD_NAME}", "cardsV2", List.of(Map.of("cardId", "one"))));
+		String first = MessageFingerprint.of(message, this.objectMapper, Variables.of(Map.of("BUILD_NAME", "42")));
+		String second = MessageFingerprint.of(WebhookMessage.from(message), this.objectMapper,
+				Variables.of(Map.of("BUILD_NAME", "42")));
+		assertThat(first).hasSize(64).isEqualTo(second);
+	}
+
+	@Test
+	void ofResolvesPlaceholders() {
+		WebhookMessage message = WebhookMessage.from(Map.of("text", "Build ${BUILD_NAME}"));
+		String resolved = MessageFingerprint.of(message, this.objectMapper, Variables.of(Map.of("BUILD_NAME", "42")));
+		String other = MessageFingerprint.of(message, this.objectMapper, Variables.of(Map.of("BUILD_NAME", "43")));
+		String literal = MessageFingerprint.of(WebhookMessage.from(Map.of("text", "Build 42")), this.objectMapper,
+				Variables.of(Map.of()));
+		assertThat(resolved).isNotEqualTo(other).isEqualTo(literal);
+	}
+
+}
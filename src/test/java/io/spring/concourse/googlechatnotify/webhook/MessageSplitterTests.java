@@ -0,0 +1,176 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.spring.concourse.googlechatnotify.system.Variables;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+/**
+ * Tests for {@link MessageSplitter}.
+ *
+ * @author Scott Frederick
+ */
+class MessageSplitterTests {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final Variables variables = Variables.of(Map.of("BUILD_NAME", "42"));
+
+	@Test
+	void splitWhenMessageIsSmallReturnsMessageUnchanged() {
+		WebhookMessage message = WebhookMessage.from(Map.of("text", "Build ${BUILD_NAME}"));
+		assertThat(new MessageSplitter(this.objectMapper, 100).split(message, this.variables)).containsExactly(message);
+	}
+
+	@Test
+	void splitWhenTextIsTooLargeSplitsOnLineBoundaries() throws Exception {
+		String text = createText(20);
+		WebhookMessage message = WebhookMessage.from(Map.of("text", text));
+		List<WebhookMessage> parts = new MessageSplitter(this.objectMapper, 150).split(message, this.variables);
+		assertThat(parts).hasSizeGreaterThan(1);
+		StringBuilder joined = new StringBuilder();
+		for (WebhookMessage part : parts) {
+			String json = write(part);
+			assertThat(json.length()).isLessThanOrEqualTo(150);
+			String partText = readTree(json).get("text").textValue();
+			assertThat(partText).endsWith("\n");
+			joined.append(partText);
+		}
+		assertThat(joined).hasToString(text);
+	}
+
+	@Test
+	void splitResolvesPlaceholdersBeforeMeasuring() throws Exception {
+		Variables variables = Variables.of(Map.of("LOG", "x".repeat(200)));
+		WebhookMessage message = WebhookMessage.from(Map.of("text", "Result: ${LOG}\n${BUILD_NAME}"));
+		List<WebhookMessage> parts = new MessageSplitter(this.objectMapper, 150).split(message, variables);
+		assertThat(parts).hasSizeGreaterThan(1);
+		StringBuilder joined = new StringBuilder();
+		for (WebhookMessage part : parts) {
+			String json = write(part);
+			assertThat(json.length()).isLessThanOrEqualTo(150);
+			joined.append(readTree(json).get("text").textValue());
+		}
+		assertThat(joined).hasToString("Result: " + "x".repeat(200) + "\n${BUILD_NAME}");
+	}
+
+	@Test
+	void splitAddsSameThreadKeyToEachPart() throws Exception {
+		WebhookMessage message = WebhookMessage.from(Map.of("text", createText(20)));
+		List<WebhookMessage> parts = new MessageSplitter(this.objectMapper, 150).split(message, this.variables);
+		assertThat(parts).hasSizeGreaterThan(1);
+		String threadKey = readTree(write(parts.get(0))).at("/thread/threadKey").textValue();
+		assertThat(threadKey).isNotEmpty();
+		for (WebhookMessage part : parts) {
+			assertThat(readTree(write(part)).at("/thread/threadKey").textValue()).isEqualTo(threadKey);
+		}
+	}
+
+	@Test
+	void splitWhenMessageHasThreadKeepsThread() throws Exception {
+		WebhookMessage message = WebhookMessage
+			.from(Map.of("text", createText(20), "thread", Map.of("threadKey", "build")));
+		List<WebhookMessage> parts = new MessageSplitter(this.objectMapper, 80).split(message, this.variables);
+		assertThat(parts).hasSizeGreaterThan(1);
+		for (WebhookMessage part : parts) {
+			assertThat(readTree(write(part)).at("/thread/threadKey").textValue()).isEqualTo("build");
+		}
+	}
+
+	@Test
+	void splitWhenCardsAreTooLargeSendsCardsSeparately() throws Exception {
+		List<Object> cards = List.of(
+				Map.of("cardId", "one", "card", Map.of("header", Map.of("title", "a".repeat(100)))),
+				Map.of("cardId", "two", "card", Map.of("header", Map.of("title", "b".repeat(100)))));
+		WebhookMessage message = WebhookMessage.from(Map.of("text", "Build ${BUILD_NAME}", "cardsV2", cards));
+		List<WebhookMessage> parts = new MessageSplitter(this.objectMapper, 250).split(message, this.variables);
+		assertThat(parts).hasSize(3);
+		assertThat(readTree(write(parts.get(0))).get("text").textValue()).isEqualTo("Build 42");
+		assertThat(readTree(write(parts.get(1))).at("/cardsV2/0/cardId").textValue()).isEqualTo("one");
+		assertThat(readTree(write(parts.get(2))).at("/cardsV2/0/cardId").textValue()).isEqualTo("two");
+	}
+
+	@Test
+	void splitWhenCardIsTooLargeSplitsSections() throws Exception {
+		List<Object> sections = List.of(Map.of("header", "a".repeat(60)), Map.of("header", "b".repeat(60)),
+				Map.of("header", "c".repeat(60)));
+		List<Object> cards = List.of(Map.of("cardId", "one", "card", Map.of("sections", sections)));
+		WebhookMessage message = WebhookMessage.from(Map.of("cardsV2", cards));
+		List<WebhookMessage> parts = new MessageSplitter(this.objectMapper, 240).split(message, this.variables);
+		assertThat(parts).hasSize(3);
+		for (WebhookMessage part : parts) {
+			JsonNode json = readTree(write(part));
+			assertThat(json.at("/cardsV2/0/cardId").textValue()).isEqualTo("one");
+			assertThat(json.at("/cardsV2/0/card/sections")).hasSize(1);
+		}
+	}
+
+	@Test
+	void splitWhenCardCannotBeSplitThrowsException() {
+		List<Object> cards = List
+			.of(Map.of("cardId", "one", "card", Map.of("header", Map.of("title", "a".repeat(200)))));
+		WebhookMessage message = WebhookMessage.from(Map.of("cardsV2", cards));
+		MessageSplitter splitter = new MessageSplitter(this.objectMapper, 150);
+		assertThatIllegalArgumentException().isThrownBy(() -> splitter.split(message, this.variables))
+			.withMessageContaining("cannot be split");
+	}
+
+	@Test
+	void getThreadUrlAddsReplyOption() {
+		assertThat(MessageSplitter.getThreadUrl("https://chat.example.com/messages?key=k")).isEqualTo(
+				"https://chat.example.com/messages?key=k&messageReplyOption=REPLY_MESSAGE_FALLBACK_TO_NEW_THREAD");
+		assertThat(MessageSplitter.getThreadUrl("https://chat.example.com/messages"))
+			.isEqualTo("https://chat.example.com/messages?messageReplyOption=REPLY_MESSAGE_FALLBACK_TO_NEW_THREAD");
+	}
+
+	@Test
+	void getThreadUrlWhenUrlHasReplyOptionReturnsUrl() {
+		String url = "https://chat.example.com/messages?messageReplyOption=REPLY_MESSAGE_OR_FAIL";
+		assertThat(MessageSplitter.getThreadUrl(url)).isEqualTo(url);
+	}
+
+	private String createText(int lines) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 1; i <= lines; i++) {
+			text.append("line ").append(i).append("\n");
+		}
+		return text.toString();
+	}
+
+	private String write(WebhookMessage message) throws Exception {
+		StringWriter writer = new StringWriter();
+		try (JsonGenerator generator = this.objectMapper.createGenerator(writer)) {
+			message.write(generator, (text) -> text.replace("${BUILD_NAME}", "42"));
+		}
+		return writer.toString();
+	}
+
+	private JsonNode readTree(String json) throws Exception {
+		return this.objectMapper.readTree(json);
+	}
+
+}
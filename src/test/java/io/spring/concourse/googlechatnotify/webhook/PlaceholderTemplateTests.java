@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+/**
+ * Tests for {@link PlaceholderTemplate}.
+ *
+ * @author Scott Frederick
+ */
+class PlaceholderTemplateTests {
+
+	private final Map<String, String> variables = Map.of("BUILD_NAME", "42", "BUILD_JOB_NAME", "test", "NESTED",
+			"job ${BUILD_JOB_NAME}", "KEY", "BUILD_NAME", "LOOP", "${LOOP}");
+
+	private final Function<String, String> resolver = this.variables::get;
+
+	@Test
+	void hasPlaceholders() {
+		assertThat(PlaceholderTemplate.hasPlaceholders("Build ${BUILD_NAME}")).isTrue();
+		assertThat(PlaceholderTemplate.hasPlaceholders("Build {BUILD_NAME}")).isFalse();
+		assertThat(PlaceholderTemplate.hasPlaceholders(null)).isFalse();
+	}
+
+	@Test
+	void renderWithoutPlaceholdersReturnsText() {
+		assertThat(render("Build succeeded")).isEqualTo("Build succeeded");
+	}
+
+	@Test
+	void renderReplacesPlaceholders() {
+		assertThat(render("Build ${BUILD_NAME} of ${BUILD_JOB_NAME}!")).isEqualTo("Build 42 of test!");
+		assertThat(render("${BUILD_NAME}${BUILD_NAME}")).isEqualTo("4242");
+	}
+
+	@Test
+	void renderWhenUnresolvableLeavesPlaceholder() {
+		assertThat(render("Build ${UNKNOWN} ${BUILD_NAME}")).isEqualTo("Build ${UNKNOWN} 42");
+	}
+
+	@Test
+	void renderWithDefaultValue() {
+		assertThat(render("${UNKNOWN:none}")).isEqualTo("none");
+		assertThat(render("${BUILD_NAME:none}")).isEqualTo("42");
+		assertThat(render("${UNKNOWN:${BUILD_JOB_NAME}}")).isEqualTo("test");
+		assertThat(render("${UNKNOWN:}")).isEmpty();
+	}
+
+	@Test
+	void renderWithNestedName() {
+		assertThat(render("${${KEY}}")).isEqualTo("42");
+	}
+
+	@Test
+	void renderWhenValueContainsPlaceholdersResolvesValue() {
+		assertThat(render("${NESTED}")).isEqualTo("job test");
+	}
+
+	@Test
+	void renderWhenUnclosedLeavesText() {
+		assertThat(render("${BUILD_NAME} ${BUILD_NAME")).isEqualTo("42 ${BUILD_NAME");
+	}
+
+	@Test
+	void renderWhenCircularThrowsException() {
+		assertThatIllegalArgumentException().isThrownBy(() -> render("${LOOP}"))
+			.withMessage("Circular placeholder reference 'LOOP'");
+	}
+
+	private String render(String text) {
+		return PlaceholderTemplate.compile(text).render(this.resolver);
+	}
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+/**
+ * Tests for {@link ResponseMode}.
+ *
+ * @author Scott Frederick
+ */
+class ResponseModeTests {
+
+	@Test
+	void ofWhenNameIsEmptyReturnsFull() {
+		assertThat(ResponseMode.of(null)).isEqualTo(ResponseMode.FULL);
+		assertThat(ResponseMode.of("")).isEqualTo(ResponseMode.FULL);
+	}
+
+	@Test
+	void ofIgnoresCase() {
+		assertThat(ResponseMode.of("summary")).isEqualTo(ResponseMode.SUMMARY);
+		assertThat(ResponseMode.of("Full")).isEqualTo(ResponseMode.FULL);
+	}
+
+	@Test
+	void ofWhenNameIsUnknownThrowsException() {
+		assertThatIllegalArgumentException().isThrownBy(() -> ResponseMode.of("none"))
+			.withMessage("Unknown response mode 'none'");
+	}
+
+}
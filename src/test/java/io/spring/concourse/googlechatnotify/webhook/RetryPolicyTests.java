@@ -0,0 +1,114 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.http.HttpStatus;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link RetryPolicy}.
+ *
+ * @author Scott Frederick
+ */
+class RetryPolicyTests {
+
+	private final RetryPolicy policy = new RetryPolicy(3, Duration.ofSeconds(1), Duration.ofSeconds(5),
+			Duration.ofSeconds(30));
+
+	@Test
+	void createWithDefaults() {
+		assertThat(RetryPolicy.DEFAULT.maxAttempts()).isEqualTo(3);
+		assertThat(RetryPolicy.DEFAULT.initialBackoff()).isEqualTo(Duration.ofSeconds(1));
+		assertThat(RetryPolicy.DEFAULT.maxBackoff()).isEqualTo(Duration.ofSeconds(10));
+		assertThat(RetryPolicy.DEFAULT.budget()).isEqualTo(Duration.ofSeconds(60));
+		assertThat(RetryPolicy.of(null, null)).isEqualTo(RetryPolicy.DEFAULT);
+	}
+
+	@Test
+	void getBackoffWithDefaultPolicyUsesDefaultBackoff() {
+		assertThat(RetryPolicy.DEFAULT.budget()).isNotNull();
+		assertThat(RetryPolicy.DEFAULT.getBackoff(1, null)).isBetween(Duration.ofMillis(500), Duration.ofSeconds(1));
+	}
+
+	@Test
+	void isRetryableWhenTransientFailureReturnsTrue() {
+		assertThat(this.policy.isRetryable(HttpStatus.TOO_MANY_REQUESTS)).isTrue();
+		assertThat(this.policy.isRetryable(HttpStatus.SERVICE_UNAVAILABLE)).isTrue();
+		assertThat(this.policy.isRetryable(HttpStatus.GATEWAY_TIMEOUT)).isTrue();
+	}
+
+	@Test
+	void isRetryableWhenClientErrorReturnsFalse() {
+		assertThat(this.policy.isRetryable(HttpStatus.BAD_REQUEST)).isFalse();
+		assertThat(this.policy.isRetryable(HttpStatus.NOT_FOUND)).isFalse();
+	}
+
+	@Test
+	void getBackoffGrowsExponentiallyWithJitter() {
+		assertThat(this.policy.getBackoff(1, null)).isBetween(Duration.ofMillis(500), Duration.ofSeconds(1));
+		assertThat(this.policy.getBackoff(2, null)).isBetween(Duration.ofSeconds(1), Duration.ofSeconds(2));
+		assertThat(this.policy.getBackoff(3, null)).isBetween(Duration.ofSeconds(2), Duration.ofSeconds(4));
+		assertThat(this.policy.getBackoff(10, null)).isBetween(Duration.ofMillis(2500), Duration.ofSeconds(5));
+	}
+
+	@Test
+	void getBackoffWhenRetryAfterReturnsRetryAfter() {
+		assertThat(this.policy.getBackoff(1, Duration.ofSeconds(7))).isEqualTo(Duration.ofSeconds(7));
+	}
+
+	@Test
+	void shouldRetryWhenAttemptsAndBudgetRemainReturnsTrue() {
+		assertThat(this.policy.shouldRetry(1, Duration.ofSeconds(1), Duration.ofSeconds(1))).isTrue();
+	}
+
+	@Test
+	void shouldRetryWhenAttemptsExhaustedReturnsFalse() {
+		assertThat(this.policy.shouldRetry(3, Duration.ofSeconds(1), Duration.ofSeconds(1))).isFalse();
+	}
+
+	@Test
+	void shouldRetryWhenBudgetExceededReturnsFalse() {
+		assertThat(this.policy.shouldRetry(1, Duration.ofSeconds(25), Duration.ofSeconds(5))).isFalse();
+	}
+
+	@Test
+	void parseRetryAfterWithSeconds() {
+		assertThat(RetryPolicy.parseRetryAfter("12", Clock.systemUTC())).isEqualTo(Duration.ofSeconds(12));
+	}
+
+	@Test
+	void parseRetryAfterWithDate() {
+		Clock clock = Clock.fixed(Instant.parse("2023-10-21T07:28:00Z"), ZoneOffset.UTC);
+		assertThat(RetryPolicy.parseRetryAfter("Sat, 21 Oct 2023 07:28:30 GMT", clock))
+			.isEqualTo(Duration.ofSeconds(30));
+	}
+
+	@Test
+	void parseRetryAfterWhenInvalidReturnsNull() {
+		assertThat(RetryPolicy.parseRetryAfter("soon", Clock.systemUTC())).isNull();
+		assertThat(RetryPolicy.parseRetryAfter(null, Clock.systemUTC())).isNull();
+	}
+
+}
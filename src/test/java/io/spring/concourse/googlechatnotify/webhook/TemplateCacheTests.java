@@ -0,0 +1,54 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link TemplateCache}.
+ *
+ * @author Scott Frederick
+ */
+class TemplateCacheTests {
+
+	@Test
+	void getReturnsCachedTemplate() {
+		TemplateCache cache = new TemplateCache();
+		assertThat(cache.get("Build ${BUILD_NAME}")).isSameAs(cache.get("Build ${BUILD_NAME}"));
+	}
+
+	@Test
+	void getWhenFullEvictsTemplates() {
+		TemplateCache cache = new TemplateCache(2);
+		PlaceholderTemplate template = cache.get("${ONE}");
+		cache.get("${TWO}");
+		cache.get("${THREE}");
+		assertThat(cache.get("${ONE}")).isNotSameAs(template);
+	}
+
+	@Test
+	void resolveRendersTemplate() {
+		TemplateCache cache = new TemplateCache();
+		assertThat(cache.resolve("Build ${BUILD_NAME}", Map.of("BUILD_NAME", "42")::get)).isEqualTo("Build 42");
+		assertThat(cache.resolve("Build", Map.of("BUILD_NAME", "42")::get)).isEqualTo("Build");
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.spring.concourse.googlechatnotify.webhook.TokenBucket.Reservation;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link TokenBucket}.
+ *
+ * @author Scott Frederick
+ */
+class TokenBucketTests {
+
+	private final AtomicLong nanoTime = new AtomicLong();
+
+	private final TokenBucket bucket = new TokenBucket(this.nanoTime::get);
+
+	@Test
+	void reserveWithinBurstDoesNotWait() {
+		RateLimit limit = new RateLimit(1, 2);
+		assertThat(this.bucket.reserve(limit)).isEqualTo(new Reservation(Duration.ZERO, 0));
+		assertThat(this.bucket.reserve(limit)).isEqualTo(new Reservation(Duration.ZERO, 0));
+	}
+
+	@Test
+	void reserveBeyondBurstQueuesCallers() {
+		RateLimit limit = new RateLimit(2, 1);
+		assertThat(this.bucket.reserve(limit)).isEqualTo(new Reservation(Duration.ZERO, 0));
+		assertThat(this.bucket.reserve(limit)).isEqualTo(new Reservation(Duration.ofMillis(500), 0));
+		assertThat(this.bucket.reserve(limit)).isEqualTo(new Reservation(Duration.ofSeconds(1), 1));
+		assertThat(this.bucket.reserve(limit)).isEqualTo(new Reservation(Duration.ofMillis(1500), 2));
+	}
+
+	@Test
+	void reserveAfterQuietPeriodRefillsUpToBurst() {
+		RateLimit limit = new RateLimit(1, 2);
+		this.bucket.reserve(limit);
+		this.bucket.reserve(limit);
+		this.nanoTime.addAndGet(Duration.ofMinutes(1).toNanos());
+		assertThat(this.bucket.reserve(limit).delay()).isZero();
+		assertThat(this.bucket.reserve(limit).delay()).isZero();
+		assertThat(this.bucket.reserve(limit).delay()).isEqualTo(Duration.ofSeconds(1));
+	}
+
+	@Test
+	void reserveAfterPartialRefillWaitsForRemainder() {
+		RateLimit limit = new RateLimit(1, 1);
+		this.bucket.reserve(limit);
+		this.nanoTime.addAndGet(Duration.ofMillis(250).toNanos());
+		assertThat(this.bucket.reserve(limit)).isEqualTo(new Reservation(Duration.ofMillis(750), 0));
+	}
+
+	@Test
+	void refillWhenClockGoesBackwardsDoesNotRemoveTokens() {
+		assertThat(TokenBucket.refill(new RateLimit(1, 1), 0.5, -1_000_000_000L)).isEqualTo(0.5);
+	}
+
+}
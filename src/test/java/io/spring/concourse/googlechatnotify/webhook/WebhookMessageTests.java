@@ -0,0 +1,81 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+/**
+ * Tests for {@link WebhookMessage}.
+ *
+ * @author Scott Frederick
+ */
+class WebhookMessageTests {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void writeResolvesStringValues() throws Exception {
+		WebhookMessage message = WebhookMessage.from(Map.of("text", "Build ${BUILD_NAME}", "count", 2, "ok", true));
+		JSONAssert.assertEquals("""
+				{ "text": "Build 42", "count": 2, "ok": true }
+				""", write(message), true);
+	}
+
+	@Test
+	void writeResolvesValuesInNestedMapsListsAndArrays() throws Exception {
+		Map<String, Object> card = new LinkedHashMap<>();
+		card.put("header", "${BUILD_NAME}");
+		card.put("widgets", new Object[] { "${BUILD_NAME}", 1, null });
+		WebhookMessage message = WebhookMessage.from(Map.of("cardsV2", List.of(Map.of("card", card))));
+		JSONAssert.assertEquals("""
+				{ "cardsV2": [ { "card": { "header": "42", "widgets": [ "42", 1, null ] } } ] }
+				""", write(message), true);
+	}
+
+	@Test
+	void writeWritesRawJsonUnchanged() throws Exception {
+		WebhookMessage message = WebhookMessage.from(Map.of("cardsV2", new RawJson("[{ \"header\": \"$BUILD\" }]")));
+		JSONAssert.assertEquals("""
+				{ "cardsV2": [ { "header": "$BUILD" } ] }
+				""", write(message), true);
+	}
+
+	@Test
+	void writeDoesNotResolveFieldNames() throws Exception {
+		WebhookMessage message = WebhookMessage.from(Map.of("${BUILD_NAME}", "${BUILD_NAME}"));
+		JSONAssert.assertEquals("""
+				{ "${BUILD_NAME}": "42" }
+				""", write(message), true);
+	}
+
+	private String write(WebhookMessage message) throws Exception {
+		StringWriter writer = new StringWriter();
+		try (JsonGenerator generator = this.objectMapper.createGenerator(writer)) {
+			message.write(generator, (text) -> text.replace("${BUILD_NAME}", "42"));
+		}
+		return writer.toString();
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.spring.concourse.googlechatnotify.webhook;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link WebhookTransport}.
+ *
+ * @author Scott Frederick
+ */
+class WebhookTransportTests {
+
+	private final WebhookTransport transport = new WebhookTransport();
+
+	@Test
+	void getHttpClientUsesHttp2AndConnectTimeout() {
+		HttpClient httpClient = this.transport.getHttpClient(Duration.ofSeconds(5));
+		assertThat(httpClient.version()).isEqualTo(HttpClient.Version.HTTP_2);
+		assertThat(httpClient.connectTimeout()).contains(Duration.ofSeconds(5));
+	}
+
+	@Test
+	void getHttpClientReusesClientForSameConnectTimeout() {
+		HttpClient httpClient = this.transport.getHttpClient(Duration.ofSeconds(5));
+		assertThat(this.transport.getHttpClient(Duration.ofSeconds(5))).isSameAs(httpClient);
+		assertThat(this.transport.getHttpClient(Duration.ofSeconds(10))).isNotSameAs(httpClient);
+	}
+
+	@Test
+	void getHttpClientWithDefaultSettingsUsesDefaultTimeouts() {
+		WebhookSettings settings = WebhookSettings.DEFAULT;
+		assertThat(settings.readTimeout()).isEqualTo(Duration.ofSeconds(30));
+		assertThat(settings.retryPolicy()).isEqualTo(RetryPolicy.DEFAULT);
+		HttpClient httpClient = this.transport.getHttpClient(settings.connectTimeout());
+		assertThat(httpClient.connectTimeout()).contains(Duration.ofSeconds(10));
+	}
+
+}